@@ -2,21 +2,26 @@ package de.typology.executables;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Random;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import de.typology.indexes.Vocabulary;
 import de.typology.indexes.WordIndex;
 import de.typology.indexes.WordIndexer;
 import de.typology.patterns.PatternBuilder;
+import de.typology.smoother.CountStore;
 import de.typology.smoother.KneserNeySmoother;
 import de.typology.smoother.ModifiedKneserNeySmoother;
+import de.typology.smoother.SmoothingPass;
 import de.typology.splitter.AbsoluteSplitter;
 import de.typology.splitter.DataSetSplitter;
 import de.typology.splitter.SmoothingSplitter;
 import de.typology.tester.TestSequenceExtractor;
+import de.typology.utils.CodecStreams;
 import de.typology.utils.Config;
+import de.typology.utils.SpillWriterPool;
 
 public class KneserNeyBuilder {
 
@@ -26,12 +31,16 @@ public class KneserNeyBuilder {
 	public static void main(String[] args) {
 
 		// TODO: parameters as arguments
+		CodecStreams.setCompressIntermediateFiles(Config
+				.get().compressIntermediateFiles);
 		File inputDirectory = new File(Config.get().outputDirectory
 				+ Config.get().inputDataSet);
 		File inputFile = new File(inputDirectory.getAbsolutePath()
 				+ "/training.txt");
 		File indexFile = new File(inputDirectory.getAbsolutePath()
 				+ "/index.txt");
+		File vocabularyFile = new File(inputDirectory.getAbsolutePath()
+				+ "/vocabulary.txt");
 		File absoluteDirectory = new File(inputDirectory.getAbsolutePath()
 				+ "/absolute");
 		File continuationDirectory = new File(inputDirectory.getAbsolutePath()
@@ -39,28 +48,66 @@ public class KneserNeyBuilder {
 		if (Config.get().splitData) {
 			DataSetSplitter dss = new DataSetSplitter(inputDirectory,
 					"normalized.txt");
-			dss.split("training.txt", "learning.txt", "testing.txt",
-					Config.get().modelLength);
+			if (Config.get().parallelSplit) {
+				dss.split("training.txt", "learning.txt", "testing.txt",
+						Config.get().modelLength, Config.get().splitSeed,
+						Config.get().numberOfCores);
+			} else {
+				dss.split("training.txt", "learning.txt", "testing.txt",
+						Config.get().modelLength);
+			}
 			dss.splitIntoSequences(new File(inputDirectory.getAbsolutePath()
 					+ "/testing.txt"), Config.get().modelLength,
-					Config.get().numberOfQueries);
+					Config.get().numberOfQueries,
+					new Random(Config.get().splitSeed));
 		}
 		if (Config.get().buildIndex) {
 			logger.info("build word index: " + indexFile.getAbsolutePath());
-			WordIndexer wordIndexer = new WordIndexer();
-			wordIndexer.buildIndex(inputFile, indexFile,
-					Config.get().maxCountDivider, "<fs> <s> ", " </s>");
+			WordIndexer wordIndexer = new WordIndexer(
+					Config.get().numberOfCores);
+			if (Config.get().balancedIndex) {
+				wordIndexer.buildBalancedIndex(inputFile, indexFile,
+						vocabularyFile, PatternBuilder
+								.getGLMForSmoothingPatterns(Config.get().modelLength),
+						Config.get().maxCountDivider,
+						Config.get().indexSampleStride, "<fs> <s> ", " </s>");
+			} else {
+				wordIndexer.buildIndex(inputFile, indexFile, vocabularyFile,
+						Config.get().maxCountDivider, "<fs> <s> ", " </s>");
+			}
+		}
+		// the vocabulary of the binary count files, null for text
+		Vocabulary countVocabulary = null;
+		if (Config.get().binaryCountFiles) {
+			countVocabulary = new Vocabulary(vocabularyFile);
+		}
+		SpillWriterPool writerPool = null;
+		if (Config.get().writerBufferMemory > 0) {
+			// two bytes per char
+			writerPool = new SpillWriterPool(
+					Config.get().writerBufferMemory * 1024L * 1024L / 2,
+					Config.get().maxOpenFiles);
 		}
 		if (Config.get().buildGLM) {
 			ArrayList<boolean[]> glmForSmoothingPatterns = PatternBuilder
 					.getReverseGLMForSmoothingPatterns(Config.get().modelLength);
 			AbsoluteSplitter absolteSplitter = new AbsoluteSplitter(inputFile,
 					indexFile, absoluteDirectory, "\t",
-					Config.get().deleteTempFiles, "<fs> <s> ", " </s>");
+					Config.get().deleteTempFiles, "<fs> <s> ", " </s>",
+					Config.get().combinerCapacity);
+			absolteSplitter.setWriterPool(writerPool);
+			absolteSplitter.setAggregatorMemory(Config.get().aggregatorMemory
+					* 1024L * 1024L);
+			absolteSplitter.setVocabulary(countVocabulary);
 			logger.info("split into GLM sequences: "
 					+ inputFile.getAbsolutePath());
-			absolteSplitter.split(glmForSmoothingPatterns,
-					Config.get().numberOfCores);
+			if (Config.get().singlePassSequencing) {
+				absolteSplitter.splitSinglePass(glmForSmoothingPatterns,
+						Config.get().numberOfCores);
+			} else {
+				absolteSplitter.split(glmForSmoothingPatterns,
+						Config.get().numberOfCores);
+			}
 		}
 		if (Config.get().buildContinuationGLM) {
 			ArrayList<boolean[]> lmPatterns = PatternBuilder
@@ -68,6 +115,22 @@ public class KneserNeyBuilder {
 			SmoothingSplitter smoothingSplitter = new SmoothingSplitter(
 					absoluteDirectory, continuationDirectory, indexFile, "\t",
 					Config.get().deleteTempFiles);
+			if (writerPool == null && Config.get().maxOpenFiles > 0) {
+				// the scans of the continuation patterns write the split files
+				// of several patterns at the same time, so their open files
+				// are bounded by a pool with the memory of maxOpenFiles own
+				// buffers
+				smoothingSplitter.setWriterPool(new SpillWriterPool(
+						Config.get().maxOpenFiles * 10L * 8 * 1024,
+						Config.get().maxOpenFiles));
+			} else {
+				smoothingSplitter.setWriterPool(writerPool);
+			}
+			smoothingSplitter.setAggregatorMemory(Config.get().aggregatorMemory
+					* 1024L * 1024L);
+			smoothingSplitter.setVocabulary(countVocabulary);
+			smoothingSplitter
+					.setSinglePassContinuation(Config.get().singlePassContinuation);
 			logger.info("split into continuation sequences: "
 					+ inputFile.getAbsolutePath());
 			smoothingSplitter.split(lmPatterns, Config.get().numberOfCores);
@@ -83,6 +146,7 @@ public class KneserNeyBuilder {
 			TestSequenceExtractor tse = new TestSequenceExtractor(
 					testSequences, absoluteDirectory, continuationDirectory,
 					testExtractOutputDirectory, "\t", new WordIndex(indexFile));
+			tse.setVocabulary(countVocabulary);
 			tse.extractSequences(Config.get().modelLength,
 					Config.get().numberOfCores);
 			tse.extractContinuationSequences(Config.get().modelLength,
@@ -90,86 +154,91 @@ public class KneserNeyBuilder {
 
 		}
 
-		HashMap<String, HashMap<String, Long>> absoluteTypeSequenceValueMap = null;
-		HashMap<String, HashMap<String, Long[]>> continuationTypeSequenceValueMap = null;
+		CountStore absoluteCountStore = null;
+		CountStore continuationCountStore = null;
+		int smoothingCores = 1;
+		if (Config.get().parallelSmoothing) {
+			smoothingCores = Config.get().numberOfCores;
+		}
+		// the word ids of the CountStores
+		Vocabulary smoothingVocabulary = countVocabulary;
+		if (smoothingVocabulary == null
+				&& (Config.get().buildKneserNey || Config.get().buildModKneserNey)) {
+			smoothingVocabulary = new Vocabulary(vocabularyFile);
+		}
+		// the testing samples of the shorter lengths are the prefixes of the
+		// longest ones, all smoothers and lengths are scored in one pass
+		SmoothingPass smoothingPass = new SmoothingPass(new File(
+				inputDirectory.getAbsolutePath() + "/testing-samples-"
+						+ Config.get().modelLength + ".txt"),
+				Config.get().modelLength,
+				Config.get().conditionalProbabilityOnly);
 		if (Config.get().buildKneserNey) {
 			KneserNeySmoother kns = new KneserNeySmoother(
 					testExtractOutputDirectory, absoluteDirectory,
-					continuationDirectory, "\t");
-
-			// read absolute and continuation values into HashMaps
-			logger.info("read absolute and continuation values into HashMaps for kneser ney");
-			absoluteTypeSequenceValueMap = kns
-					.readAbsoluteValuesIntoHashMap(kns.extractedAbsoluteDirectory);
-
-			continuationTypeSequenceValueMap = kns
-					.readContinuationValuesIntoHashMap(kns.extractedContinuationDirectory);
-			kns.absoluteTypeSequenceValueMap = absoluteTypeSequenceValueMap;
-			kns.continuationTypeSequenceValueMap = continuationTypeSequenceValueMap;
-
-			for (int i = Config.get().modelLength; i >= 1; i--) {
-				File inputSequenceFile = new File(
-						inputDirectory.getAbsolutePath() + "/testing-samples-"
-								+ i + ".txt");
-				File resultFile;
-				// smooth simple
-				if (Config.get().kneserNeySimple) {
-					resultFile = new File(inputDirectory.getAbsolutePath()
-							+ "/kneser-ney-simple-backoffToCont-" + i + ".txt");
-					kns.smooth(inputSequenceFile, resultFile, i, false,
-							Config.get().conditionalProbabilityOnly);
-				}
-				// smooth complex
-				if (Config.get().kneserNeyComplex) {
-					resultFile = new File(inputDirectory.getAbsolutePath()
-							+ "/kneser-ney-complex-backoffToCont-" + i + ".txt");
-					kns.smooth(inputSequenceFile, resultFile, i, true,
-							Config.get().conditionalProbabilityOnly);
-				}
-			}
+					continuationDirectory, "\t", smoothingVocabulary);
+
+			// read absolute and continuation values into CountStores
+			logger.info("read absolute and continuation values into CountStores for kneser ney");
+			absoluteCountStore = kns
+					.readAbsoluteValues(kns.extractedAbsoluteDirectory);
+
+			continuationCountStore = kns
+					.readContinuationValues(kns.extractedContinuationDirectory);
+			kns.absoluteCountStore = absoluteCountStore;
+			kns.continuationCountStore = continuationCountStore;
+
+			smoothingPass.addResults(kns,
+					getResultFiles(inputDirectory, "kneser-ney-simple",
+							Config.get().kneserNeySimple),
+					getResultFiles(inputDirectory, "kneser-ney-complex",
+							Config.get().kneserNeyComplex));
 		}
 		if (Config.get().buildModKneserNey) {
 			ModifiedKneserNeySmoother mkns = new ModifiedKneserNeySmoother(
 					testExtractOutputDirectory, absoluteDirectory,
-					continuationDirectory, "\t", Config.get().decimalPlaces);
+					continuationDirectory, "\t", smoothingVocabulary,
+					Config.get().decimalPlaces);
 
-			if (absoluteTypeSequenceValueMap == null) {
-				// read absolute and continuation values into HashMaps
+			if (absoluteCountStore == null) {
+				// read absolute and continuation values into CountStores
 
-				logger.info("read absolute and continuation values into HashMaps for mod kneser ney");
-				absoluteTypeSequenceValueMap = mkns
-						.readAbsoluteValuesIntoHashMap(mkns.extractedAbsoluteDirectory);
+				logger.info("read absolute and continuation values into CountStores for mod kneser ney");
+				absoluteCountStore = mkns
+						.readAbsoluteValues(mkns.extractedAbsoluteDirectory);
 
-				continuationTypeSequenceValueMap = mkns
-						.readContinuationValuesIntoHashMap(mkns.extractedContinuationDirectory);
+				continuationCountStore = mkns
+						.readContinuationValues(mkns.extractedContinuationDirectory);
 			}
 
-			mkns.absoluteTypeSequenceValueMap = absoluteTypeSequenceValueMap;
-			mkns.continuationTypeSequenceValueMap = continuationTypeSequenceValueMap;
-
-			for (int i = Config.get().modelLength; i >= 1; i--) {
-				File inputSequenceFile = new File(
-						inputDirectory.getAbsolutePath() + "/testing-samples-"
-								+ i + ".txt");
-				File resultFile;
-				// smooth simple
-				if (Config.get().kneserNeySimple) {
-					resultFile = new File(inputDirectory.getAbsolutePath()
-							+ "/mod-kneser-ney-simple-backoffToCont-" + i
-							+ ".txt");
-					mkns.smooth(inputSequenceFile, resultFile, i, false,
-							Config.get().conditionalProbabilityOnly);
-				}
-				// smooth complex
-				if (Config.get().kneserNeyComplex) {
-					resultFile = new File(inputDirectory.getAbsolutePath()
-							+ "/mod-kneser-ney-complex-backoffToCont-" + i
-							+ ".txt");
-					mkns.smooth(inputSequenceFile, resultFile, i, true,
-							Config.get().conditionalProbabilityOnly);
-				}
-			}
+			mkns.absoluteCountStore = absoluteCountStore;
+			mkns.continuationCountStore = continuationCountStore;
+
+			smoothingPass.addResults(mkns,
+					getResultFiles(inputDirectory, "mod-kneser-ney-simple",
+							Config.get().kneserNeySimple),
+					getResultFiles(inputDirectory, "mod-kneser-ney-complex",
+							Config.get().kneserNeyComplex));
 		}
+		// smooth simple and complex of all lengths with both smoothers
+		smoothingPass.smooth(smoothingCores);
 		logger.info("done");
 	}
+
+	/**
+	 * returns the result files of all lengths of a smoothing variant or null if
+	 * the variant is not calculated
+	 */
+	private static File[] getResultFiles(File inputDirectory, String variant,
+			boolean isCalculated) {
+		if (!isCalculated) {
+			return null;
+		}
+		File[] resultFiles = new File[Config.get().modelLength];
+		for (int i = 1; i <= Config.get().modelLength; i++) {
+			resultFiles[i - 1] = new File(inputDirectory.getAbsolutePath()
+					+ "/" + variant + "-backoffToCont-" + i + ".txt");
+		}
+		return resultFiles;
+	}
 }
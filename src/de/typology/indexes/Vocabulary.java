@@ -0,0 +1,122 @@
+package de.typology.indexes;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * A class that is based on the vocabulary file produced by WordIndexer. Every
+ * word is mapped to a dense int id. The ids are ordered like the words, so the
+ * id order matches the order of the partitions of the WordIndex.
+ * 
+ * @author Martin Koerner
+ * 
+ */
+public class Vocabulary implements Iterable<String> {
+	protected String[] words;
+	protected HashMap<String, Integer> wordIds;
+
+	public Vocabulary(File vocabularyFile) {
+		ArrayList<String> wordList = new ArrayList<String>();
+		try {
+			BufferedReader br = new BufferedReader(new FileReader(
+					vocabularyFile));
+			String line;
+			String[] lineSplit;
+			while ((line = br.readLine()) != null) {
+				lineSplit = line.split("\t");
+				if (Integer.parseInt(lineSplit[1]) != wordList.size()) {
+					throw new IllegalStateException("word ids in "
+							+ vocabularyFile.getAbsolutePath()
+							+ " are not dense at line: " + line);
+				}
+				wordList.add(lineSplit[0]);
+			}
+			br.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		this.words = wordList.toArray(new String[wordList.size()]);
+		this.wordIds = new HashMap<String, Integer>(this.words.length * 2);
+		for (int i = 0; i < this.words.length; i++) {
+			this.wordIds.put(this.words[i], i);
+		}
+	}
+
+	public int size() {
+		return this.words.length;
+	}
+
+	/**
+	 * returns the id of word or -1 if word is not part of the vocabulary
+	 * 
+	 * @param word
+	 * @return
+	 */
+	public int getId(String word) {
+		Integer wordId = this.wordIds.get(word);
+		if (wordId == null) {
+			return -1;
+		}
+		return wordId;
+	}
+
+	public String getWord(int wordId) {
+		return this.words[wordId];
+	}
+
+	/**
+	 * returns the ids of the whitespace separated words in sequence. Unknown
+	 * words are returned as -1. The empty sequence has no ids.
+	 * 
+	 * @param sequence
+	 * @return
+	 */
+	public int[] getIds(String sequence) {
+		if (sequence.length() == 0) {
+			return new int[0];
+		}
+		String[] sequenceSplit = sequence.split("\\s");
+		int[] ids = new int[sequenceSplit.length];
+		for (int i = 0; i < sequenceSplit.length; i++) {
+			ids[i] = this.getId(sequenceSplit[i]);
+		}
+		return ids;
+	}
+
+	public String getSequence(int[] ids) {
+		StringBuilder sequence = new StringBuilder();
+		for (int i = 0; i < ids.length; i++) {
+			if (i > 0) {
+				sequence.append(' ');
+			}
+			sequence.append(this.words[ids[i]]);
+		}
+		return sequence.toString();
+	}
+
+	/**
+	 * returns the file (see WordIndex.rank) for every word id
+	 * 
+	 * @param wordIndex
+	 * @return
+	 */
+	public int[] getRanks(WordIndex wordIndex) {
+		int[] ranks = new int[this.words.length];
+		for (int i = 0; i < this.words.length; i++) {
+			ranks[i] = wordIndex.rank(this.words[i]);
+		}
+		return ranks;
+	}
+
+	@Override
+	public Iterator<String> iterator() {
+		return Arrays.asList(this.words).iterator();
+	}
+}
@@ -0,0 +1,144 @@
+package de.typology.indexes;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash map from words to unboxed long counts. The words are
+ * only sorted once when getSortedWords is called.
+ * 
+ * @author Martin Koerner
+ * 
+ */
+public class WordCounter {
+	private String[] words;
+	private long[] counts;
+	private int size;
+	private int mask;
+
+	public WordCounter() {
+		this(1024);
+	}
+
+	public WordCounter(int expectedSize) {
+		int capacity = 16;
+		while (capacity < expectedSize * 2) {
+			capacity <<= 1;
+		}
+		this.words = new String[capacity];
+		this.counts = new long[capacity];
+		this.mask = capacity - 1;
+	}
+
+	public void increment(String word) {
+		this.add(word, 1L);
+	}
+
+	public void add(String word, long count) {
+		int slot = this.getSlot(word);
+		if (this.words[slot] == null) {
+			this.words[slot] = word;
+			this.size++;
+			if (this.size * 2 > this.words.length) {
+				this.counts[slot] = count;
+				this.grow();
+				return;
+			}
+		}
+		this.counts[slot] += count;
+	}
+
+	/**
+	 * adds all counts of other to this
+	 * 
+	 * @param other
+	 */
+	public void addAll(WordCounter other) {
+		for (int i = 0; i < other.words.length; i++) {
+			if (other.words[i] != null) {
+				this.add(other.words[i], other.counts[i]);
+			}
+		}
+	}
+
+	public long getCount(String word) {
+		int slot = this.getSlot(word);
+		if (this.words[slot] == null) {
+			return 0L;
+		}
+		return this.counts[slot];
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public void clear() {
+		Arrays.fill(this.words, null);
+		Arrays.fill(this.counts, 0L);
+		this.size = 0;
+	}
+
+	/**
+	 * returns all counted words in no particular order
+	 * 
+	 * @return
+	 */
+	public String[] getWords() {
+		String[] words = new String[this.size];
+		int wordPointer = 0;
+		for (String word : this.words) {
+			if (word != null) {
+				words[wordPointer] = word;
+				wordPointer++;
+			}
+		}
+		return words;
+	}
+
+	public long getTotalCount() {
+		long totalCount = 0L;
+		for (int i = 0; i < this.words.length; i++) {
+			if (this.words[i] != null) {
+				totalCount += this.counts[i];
+			}
+		}
+		return totalCount;
+	}
+
+	/**
+	 * returns all counted words in the same order as String.compareTo
+	 * 
+	 * @return
+	 */
+	public String[] getSortedWords() {
+		String[] sortedWords = this.getWords();
+		Arrays.sort(sortedWords);
+		return sortedWords;
+	}
+
+	private int getSlot(String word) {
+		// spread the bits of String.hashCode since the table size is a power
+		// of two
+		int hash = word.hashCode() * 0x9E3779B9;
+		int slot = (hash ^ hash >>> 16) & this.mask;
+		while (this.words[slot] != null && !this.words[slot].equals(word)) {
+			slot = slot + 1 & this.mask;
+		}
+		return slot;
+	}
+
+	private void grow() {
+		String[] oldWords = this.words;
+		long[] oldCounts = this.counts;
+		this.words = new String[oldWords.length * 2];
+		this.counts = new long[oldCounts.length * 2];
+		this.mask = this.words.length - 1;
+		for (int i = 0; i < oldWords.length; i++) {
+			if (oldWords[i] != null) {
+				int slot = this.getSlot(oldWords[i]);
+				this.words[slot] = oldWords[i];
+				this.counts[slot] = oldCounts[i];
+			}
+		}
+	}
+}
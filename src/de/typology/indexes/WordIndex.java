@@ -4,7 +4,6 @@ import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -13,6 +12,9 @@ import java.util.Map.Entry;
 
 import org.apache.commons.io.FileUtils;
 
+import de.typology.utils.CodecStreams;
+import de.typology.utils.SpillWriterPool;
+
 /**
  * A class that is based on the text file produced by WordIndexer.
  * 
@@ -21,6 +23,7 @@ import org.apache.commons.io.FileUtils;
  */
 public class WordIndex implements Iterable<String> {
 	protected String[] index;
+	protected SpillWriterPool writerPool;
 
 	public WordIndex(File indexFile) {
 		// count total number of lines in the index file
@@ -87,6 +90,17 @@ public class WordIndex implements Iterable<String> {
 		return Arrays.asList(this.index).iterator();
 	}
 
+	/**
+	 * If writerPool is not null, the writers returned by openWriters share the
+	 * pool's memory budget and open files instead of using one buffer and one
+	 * open file each.
+	 *
+	 * @param writerPool
+	 */
+	public void setWriterPool(SpillWriterPool writerPool) {
+		this.writerPool = writerPool;
+	}
+
 	public HashMap<Integer, BufferedWriter> openWriters(File outputDirectory) {
 		HashMap<Integer, BufferedWriter> writers = new HashMap<Integer, BufferedWriter>();
 
@@ -105,10 +119,17 @@ public class WordIndex implements Iterable<String> {
 		// calculate buffer size for writers
 		// TODO: bufferSize calculation
 		for (int fileCount = 0; fileCount < this.index.length; fileCount++) {
-			try {
-				writers.put(fileCount, new BufferedWriter(new FileWriter(
+			if (this.writerPool != null) {
+				writers.put(fileCount, this.writerPool.openWriter(new File(
 						currentOutputDirectory.getAbsolutePath() + "/"
-								+ fileCount), 10 * 8 * 1024));
+								+ fileCount)));
+				continue;
+			}
+			try {
+				writers.put(fileCount, new BufferedWriter(
+						CodecStreams.openIntermediateWriter(new File(
+								currentOutputDirectory.getAbsolutePath() + "/"
+										+ fileCount), false), 10 * 8 * 1024));
 			} catch (IOException e) {
 				// TODO Auto-generated catch block
 				e.printStackTrace();
@@ -3,15 +3,21 @@ package de.typology.indexes;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.Comparator;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.TreeMap;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+import de.typology.utils.CodecStreams;
+import de.typology.utils.DistinctSample;
+import de.typology.utils.FileChunker;
 
 /**
  * A class for building a text file containing a index representation for a
@@ -21,48 +27,96 @@ import java.util.TreeMap;
  * 
  */
 public class WordIndexer {
+	private static final Pattern WHITESPACES = Pattern.compile("\\s+");
+	// distinct sequences per pattern that are kept for estimating the
+	// partitions of a balanced index
+	private static final int SAMPLE_SIZE = 1 << 15;
 
-	private TreeMap<String, Long> buildMap(File InputFile,
-			String addBeforeSentence, String addAfterSentence) {
-		BufferedReader reader;
+	private int cores;
+
+	public WordIndexer() {
+		this(1);
+	}
+
+	/**
+	 * @param cores
+	 *            : number of threads that count the words of the input file
+	 */
+	public WordIndexer(int cores) {
+		this.cores = Math.max(1, cores);
+	}
+
+	private WordCounter buildMap(File inputFile,
+			final String addBeforeSentence, final String addAfterSentence) {
+		long[] chunkBoundaries;
 		try {
-			reader = new BufferedReader(new FileReader(InputFile));
-		} catch (FileNotFoundException e1) {
+			// use more chunks than cores for a better load balance
+			chunkBoundaries = FileChunker.getChunkBoundaries(inputFile,
+					this.cores == 1 ? 1 : this.cores * 4);
+		} catch (IOException e) {
 			// TODO Auto-generated catch block
-			e1.printStackTrace();
+			e.printStackTrace();
 			return null;
 		}
 
-		// a comparator for wordMap
-		Comparator<String> StringComparator = new Comparator<String>() {
-			@Override
-			public int compare(String s1, String s2) {
-				return s1.compareTo(s2);
+		ExecutorService executorService = Executors
+				.newFixedThreadPool(this.cores);
+		ArrayList<Future<WordCounter>> chunkCounters = new ArrayList<Future<WordCounter>>();
+		for (int i = 0; i < chunkBoundaries.length - 1; i++) {
+			final File chunkFile = inputFile;
+			final long chunkStart = chunkBoundaries[i];
+			final long chunkEnd = chunkBoundaries[i + 1];
+			chunkCounters.add(executorService
+					.submit(new Callable<WordCounter>() {
+						@Override
+						public WordCounter call() throws IOException {
+							return WordIndexer.this.countWords(chunkFile,
+									chunkStart, chunkEnd, addBeforeSentence,
+									addAfterSentence);
+						}
+					}));
+		}
+		executorService.shutdown();
+
+		// merge the counts of all chunks
+		WordCounter wordCounter = null;
+		try {
+			for (Future<WordCounter> chunkCounter : chunkCounters) {
+				if (wordCounter == null) {
+					wordCounter = chunkCounter.get();
+				} else {
+					wordCounter.addAll(chunkCounter.get());
+				}
 			}
-		};
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+			return null;
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+			return null;
+		}
+		return wordCounter;
+	}
 
-		TreeMap<String, Long> wordMap = new TreeMap<String, Long>(
-				StringComparator);
+	private WordCounter countWords(File inputFile, long chunkStart,
+			long chunkEnd, String addBeforeSentence, String addAfterSentence)
+			throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				FileChunker.openChunk(inputFile, chunkStart, chunkEnd)));
+		WordCounter wordCounter = new WordCounter();
 		String line;
-		// long lineCount=0L;
 		try {
 			while ((line = reader.readLine()) != null) {
 				line = addBeforeSentence + line + addAfterSentence;
-				String[] words = line.split("\\s+");
+				String[] words = WHITESPACES.split(line);
 				for (String word : words) {
-					if (wordMap.containsKey(word)) {
-						wordMap.put(word, wordMap.get(word) + 1);
-					} else {
-						wordMap.put(word, 1L);
-					}
+					wordCounter.increment(word);
 				}
 			}
+		} finally {
 			reader.close();
-
-		} catch (IOException e) {
-			e.printStackTrace();
 		}
-		return wordMap;
+		return wordCounter;
 	}
 
 	/**
@@ -74,16 +128,31 @@ public class WordIndexer {
 	public long buildIndex(File inputFile, File indexOutputFile,
 			int maxCountDivider, String addBeforeSentence,
 			String addAfterSentence) {
+		return this.buildIndex(inputFile, indexOutputFile, null,
+				maxCountDivider, addBeforeSentence, addAfterSentence);
+	}
+
+	/**
+	 * Also writes the complete vocabulary of inputFile into
+	 * vocabularyOutputFile if it is not null (see Vocabulary).
+	 * 
+	 * @param inputFile
+	 * @param indexOutputFile
+	 * @param vocabularyOutputFile
+	 * @param maxCountDivider
+	 * @return Long: maxCountPerFile
+	 */
+	public long buildIndex(File inputFile, File indexOutputFile,
+			File vocabularyOutputFile, int maxCountDivider,
+			String addBeforeSentence, String addAfterSentence) {
 
 		// build WordMap
-		TreeMap<String, Long> wordMap = this.buildMap(inputFile,
-				addBeforeSentence, addAfterSentence);
+		WordCounter wordMap = this.buildMap(inputFile, addBeforeSentence,
+				addAfterSentence);
+		String[] sortedWords = wordMap.getSortedWords();
 
 		// summarize all word counts
-		Long totalCount = 0L;
-		for (Entry<String, Long> word : wordMap.entrySet()) {
-			totalCount += word.getValue();
-		}
+		Long totalCount = wordMap.getTotalCount();
 
 		// calculate max count per file
 		Long maxCountPerFile = totalCount / maxCountDivider;
@@ -98,20 +167,17 @@ public class WordIndexer {
 			indexWriter = new BufferedWriter(new FileWriter(indexOutputFile));
 			Long currentFileCount = 0L;
 			int fileCount = 0;
-			Iterator<Map.Entry<String, Long>> wordMapIterator = wordMap
-					.entrySet().iterator();
-			Entry<String, Long> word;
 
-			while (wordMapIterator.hasNext()) {
+			for (String word : sortedWords) {
 				// get next word
-				word = wordMapIterator.next();
+				long wordCount = wordMap.getCount(word);
 				if (fileCount == 0
-						|| currentFileCount + word.getValue() > maxCountPerFile) {
-					indexWriter.write(word.getKey() + "\t" + fileCount + "\n");
-					currentFileCount = word.getValue();
+						|| currentFileCount + wordCount > maxCountPerFile) {
+					indexWriter.write(word + "\t" + fileCount + "\n");
+					currentFileCount = wordCount;
 					fileCount++;
 				} else {
-					currentFileCount += word.getValue();
+					currentFileCount += wordCount;
 				}
 			}
 			indexWriter.close();
@@ -124,7 +190,209 @@ public class WordIndexer {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
+
+		if (vocabularyOutputFile != null) {
+			this.buildVocabulary(sortedWords, vocabularyOutputFile);
+		}
 		return maxCountPerFile;
 	}
 
+	/**
+	 * Builds an index whose partitions have a bounded number of distinct
+	 * sequences for every given pattern instead of a bounded number of words.
+	 * The number of distinct sequences in each partition is estimated for
+	 * every pattern from a DistinctSample of the sequences in every
+	 * sampleStride-th line of inputFile. The bound is the estimated sequence
+	 * count of the largest pattern divided by maxCountDivider. A partition
+	 * only exceeds the bound if it consists of a single word.
+	 * 
+	 * @param inputFile
+	 * @param indexOutputFile
+	 * @param vocabularyOutputFile
+	 *            : may be null
+	 * @param patterns
+	 * @param maxCountDivider
+	 * @param sampleStride
+	 * @param addBeforeSentence
+	 * @param addAfterSentence
+	 * @return Long: estimated maximum number of sequences per file and pattern
+	 *         in the sample
+	 */
+	public long buildBalancedIndex(File inputFile, File indexOutputFile,
+			File vocabularyOutputFile, ArrayList<boolean[]> patterns,
+			int maxCountDivider, int sampleStride, String addBeforeSentence,
+			String addAfterSentence) {
+		sampleStride = Math.max(1, sampleStride);
+
+		// build WordMap
+		WordCounter wordMap = this.buildMap(inputFile, addBeforeSentence,
+				addAfterSentence);
+		String[] sortedWords = wordMap.getSortedWords();
+		HashMap<String, Integer> wordPositions = new HashMap<String, Integer>(
+				sortedWords.length * 2);
+		for (int i = 0; i < sortedWords.length; i++) {
+			wordPositions.put(sortedWords[i], i);
+		}
+
+		// sample the distinct sequences of every pattern, labeled with the
+		// position of their first word
+		int patternCount = patterns.size();
+		DistinctSample[] sampledSequences = new DistinctSample[patternCount];
+		int[] firstWordPositions = new int[patternCount];
+		for (int p = 0; p < patternCount; p++) {
+			sampledSequences[p] = new DistinctSample(SAMPLE_SIZE);
+			boolean[] pattern = patterns.get(p);
+			while (firstWordPositions[p] < pattern.length - 1
+					&& !pattern[firstWordPositions[p]]) {
+				firstWordPositions[p]++;
+			}
+		}
+		try {
+			BufferedReader reader = CodecStreams.openReader(inputFile);
+			String line;
+			long lineCount = 0L;
+			while ((line = reader.readLine()) != null) {
+				if (lineCount++ % sampleStride != 0) {
+					continue;
+				}
+				line = addBeforeSentence + line + addAfterSentence;
+				// split like the Sequencer does
+				String[] lineSplit = line.split("\\s");
+				int[] lineWordPositions = new int[lineSplit.length];
+				for (int i = 0; i < lineSplit.length; i++) {
+					Integer wordPosition = wordPositions.get(lineSplit[i]);
+					lineWordPositions[i] = wordPosition == null ? -1
+							: wordPosition;
+				}
+				for (int p = 0; p < patternCount; p++) {
+					boolean[] pattern = patterns.get(p);
+					for (int linePointer = 0; lineSplit.length - linePointer >= pattern.length; linePointer++) {
+						int firstWordPosition = lineWordPositions[linePointer
+								+ firstWordPositions[p]];
+						if (firstWordPosition < 0) {
+							continue;
+						}
+						long fingerprint = 1L;
+						for (int i = 0; i < pattern.length; i++) {
+							if (pattern[i]) {
+								fingerprint = fingerprint
+										* 0x9E3779B97F4A7C15L
+										+ lineWordPositions[linePointer + i]
+										+ 1;
+							}
+						}
+						fingerprint ^= fingerprint >>> 31;
+						fingerprint *= 0xBF58476D1CE4E5B9L;
+						fingerprint ^= fingerprint >>> 29;
+						sampledSequences[p].add(fingerprint, firstWordPosition);
+					}
+				}
+			}
+			reader.close();
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+
+		// calculate max volume per file
+		long maxVolumePerFile = 0L;
+		for (DistinctSample sample : sampledSequences) {
+			maxVolumePerFile = Math.max(maxVolumePerFile,
+					sample.getEstimate() / maxCountDivider);
+		}
+		if (maxVolumePerFile < 1L) {
+			maxVolumePerFile = 1L;
+		}
+
+		// the first word positions of the sampled sequences in ascending
+		// order, each one standing for sampleWeights[p] sequences
+		int[][] sampleLabels = new int[patternCount][];
+		long[] sampleWeights = new long[patternCount];
+		for (int p = 0; p < patternCount; p++) {
+			sampleLabels[p] = sampledSequences[p].getSortedLabels();
+			sampleWeights[p] = 1L << sampledSequences[p].getLevel();
+			sampledSequences[p] = null;
+		}
+
+		// build index
+		BufferedWriter indexWriter;
+		try {
+			indexWriter = new BufferedWriter(new FileWriter(indexOutputFile));
+			long[] currentFileVolumes = new long[patternCount];
+			long[] wordVolumes = new long[patternCount];
+			int[] labelPointers = new int[patternCount];
+			int fileCount = 0;
+
+			for (int i = 0; i < sortedWords.length; i++) {
+				// volume of the sequences that start with the current word
+				for (int p = 0; p < patternCount; p++) {
+					int labelCount = 0;
+					while (labelPointers[p] < sampleLabels[p].length
+							&& sampleLabels[p][labelPointers[p]] == i) {
+						labelCount++;
+						labelPointers[p]++;
+					}
+					wordVolumes[p] = labelCount * sampleWeights[p];
+				}
+				boolean newFile = fileCount == 0;
+				for (int p = 0; p < patternCount && !newFile; p++) {
+					newFile = currentFileVolumes[p] + wordVolumes[p] > maxVolumePerFile;
+				}
+				if (newFile) {
+					indexWriter.write(sortedWords[i] + "\t" + fileCount
+							+ "\n");
+					for (int p = 0; p < patternCount; p++) {
+						currentFileVolumes[p] = wordVolumes[p];
+					}
+					fileCount++;
+				} else {
+					for (int p = 0; p < patternCount; p++) {
+						currentFileVolumes[p] += wordVolumes[p];
+					}
+				}
+			}
+			indexWriter.close();
+		} catch (IOException e) {
+			// make sure that no corrupted index file is stored
+			if (indexOutputFile.exists()) {
+				indexOutputFile.delete();
+			}
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+
+		if (vocabularyOutputFile != null) {
+			this.buildVocabulary(sortedWords, vocabularyOutputFile);
+		}
+		return maxVolumePerFile;
+	}
+
+	/**
+	 * Writes one line "word\tid" for every word in sortedWords. The ids are
+	 * assigned in the order of sortedWords which is the same order that is
+	 * used for the index.
+	 * 
+	 * @param sortedWords
+	 * @param vocabularyOutputFile
+	 */
+	private void buildVocabulary(String[] sortedWords,
+			File vocabularyOutputFile) {
+		try {
+			BufferedWriter vocabularyWriter = new BufferedWriter(
+					new FileWriter(vocabularyOutputFile));
+			int wordId = 0;
+			for (String word : sortedWords) {
+				vocabularyWriter.write(word + "\t" + wordId + "\n");
+				wordId++;
+			}
+			vocabularyWriter.close();
+		} catch (IOException e) {
+			// make sure that no corrupted vocabulary file is stored
+			if (vocabularyOutputFile.exists()) {
+				vocabularyOutputFile.delete();
+			}
+			e.printStackTrace();
+		}
+	}
+
 }
@@ -0,0 +1,243 @@
+package de.typology.smoother;
+
+import java.util.Arrays;
+
+import de.typology.indexes.Vocabulary;
+
+/**
+ * An in memory store of the counts of sequences, grouped by their patterns.
+ * <p>
+ * Every pattern ("1_1", "101" or "") is mapped to a key of its bits with a
+ * leading one bit for its length. The sequences of a pattern are stored in an
+ * open addressing table: the ids of the words in the vocabulary (see
+ * Vocabulary) are hashed into a 63 bit fingerprint, which is the key of the
+ * sequence. The counts are stored in flat long columns next to the keys.
+ * Sequences can be looked up by their word ids without allocating objects.
+ * <p>
+ * Different sequences with equal fingerprints can not be told apart, which
+ * is very unlikely for the number of sequences that are extracted for
+ * smoothing.
+ *
+ * @author Martin Koerner
+ *
+ */
+public class CountStore {
+	// patterns of up to this length are supported
+	private static final int MAX_PATTERN_LENGTH = 30;
+	private static final long EMPTY_KEY = -1L;
+	private static final long FINGERPRINT_OFFSET = 0xcbf29ce484222325L;
+	private static final long FINGERPRINT_PRIME = 0x100000001b3L;
+
+	private int countColumns;
+	// the sequence table of every pattern key, null if the pattern is
+	// unknown
+	private SequenceTable[] sequenceTables = new SequenceTable[0];
+	private Vocabulary vocabulary;
+
+	/**
+	 * @param countColumns
+	 *            : number of counts of every sequence
+	 * @param vocabulary
+	 *            : gives the ids of the words of the sequences
+	 */
+	public CountStore(int countColumns, Vocabulary vocabulary) {
+		this.countColumns = countColumns;
+		this.vocabulary = vocabulary;
+	}
+
+	public int getCountColumns() {
+		return this.countColumns;
+	}
+
+	public Vocabulary getVocabulary() {
+		return this.vocabulary;
+	}
+
+	/**
+	 * adds pattern to the known patterns even if it has no sequences
+	 */
+	public void addPattern(String pattern) {
+		this.getSequenceTable(pattern, true);
+	}
+
+	public boolean hasPattern(String pattern) {
+		return this.getSequenceTable(pattern, false) != null;
+	}
+
+	/**
+	 * stores the first countColumns values of counts for sequence
+	 *
+	 * @return false if sequence contains a word that is not part of the
+	 *         vocabulary. The sequence is not stored in that case
+	 */
+	public boolean put(String pattern, String sequence, long[] counts) {
+		int[] wordIds = this.vocabulary.getIds(sequence);
+		long key = getKey(wordIds, wordIds.length);
+		if (key == EMPTY_KEY) {
+			return false;
+		}
+		this.getSequenceTable(pattern, true).put(key, counts);
+		return true;
+	}
+
+	/**
+	 * returns the count in column of sequence or 0 if pattern or sequence is
+	 * not stored
+	 */
+	public long get(String pattern, String sequence, int column) {
+		return this.get(pattern, this.vocabulary.getIds(sequence), column);
+	}
+
+	/**
+	 * like get(String, String, int) for the word ids of a sequence (see
+	 * Vocabulary.getIds)
+	 */
+	public long get(String pattern, int[] wordIds, int column) {
+		return this.get(pattern, wordIds, wordIds.length, column);
+	}
+
+	/**
+	 * like get(String, int[], int) for the sequence of the first length ids
+	 * of wordIds
+	 */
+	public long get(String pattern, int[] wordIds, int length, int column) {
+		SequenceTable sequenceTable = this.getSequenceTable(pattern, false);
+		if (sequenceTable == null) {
+			return 0;
+		}
+		long key = getKey(wordIds, length);
+		if (key == EMPTY_KEY) {
+			return 0;
+		}
+		return sequenceTable.get(key, column);
+	}
+
+	/**
+	 * returns the number of sequences of pattern
+	 */
+	public int size(String pattern) {
+		SequenceTable sequenceTable = this.getSequenceTable(pattern, false);
+		if (sequenceTable == null) {
+			return 0;
+		}
+		return sequenceTable.size;
+	}
+
+	private SequenceTable getSequenceTable(String pattern, boolean create) {
+		if (pattern.length() > MAX_PATTERN_LENGTH) {
+			throw new IllegalArgumentException("pattern is too long: "
+					+ pattern);
+		}
+		int patternKey = 1;
+		for (int i = 0; i < pattern.length(); i++) {
+			patternKey <<= 1;
+			if (pattern.charAt(i) == '1') {
+				patternKey |= 1;
+			}
+		}
+		if (patternKey >= this.sequenceTables.length) {
+			if (!create) {
+				return null;
+			}
+			SequenceTable[] sequenceTables = new SequenceTable[Integer
+					.highestOneBit(patternKey) * 2];
+			System.arraycopy(this.sequenceTables, 0, sequenceTables, 0,
+					this.sequenceTables.length);
+			this.sequenceTables = sequenceTables;
+		}
+		if (this.sequenceTables[patternKey] == null && create) {
+			this.sequenceTables[patternKey] = new SequenceTable(
+					this.countColumns);
+		}
+		return this.sequenceTables[patternKey];
+	}
+
+	/**
+	 * returns the fingerprint of the first length ids of wordIds or EMPTY_KEY
+	 * if they contain an unknown word (-1)
+	 */
+	private static long getKey(int[] wordIds, int length) {
+		long fingerprint = FINGERPRINT_OFFSET;
+		for (int i = 0; i < length; i++) {
+			if (wordIds[i] < 0) {
+				return EMPTY_KEY;
+			}
+			fingerprint = (fingerprint ^ (wordIds[i] + 1))
+					* FINGERPRINT_PRIME;
+		}
+		// final mixing (see MurmurHash3)
+		fingerprint ^= fingerprint >>> 33;
+		fingerprint *= 0xff51afd7ed558ccdL;
+		fingerprint ^= fingerprint >>> 33;
+		return fingerprint & Long.MAX_VALUE;
+	}
+
+	private static int mix(long key) {
+		key *= 0x9E3779B97F4A7C15L;
+		return (int) (key ^ key >>> 32);
+	}
+
+	/**
+	 * An open addressing table of the keys of the sequences of a pattern with
+	 * one long column per count.
+	 */
+	private static class SequenceTable {
+		long[] keys;
+		long[][] counts;
+		int size;
+
+		SequenceTable(int countColumns) {
+			this.keys = new long[16];
+			Arrays.fill(this.keys, EMPTY_KEY);
+			this.counts = new long[countColumns][16];
+		}
+
+		int getSlot(long key) {
+			int mask = this.keys.length - 1;
+			int slot = mix(key) & mask;
+			while (this.keys[slot] != EMPTY_KEY && this.keys[slot] != key) {
+				slot = slot + 1 & mask;
+			}
+			return slot;
+		}
+
+		long get(long key, int column) {
+			int slot = this.getSlot(key);
+			if (this.keys[slot] == EMPTY_KEY) {
+				return 0;
+			}
+			return this.counts[column][slot];
+		}
+
+		void put(long key, long[] values) {
+			int slot = this.getSlot(key);
+			if (this.keys[slot] == EMPTY_KEY) {
+				this.keys[slot] = key;
+				this.size++;
+			}
+			for (int column = 0; column < this.counts.length; column++) {
+				this.counts[column][slot] = values[column];
+			}
+			if (this.size * 4 > this.keys.length * 3) {
+				this.grow();
+			}
+		}
+
+		private void grow() {
+			long[] oldKeys = this.keys;
+			long[][] oldCounts = this.counts;
+			this.keys = new long[oldKeys.length * 2];
+			Arrays.fill(this.keys, EMPTY_KEY);
+			this.counts = new long[oldCounts.length][oldKeys.length * 2];
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != EMPTY_KEY) {
+					int slot = this.getSlot(oldKeys[i]);
+					this.keys[slot] = oldKeys[i];
+					for (int column = 0; column < oldCounts.length; column++) {
+						this.counts[column][slot] = oldCounts[column][i];
+					}
+				}
+			}
+		}
+	}
+}
@@ -1,12 +1,10 @@
 package de.typology.smoother;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -16,11 +14,13 @@ import java.util.HashMap;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import de.typology.indexes.Vocabulary;
 import de.typology.patterns.PatternTransformer;
 import de.typology.utils.Config;
+import de.typology.utils.CountRecordReader;
+import de.typology.utils.CountStatistics;
 import de.typology.utils.Counter;
 import de.typology.utils.DecimalFormatter;
-import de.typology.utils.SequenceFormatter;
 
 public class KneserNeySmoother {
 
@@ -36,26 +36,40 @@ public class KneserNeySmoother {
 	public File extractedContinuationDirectory;
 
 	private String delimiter;
+	// gives the word ids of the CountStores and decodes binary count files
+	protected Vocabulary vocabulary;
 	private DecimalFormatter decimalFormatter;
 
 	// in memory index of extracted counts for training data
-	public HashMap<String, HashMap<String, Long>> absoluteTypeSequenceValueMap;
-	public HashMap<String, HashMap<String, Long[]>> continuationTypeSequenceValueMap;
+	public CountStore absoluteCountStore;
+	public CountStore continuationCountStore;
 	protected HashMap<String, HashMap<String, Double>> discountTypeValuesMap;
 
 	// global field needed to store discount values in different files for
 	// modified and standard kneser ney
 	protected File discountTypesValuesMapFile;
 
-	// true if we smooth generalized language models
-	private boolean smoothComplex;
+	// conditional and lower order results of the current query of every
+	// thread by pattern and sequence (see ResultKey). The recursion of
+	// calculateLowerOrderResult reaches the same lower order sequences many
+	// times and the probabilities of longer sequences of a query contain the
+	// conditional probabilities of the shorter ones
+	private ThreadLocal<HashMap<ResultKey, Double>> conditionalResults = newThreadLocalResults();
+	private ThreadLocal<HashMap<ResultKey, Double>> lowerOrderResults = newThreadLocalResults();
 
 	private long totalUnigramCount;
 
 	// removed global config variable decimal places from Constructor. does that
 	// make sense?
+	/**
+	 * @param vocabulary
+	 *            : the vocabulary of the training data (see WordIndexer). The
+	 *            CountStores are keyed by its word ids and binary count files
+	 *            (see CountRecordWriter) are read with it
+	 */
 	public KneserNeySmoother(File extractedSequenceDirectory,
-			File absoluteDirectory, File continuationDirectory, String delimiter) {
+			File absoluteDirectory, File continuationDirectory,
+			String delimiter, Vocabulary vocabulary) {
 		this.absoluteDirectory = absoluteDirectory;
 		this.continuationDirectory = continuationDirectory;
 		this.extractedAbsoluteDirectory = new File(
@@ -66,6 +80,7 @@ public class KneserNeySmoother {
 						+ continuationDirectory.getName());
 
 		this.delimiter = delimiter;
+		this.vocabulary = vocabulary;
 		this.decimalFormatter = new DecimalFormatter(Config.get().decimalPlaces);
 
 		this.discountTypesValuesMapFile = new File(this.absoluteDirectory
@@ -73,8 +88,15 @@ public class KneserNeySmoother {
 				+ "/discount-values-kneser-ney.ser");
 		this.discountTypeValuesMap = null;
 
-		this.totalUnigramCount = Counter.aggregateCountsInDirectory(new File(
-				absoluteDirectory.getAbsolutePath() + "/1"));
+		CountStatistics unigramStatistics = CountStatistics
+				.read(CountStatistics.getStatisticsFile(absoluteDirectory, "1"));
+		if (unigramStatistics != null) {
+			this.totalUnigramCount = unigramStatistics.getTotalCount();
+		} else {
+			this.totalUnigramCount = Counter
+					.aggregateCountsInDirectory(new File(absoluteDirectory
+							.getAbsolutePath() + "/1"), vocabulary);
+		}
 		this.logger.info("total unigram count: " + this.totalUnigramCount);
 	};
 
@@ -86,165 +108,236 @@ public class KneserNeySmoother {
 	 * @param resultFile
 	 * @param smoothComplex
 	 * @param maxModelLength
-	 * @param cores
 	 */
 	public void smooth(File inputSequenceFile, File resultFile,
 			int sequenceLength, boolean smoothComplex,
 			boolean conditionalProbabilityOnly) {
-		this.smoothComplex = smoothComplex;
+		this.smooth(inputSequenceFile, resultFile, sequenceLength,
+				smoothComplex, conditionalProbabilityOnly, 1);
+	}
+
+	/**
+	 * smooths like smooth(File, File, int, boolean, boolean) but scores
+	 * batches of sequences in parallel (see SmoothingPass). The results are
+	 * written in the order of inputSequenceFile
+	 * 
+	 * @param cores
+	 *            : number of threads
+	 */
+	public void smooth(File inputSequenceFile, File resultFile,
+			int sequenceLength, boolean smoothComplex,
+			boolean conditionalProbabilityOnly, int cores) {
 		this.logger
 				.info("start calculating kneser-ney (or mod kneser ney) of length "
 						+ sequenceLength);
+		SmoothingPass smoothingPass = new SmoothingPass(inputSequenceFile,
+				sequenceLength, conditionalProbabilityOnly);
+		smoothingPass.addResult(this, sequenceLength, smoothComplex,
+				resultFile);
+		smoothingPass.smooth(cores);
+	}
 
-		// calculate discount Values or read them from local file
+	/**
+	 * calculates the discount values or reads them from
+	 * discountTypesValuesMapFile before smoothing
+	 */
+	void loadDiscountValues() {
 		this.logger.info("calculate or read discount values");
-
 		this.discountTypeValuesMap = this.calculateDiscountValues(
 				this.absoluteDirectory, this.continuationDirectory);
+	}
+
+	/**
+	 * removes the conditional and lower order results of the last query of
+	 * the current thread
+	 */
+	void clearResults() {
+		this.conditionalResults.get().clear();
+		this.lowerOrderResults.get().clear();
+	}
+
+	/**
+	 * returns the line of the result of sequence in a result file
+	 */
+	String formatResult(String sequence, double result) {
+		return sequence + this.delimiter
+				+ this.decimalFormatter.getRoundedResult(result) + "\n";
+	}
+
+	private static ThreadLocal<HashMap<ResultKey, Double>> newThreadLocalResults() {
+		return new ThreadLocal<HashMap<ResultKey, Double>>() {
+			@Override
+			protected HashMap<ResultKey, Double> initialValue() {
+				return new HashMap<ResultKey, Double>();
+			}
+		};
+	}
+
+	/**
+	 * The key of a conditional or lower order result: the first
+	 * sequenceLength word ids of sequence with their pattern. sequence is not
+	 * copied since the word ids of a query are not changed after they are
+	 * read.
+	 */
+	private static class ResultKey {
+		private int[] sequence;
+		private int sequenceLength;
+		private String sequenceStringPattern;
+		private boolean smoothComplex;
+		private int hashCode;
+
+		ResultKey(int[] sequence, int sequenceLength,
+				String sequenceStringPattern, boolean smoothComplex) {
+			this.sequence = sequence;
+			this.sequenceLength = sequenceLength;
+			this.sequenceStringPattern = sequenceStringPattern;
+			this.smoothComplex = smoothComplex;
+			int hashCode = sequenceStringPattern.hashCode() * 2
+					+ (smoothComplex ? 1 : 0);
+			for (int i = 0; i < sequenceLength; i++) {
+				hashCode = hashCode * 31 + sequence[i];
+			}
+			this.hashCode = hashCode;
+		}
 
-		if (resultFile.exists()) {
-			resultFile.delete();
+		@Override
+		public int hashCode() {
+			return this.hashCode;
 		}
 
-		// go through sequence file
-		try {
-			BufferedReader inputSequenceReader = new BufferedReader(
-					new FileReader(inputSequenceFile));
-			BufferedWriter resultWriter = new BufferedWriter(new FileWriter(
-					resultFile));
-			String sequence;
-			String sequenceStringPattern = PatternTransformer
-					.getStringPattern(PatternTransformer
-							.getBooleanPatternWithOnes(sequenceLength));
-			while ((sequence = inputSequenceReader.readLine()) != null) {
-				double currentResult;
-				if (conditionalProbabilityOnly) {
-					currentResult = this.calculateConditionalProbability(
-							sequence, sequenceLength, sequenceStringPattern);
-				} else {
-					currentResult = this.calculateProbability(sequence,
-							sequenceLength, sequenceStringPattern);
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof ResultKey)) {
+				return false;
+			}
+			ResultKey resultKey = (ResultKey) object;
+			if (this.hashCode != resultKey.hashCode
+					|| this.sequenceLength != resultKey.sequenceLength
+					|| this.smoothComplex != resultKey.smoothComplex
+					|| !this.sequenceStringPattern
+							.equals(resultKey.sequenceStringPattern)) {
+				return false;
+			}
+			for (int i = 0; i < this.sequenceLength; i++) {
+				if (this.sequence[i] != resultKey.sequence[i]) {
+					return false;
 				}
-				resultWriter.write(sequence + this.delimiter
-						+ this.decimalFormatter.getRoundedResult(currentResult)
-						+ "\n");
 			}
-			inputSequenceReader.close();
-			resultWriter.close();
-		} catch (IOException e) {
-			e.printStackTrace();
+			return true;
 		}
-
 	}
 
-	public HashMap<String, HashMap<String, Long>> readAbsoluteValuesIntoHashMap(
-			File inputDirectory) {
-		HashMap<String, HashMap<String, Long>> typeSequenceValueMap = new HashMap<String, HashMap<String, Long>>();
+	public CountStore readAbsoluteValues(File inputDirectory) {
+		CountStore countStore = new CountStore(1, this.vocabulary);
+		long unknownSequenceCount = 0;
+		long[] counts = new long[1];
 		for (File typeDirectory : inputDirectory.listFiles()) {
-			HashMap<String, Long> sequenceValuesMap = new HashMap<String, Long>();
+			String pattern = typeDirectory.getName();
+			countStore.addPattern(pattern);
 			for (File sequenceValueFile : typeDirectory.listFiles()) {
 				try {
-					BufferedReader sequenceValueReader = new BufferedReader(
-							new FileReader(sequenceValueFile));
-					String line;
 					if (sequenceValueFile.getName().equals("all")) {
+						BufferedReader sequenceValueReader = new BufferedReader(
+								new FileReader(sequenceValueFile));
+						String line;
 						while ((line = sequenceValueReader.readLine()) != null) {
-							sequenceValuesMap.put("", Long.parseLong(line));
+							counts[0] = Long.parseLong(line);
+							countStore.put(pattern, "", counts);
 						}
+						sequenceValueReader.close();
 					} else {
-						while ((line = sequenceValueReader.readLine()) != null) {
-							String[] lineSplit = line.split(this.delimiter);
-							sequenceValuesMap.put(lineSplit[0],
-									Long.parseLong(lineSplit[1]));
+						CountRecordReader sequenceValueReader = CountRecordReader
+								.open(sequenceValueFile, this.delimiter,
+										this.vocabulary);
+						while (sequenceValueReader.next()) {
+							counts[0] = sequenceValueReader.getCount(0);
+							if (!countStore.put(pattern,
+									sequenceValueReader.getSequence(), counts)) {
+								unknownSequenceCount++;
+							}
 						}
+						sequenceValueReader.close();
 					}
-					sequenceValueReader.close();
 				} catch (NumberFormatException e) {
 					e.printStackTrace();
 				} catch (IOException e) {
 					e.printStackTrace();
 				}
 			}
-			typeSequenceValueMap
-					.put(typeDirectory.getName(), sequenceValuesMap);
 
 		}
-		// also add total count of 1grams
-		HashMap<String, Long> aggregated1GramsMap = new HashMap<String, Long>();
-		aggregated1GramsMap.put("", Counter
-				.aggregateCountsInDirectory(new File(this.absoluteDirectory
-						.getAbsolutePath() + "/1")));
-		typeSequenceValueMap.put("", aggregated1GramsMap);
-		return typeSequenceValueMap;
+		// also add total count of 1grams (read from absolute-stats/1 in the
+		// constructor)
+		counts[0] = this.totalUnigramCount;
+		countStore.put("", "", counts);
+		this.logUnknownSequences(inputDirectory, unknownSequenceCount);
+		return countStore;
 
 	}
 
-	public HashMap<String, HashMap<String, Long[]>> readContinuationValuesIntoHashMap(
-			File inputDirectory) {
-		HashMap<String, HashMap<String, Long[]>> typeSequenceValueMap = new HashMap<String, HashMap<String, Long[]>>();
+	public CountStore readContinuationValues(File inputDirectory) {
+		// [0]=1+
+		// [1]=1
+		// [2]=2
+		// [3]=3+
+		CountStore countStore = new CountStore(4, this.vocabulary);
+		long unknownSequenceCount = 0;
+		long[] counts = new long[4];
 
 		for (File typeDirectory : inputDirectory.listFiles()) {
-			HashMap<String, Long[]> sequenceValuesMap = new HashMap<String, Long[]>();
+			String pattern = typeDirectory.getName();
+			countStore.addPattern(pattern);
 			for (File sequenceValueFile : typeDirectory.listFiles()) {
 				try {
-					BufferedReader sequenceValueReader = new BufferedReader(
-							new FileReader(sequenceValueFile));
-					String line;
 					if (sequenceValueFile.getName().equals("all")) {
+						BufferedReader sequenceValueReader = new BufferedReader(
+								new FileReader(sequenceValueFile));
+						String line;
 						while ((line = sequenceValueReader.readLine()) != null) {
 							String[] lineSplit = line.split(this.delimiter);
-							Long[] currentResultTypeArray = new Long[4];
-
-							// [0]=1+
-							// [1]=1
-							// [2]=2
-							// [3]=3+
-							currentResultTypeArray[0] = Long
-									.parseLong(lineSplit[0]);
-							currentResultTypeArray[1] = Long
-									.parseLong(lineSplit[1]);
-							currentResultTypeArray[2] = Long
-									.parseLong(lineSplit[2]);
-							currentResultTypeArray[3] = Long
-									.parseLong(lineSplit[3]);
-							sequenceValuesMap.put("", currentResultTypeArray);
+							for (int i = 0; i < 4; i++) {
+								counts[i] = Long.parseLong(lineSplit[i]);
+							}
+							countStore.put(pattern, "", counts);
 						}
+						sequenceValueReader.close();
 					} else {
-						while ((line = sequenceValueReader.readLine()) != null) {
-							String[] lineSplit = line.split(this.delimiter);
-							Long[] currentResultTypeArray = new Long[4];
-
-							// [0]=1+
-							// [1]=1
-							// [2]=2
-							// [3]=3+
-							currentResultTypeArray[0] = Long
-									.parseLong(lineSplit[1]);
-							currentResultTypeArray[1] = Long
-									.parseLong(lineSplit[2]);
-							currentResultTypeArray[2] = Long
-									.parseLong(lineSplit[3]);
-							currentResultTypeArray[3] = Long
-									.parseLong(lineSplit[4]);
-							sequenceValuesMap.put(lineSplit[0],
-									currentResultTypeArray);
+						CountRecordReader sequenceValueReader = CountRecordReader
+								.open(sequenceValueFile, this.delimiter,
+										this.vocabulary);
+						while (sequenceValueReader.next()) {
+							for (int i = 0; i < 4; i++) {
+								counts[i] = sequenceValueReader.getCount(i);
+							}
+							if (!countStore.put(pattern,
+									sequenceValueReader.getSequence(), counts)) {
+								unknownSequenceCount++;
+							}
 						}
+						sequenceValueReader.close();
 					}
-					sequenceValueReader.close();
 				} catch (NumberFormatException e) {
 					e.printStackTrace();
 				} catch (IOException e) {
 					e.printStackTrace();
 				}
 			}
-			typeSequenceValueMap
-					.put(typeDirectory.getName(), sequenceValuesMap);
 
 		}
-		return typeSequenceValueMap;
+		this.logUnknownSequences(inputDirectory, unknownSequenceCount);
+		return countStore;
 
 	}
 
+	private void logUnknownSequences(File inputDirectory,
+			long unknownSequenceCount) {
+		if (unknownSequenceCount > 0) {
+			this.logger.warn(unknownSequenceCount + " sequences in "
+					+ inputDirectory.getAbsolutePath()
+					+ " contain words that are not part of the vocabulary");
+		}
+	}
+
 	/**
 	 * calculates a probability of a given sequence to be seen in a trained
 	 * language model
@@ -258,27 +351,43 @@ public class KneserNeySmoother {
 	 * @param sequence
 	 * @param sequenceLength
 	 * @param sequenceStringPattern
+	 * @param smoothComplex
 	 * @return
 	 */
 	protected double calculateProbability(String sequence, int sequenceLength,
-			String sequenceStringPattern) {
+			String sequenceStringPattern, boolean smoothComplex) {
+		return this.calculateProbability(this.vocabulary.getIds(sequence),
+				sequenceLength, smoothComplex);
+	}
+
+	/**
+	 * calculates the probability of the first sequenceLength words like
+	 * calculateProbability(String, int, String, boolean) in one walk over the
+	 * words: every sequence w_{1}...w_{i} is a prefix of sequence, which is
+	 * also the history of the conditional probability of the next one
+	 * 
+	 * @param sequence
+	 *            : the word ids of the sequence (see Vocabulary.getIds)
+	 * @param sequenceLength
+	 * @param smoothComplex
+	 * @return
+	 */
+	protected double calculateProbability(int[] sequence, int sequenceLength,
+			boolean smoothComplex) {
 		// double probability = 1;
 		double logProbability = 0;
-		String[] sequenceSplit = sequence.split("\\s");
+		StringBuilder sequenceStringPatternBuilder = new StringBuilder();
 		for (int i = 0; i < sequenceLength; i++) {
-			String newSequence = "";
-			int newSequenceLength = 0;
-			String newSequenceStringPattern = "";
-			for (int j = 0; j <= i; j++) {
-				newSequence += sequenceSplit[j] + " ";
-				newSequenceLength++;
-				newSequenceStringPattern += "1";
-			}
-			newSequence = newSequence.replaceFirst(" $", "");
+			sequenceStringPatternBuilder.append('1');
+			int newSequenceLength = i + 1;
+			String newSequenceStringPattern = sequenceStringPatternBuilder
+					.toString();
 			double currentResult = this.calculateConditionalProbability(
-					newSequence, newSequenceLength, newSequenceStringPattern);
+					sequence, newSequenceLength, newSequenceStringPattern,
+					smoothComplex);
 			if (currentResult <= 0) {
-				this.logger.error("zero probability at: " + newSequence + " , "
+				this.logger.error("zero probability at: "
+						+ this.getSequence(sequence, newSequenceLength) + " , "
 						+ newSequenceLength + " , " + newSequenceStringPattern);
 				currentResult = 0.000000000001;
 			}
@@ -298,13 +407,44 @@ public class KneserNeySmoother {
 	 * @param sequence
 	 * @param sequenceLength
 	 * @param sequenceStringPattern
+	 * @param smoothComplex
 	 * @return
 	 */
 	protected double calculateConditionalProbability(String sequence,
-			int sequenceLength, String sequenceStringPattern) {
+			int sequenceLength, String sequenceStringPattern,
+			boolean smoothComplex) {
+		return this.calculateConditionalProbability(
+				this.vocabulary.getIds(sequence), sequenceLength,
+				sequenceStringPattern, smoothComplex);
+	}
+
+	/**
+	 * like calculateConditionalProbability(String, int, String, boolean) for
+	 * the sequence of the first sequenceLength word ids of sequence. The
+	 * result is calculated only once per query
+	 */
+	protected double calculateConditionalProbability(int[] sequence,
+			int sequenceLength, String sequenceStringPattern,
+			boolean smoothComplex) {
+		ResultKey key = new ResultKey(sequence, sequenceLength,
+				sequenceStringPattern, smoothComplex);
+		HashMap<ResultKey, Double> conditionalResults = this.conditionalResults
+				.get();
+		Double result = conditionalResults.get(key);
+		if (result == null) {
+			result = this.calculateUncachedConditionalProbability(sequence,
+					sequenceLength, sequenceStringPattern, smoothComplex);
+			conditionalResults.put(key, result);
+		}
+		return result;
+	}
+
+	private double calculateUncachedConditionalProbability(int[] sequence,
+			int sequenceLength, String sequenceStringPattern,
+			boolean smoothComplex) {
 		// calculate highest order result
 		long highestOrderValue = this.getAbsoluteValue(sequenceStringPattern,
-				sequence);
+				sequence, sequenceLength);
 		if (sequenceLength == 1 && highestOrderValue == 0) {
 			return (double) 1 / (this.totalUnigramCount + 1);
 		}
@@ -316,19 +456,22 @@ public class KneserNeySmoother {
 		if (highestOrderNumerator < 0) {
 			highestOrderNumerator = 0;
 		}
-		String sequenceWithoutLast = SequenceFormatter.removeWord(sequence,
-				sequenceLength - 1);
+		// the sequence without its last word is the prefix of
+		// sequenceLength - 1 word ids
 		String sequencePatternWithoutLast = sequenceStringPattern.substring(0,
 				sequenceLength - 1);
 		long highestOrderDenominator = this.getAbsoluteValue(
-				sequencePatternWithoutLast, sequenceWithoutLast);
+				sequencePatternWithoutLast, sequence, sequenceLength - 1);
 
 		// call methods for lower order results
 		if (highestOrderDenominator == 0) {
 			// calculate result of sequence without first word
-			this.logger.debug("zero denominator for: " + sequence);
+			if (this.logger.isDebugEnabled()) {
+				this.logger.debug("zero denominator for: "
+						+ this.getSequence(sequence, sequenceLength));
+			}
 			return this.calculateAggregatedLowerOrderResult(sequence,
-					sequenceLength, sequenceStringPattern);
+					sequenceLength, sequenceStringPattern, smoothComplex);
 
 		}
 
@@ -338,39 +481,46 @@ public class KneserNeySmoother {
 						sequence, sequenceLength, sequenceStringPattern)
 				/ highestOrderDenominator
 				* this.calculateAggregatedLowerOrderResult(sequence,
-						sequenceLength, sequenceStringPattern);
-		this.logger.debug("KNhigh("
-				+ sequenceStringPattern
-				+ "): "
-				+ highestOrderValue
-				+ "-"
-				+ discountValue
-				+ "/"
-				+ highestOrderDenominator
-				+ "+"
-				+ discountValue
-				+ "*"
-				+ this.calculateWeightNumerator(sequenceStringPattern,
-						sequence, sequenceLength, sequenceStringPattern) + "/"
-				+ highestOrderDenominator + "*KNlowAggr("
-				+ sequenceStringPattern + ")=" + result);
+						sequenceLength, sequenceStringPattern, smoothComplex);
+		if (this.logger.isDebugEnabled()) {
+			this.logger.debug("KNhigh("
+					+ sequenceStringPattern
+					+ "): "
+					+ highestOrderValue
+					+ "-"
+					+ discountValue
+					+ "/"
+					+ highestOrderDenominator
+					+ "+"
+					+ discountValue
+					+ "*"
+					+ this.calculateWeightNumerator(sequenceStringPattern,
+							sequence, sequenceLength, sequenceStringPattern)
+					+ "/" + highestOrderDenominator + "*KNlowAggr("
+					+ sequenceStringPattern + ")=" + result);
+		}
 		return result;
 	}
 
 	protected double calculateAggregatedLowerOrderResult(
-			String higherOrderSequence, int higherOrderSequenceLength,
-			String higherOrderStringPattern) {
+			int[] higherOrderSequence, int higherOrderSequenceLength,
+			String higherOrderStringPattern, boolean smoothComplex) {
 		if (higherOrderSequenceLength < 2) {
 			return 0;
 		}
 
 		double aggregatedLowerOrderValue = 0;
 
-		if (this.smoothComplex) {
+		if (smoothComplex) {
 			char[] higherOrderCharPattern = higherOrderStringPattern
 					.toCharArray();
-			this.logger.debug("for lower order (" + higherOrderStringPattern
-					+ ") for \"" + higherOrderSequence + "\" aggregate:");
+			if (this.logger.isDebugEnabled()) {
+				this.logger.debug("for lower order ("
+						+ higherOrderStringPattern
+						+ ") for \""
+						+ this.getSequence(higherOrderSequence,
+								higherOrderSequenceLength) + "\" aggregate:");
+			}
 			// count skipped zeros to remove the correct word for the lower
 			// order sequence
 			int skippedZeros = 0;
@@ -379,7 +529,7 @@ public class KneserNeySmoother {
 					char[] lowerOrderCharPattern = higherOrderCharPattern
 							.clone();
 					lowerOrderCharPattern[i] = '0';
-					String lowerOrderSequence = null;
+					int[] lowerOrderSequence = null;
 					// FIXME: conjecture: this leads to a huge perplexity gain
 					// because also the last word in a sequence is being removed
 					// see results of commit
@@ -391,21 +541,21 @@ public class KneserNeySmoother {
 							lowerOrderCharPattern = Arrays.copyOfRange(
 									lowerOrderCharPattern, 1,
 									lowerOrderCharPattern.length);
-							lowerOrderSequence = SequenceFormatter.removeWord(
-									higherOrderSequence, 0);
 						}
+						lowerOrderSequence = removeWord(higherOrderSequence,
+								higherOrderSequenceLength, 0);
 					} else {
-						lowerOrderSequence = SequenceFormatter.removeWord(
-								higherOrderSequence, i - skippedZeros);
+						lowerOrderSequence = removeWord(higherOrderSequence,
+								higherOrderSequenceLength, i - skippedZeros);
 					}
 
-					if (lowerOrderSequence.length() > 0) {
+					if (lowerOrderSequence.length > 0) {
 						String lowerOrderStringPattern = String
 								.copyValueOf(lowerOrderCharPattern);
 						double currentLowerOrderValue = this
 								.calculateLowerOrderResult(lowerOrderSequence,
 										higherOrderSequenceLength - 1,
-										lowerOrderStringPattern);
+										lowerOrderStringPattern, smoothComplex);
 						aggregatedLowerOrderValue += currentLowerOrderValue;
 					}
 				} else {
@@ -420,22 +570,32 @@ public class KneserNeySmoother {
 			// higherOrderSequenceLength; instead but never mind
 			double result = aggregatedLowerOrderValue
 					/ (higherOrderSequenceLength - 1);
-			this.logger.debug("lower order result (" + higherOrderStringPattern
-					+ ") for \"" + higherOrderSequence + "\":"
-					+ aggregatedLowerOrderValue + "/"
-					+ (higherOrderSequenceLength - 1) + "=" + result);
+			if (this.logger.isDebugEnabled()) {
+				this.logger.debug("lower order result ("
+						+ higherOrderStringPattern
+						+ ") for \""
+						+ this.getSequence(higherOrderSequence,
+								higherOrderSequenceLength) + "\":"
+						+ aggregatedLowerOrderValue + "/"
+						+ (higherOrderSequenceLength - 1) + "=" + result);
+			}
 			return result;
 		} else {
-			String lowerOrderSequence = SequenceFormatter.removeWord(
-					higherOrderSequence, 0);
+			int[] lowerOrderSequence = removeWord(higherOrderSequence,
+					higherOrderSequenceLength, 0);
 			String lowerOrderStringPattern = higherOrderStringPattern
 					.substring(1);
 
 			double result = this.calculateLowerOrderResult(lowerOrderSequence,
-					higherOrderSequenceLength - 1, lowerOrderStringPattern);
-			this.logger.debug("lower order result ("
-					+ +higherOrderSequenceLength + ") for \""
-					+ higherOrderSequence + "\"=" + result);
+					higherOrderSequenceLength - 1, lowerOrderStringPattern,
+					smoothComplex);
+			if (this.logger.isDebugEnabled()) {
+				this.logger.debug("lower order result ("
+						+ +higherOrderSequenceLength
+						+ ") for \""
+						+ this.getSequence(higherOrderSequence,
+								higherOrderSequenceLength) + "\"=" + result);
+			}
 
 			return result;
 		}
@@ -443,15 +603,77 @@ public class KneserNeySmoother {
 	}
 
 	protected double calculateLowerOrderResult(String sequence,
-			int sequenceLength, String sequenceStringPattern) {
+			int sequenceLength, String sequenceStringPattern,
+			boolean smoothComplex) {
+		return this.calculateLowerOrderResult(
+				this.vocabulary.getIds(sequence), sequenceLength,
+				sequenceStringPattern, smoothComplex);
+	}
+
+	/**
+	 * returns the lower order result of the sequence of the first
+	 * sequenceLength word ids of sequence, which is calculated only once per
+	 * query for every pattern and sequence
+	 */
+	protected double calculateLowerOrderResult(int[] sequence,
+			int sequenceLength, String sequenceStringPattern,
+			boolean smoothComplex) {
+		ResultKey key = new ResultKey(sequence, sequenceLength,
+				sequenceStringPattern, smoothComplex);
+		HashMap<ResultKey, Double> lowerOrderResults = this.lowerOrderResults
+				.get();
+		Double result = lowerOrderResults.get(key);
+		if (result == null) {
+			result = this.calculateUncachedLowerOrderResult(sequence,
+					sequenceLength, sequenceStringPattern, smoothComplex);
+			lowerOrderResults.put(key, result);
+		}
+		return result;
+	}
+
+	/**
+	 * returns the first sequenceLength word ids of sequence without the word
+	 * at position
+	 */
+	private static int[] removeWord(int[] sequence, int sequenceLength,
+			int position) {
+		int[] result = new int[sequenceLength - 1];
+		System.arraycopy(sequence, 0, result, 0, position);
+		System.arraycopy(sequence, position + 1, result, position,
+				sequenceLength - position - 1);
+		return result;
+	}
+
+	/**
+	 * returns the words of the first sequenceLength word ids of sequence for
+	 * logging
+	 */
+	private String getSequence(int[] sequence, int sequenceLength) {
+		StringBuilder words = new StringBuilder();
+		for (int i = 0; i < sequenceLength; i++) {
+			if (i > 0) {
+				words.append(' ');
+			}
+			if (sequence[i] < 0) {
+				words.append("<unknown>");
+			} else {
+				words.append(this.vocabulary.getWord(sequence[i]));
+			}
+		}
+		return words.toString();
+	}
+
+	private double calculateUncachedLowerOrderResult(int[] sequence,
+			int sequenceLength, String sequenceStringPattern,
+			boolean smoothComplex) {
 		String continuationPattern;
 		if (sequenceStringPattern.contains("0")) {// in glm case replacing
-			continuationPattern = sequenceStringPattern.replaceAll("0", "_");
+			continuationPattern = sequenceStringPattern.replace('0', '_');
 		} else {
 			continuationPattern = "_" + sequenceStringPattern;
 		}
 		long higherOrderValue = this.getContinuationValue(continuationPattern,
-				sequence, 0);
+				sequence, sequenceLength, 0);
 		if (sequenceLength == 1 && higherOrderValue == 0) {
 			return (double) 1 / (this.totalUnigramCount + 1);
 		}
@@ -464,15 +686,18 @@ public class KneserNeySmoother {
 			highestOrderNumerator = 0;
 		}
 
-		String sequenceWithoutLast = SequenceFormatter.removeWord(sequence,
-				sequenceLength - 1);
 		String continuationReplacedLastStringPattern = continuationPattern
 				.substring(0, continuationPattern.length() - 1) + "_";
-		this.logger.debug("calculateLowerOrder: " + sequence + "("
-				+ sequenceStringPattern + ")" + "-->" + sequenceWithoutLast
-				+ "(" + continuationReplacedLastStringPattern + "):");
+		if (this.logger.isDebugEnabled()) {
+			this.logger.debug("calculateLowerOrder: "
+					+ this.getSequence(sequence, sequenceLength) + "("
+					+ sequenceStringPattern + ")" + "-->"
+					+ this.getSequence(sequence, sequenceLength - 1) + "("
+					+ continuationReplacedLastStringPattern + "):");
+		}
 		long higherOrderDenominator = this.getContinuationValue(
-				continuationReplacedLastStringPattern, sequenceWithoutLast, 0);
+				continuationReplacedLastStringPattern, sequence,
+				sequenceLength - 1, 0);
 
 		// // the higher
 		// if (higherOrderDenominator == 0) {
@@ -492,9 +717,12 @@ public class KneserNeySmoother {
 				// System.exit(1);
 			}
 			// calculate result of sequence without first word
-			this.logger.debug("zero denominator for: " + sequence);
+			if (this.logger.isDebugEnabled()) {
+				this.logger.debug("zero denominator for: "
+						+ this.getSequence(sequence, sequenceLength));
+			}
 			return this.calculateAggregatedLowerOrderResult(sequence,
-					sequenceLength, sequenceStringPattern);
+					sequenceLength, sequenceStringPattern, smoothComplex);
 
 		}
 
@@ -508,26 +736,28 @@ public class KneserNeySmoother {
 				// sequenceStringPattern)
 				/ higherOrderDenominator
 				* this.calculateAggregatedLowerOrderResult(sequence,
-						sequenceLength, sequenceStringPattern);
-
-		this.logger.debug("\tKNlow("
-				+ sequenceStringPattern
-				+ "): "
-				+ higherOrderValue
-				+ "-"
-				+ discountValue
-				+ "/"
-				+ higherOrderDenominator
-				+ "+"
-				+ this.calculateWeightNumerator(continuationPattern, sequence,
-						sequenceLength, sequenceStringPattern) + "/"
-				+ higherOrderDenominator + "*KNlowAggr("
-				+ sequenceStringPattern + ")=" + result);
+						sequenceLength, sequenceStringPattern, smoothComplex);
+
+		if (this.logger.isDebugEnabled()) {
+			this.logger.debug("\tKNlow("
+					+ sequenceStringPattern
+					+ "): "
+					+ higherOrderValue
+					+ "-"
+					+ discountValue
+					+ "/"
+					+ higherOrderDenominator
+					+ "+"
+					+ this.calculateWeightNumerator(continuationPattern,
+							sequence, sequenceLength, sequenceStringPattern)
+					+ "/" + higherOrderDenominator + "*KNlowAggr("
+					+ sequenceStringPattern + ")=" + result);
+		}
 		return result;
 	}
 
 	protected double calculateWeightNumerator(String continuationPattern,
-			String sequence, int sequenceLength, String sequenceStringPattern) {
+			int[] sequence, int sequenceLength, String sequenceStringPattern) {
 		return this.getDiscountValue(continuationPattern, 1)
 				* this.calculateContinuationLast(sequence, sequenceLength,
 						sequenceStringPattern, 0);
@@ -595,10 +825,8 @@ public class KneserNeySmoother {
 				continue;
 			}
 			HashMap<String, Double> discountValuesMap = new HashMap<String, Double>();
-			long n1 = Counter.countCountsInDirectory(1, absoluteTypeDirectory,
-					"<fs>");
-			long n2 = Counter.countCountsInDirectory(2, absoluteTypeDirectory,
-					"<fs>");
+			long n1 = this.countCounts(1, absoluteTypeDirectory);
+			long n2 = this.countCounts(2, absoluteTypeDirectory);
 			this.logger.info("n1 for " + absoluteTypeDirectory.getName() + ":"
 					+ n1);
 			this.logger.info("n2 for " + absoluteTypeDirectory.getName() + ":"
@@ -616,34 +844,54 @@ public class KneserNeySmoother {
 
 	}
 
-	protected long getAbsoluteValue(String pattern, String sequence) {
-		if (!this.absoluteTypeSequenceValueMap.containsKey(pattern)) {
+	/**
+	 * returns the number of sequences in typeDirectory that occur exactly
+	 * count times. The CountStatistics written by the splitters are used if
+	 * they exist, otherwise all files in typeDirectory are read.
+	 * 
+	 * @param count
+	 * @param typeDirectory
+	 * @return
+	 */
+	protected long countCounts(int count, File typeDirectory) {
+		CountStatistics countStatistics = CountStatistics.read(CountStatistics
+				.getStatisticsFile(typeDirectory.getParentFile(),
+						typeDirectory.getName()));
+		if (countStatistics != null) {
+			return countStatistics.getCountOfCounts(count);
+		}
+		return Counter.countCountsInDirectory(count, typeDirectory, "<fs>",
+				this.vocabulary);
+	}
+
+	/**
+	 * returns the absolute count of the first sequenceLength word ids of
+	 * sequence
+	 */
+	protected long getAbsoluteValue(String pattern, int[] sequence,
+			int sequenceLength) {
+		if (!this.absoluteCountStore.hasPattern(pattern)) {
 			this.logger.error("Absolute pattern not found:" + pattern);
 			// System.exit(1);
 			return 0;
 
 		}
-		if (this.absoluteTypeSequenceValueMap.get(pattern)
-				.containsKey(sequence)) {
-			return this.absoluteTypeSequenceValueMap.get(pattern).get(sequence);
-		} else {
-			return 0;
-		}
+		return this.absoluteCountStore.get(pattern, sequence, sequenceLength,
+				0);
 	}
 
-	protected long getContinuationValue(String pattern, String sequence,
-			int countIndex) {
-		if (!this.continuationTypeSequenceValueMap.containsKey(pattern)) {
+	/**
+	 * returns the continuation count in column countIndex of the first
+	 * sequenceLength word ids of sequence
+	 */
+	protected long getContinuationValue(String pattern, int[] sequence,
+			int sequenceLength, int countIndex) {
+		if (!this.continuationCountStore.hasPattern(pattern)) {
 			this.logger.error("Continuation pattern not found:" + pattern);
 			System.exit(1);
 		}
-		if (this.continuationTypeSequenceValueMap.get(pattern).containsKey(
-				sequence)) {
-			return this.continuationTypeSequenceValueMap.get(pattern).get(
-					sequence)[countIndex];
-		} else {
-			return 0;
-		}
+		return this.continuationCountStore.get(pattern, sequence,
+				sequenceLength, countIndex);
 	}
 
 	// the following methods are overwritten by ModifiedKneserNeySmoother
@@ -658,8 +906,8 @@ public class KneserNeySmoother {
 	 */
 	protected double getDiscountValue(String sequenceStringPattern,
 			long sequenceCount) {
-		String stringPatternForBitcount = sequenceStringPattern.replaceAll("_",
-				"0");
+		String stringPatternForBitcount = sequenceStringPattern.replace('_',
+				'0');
 		if (Integer.bitCount(PatternTransformer
 				.getIntPattern(PatternTransformer
 						.getBooleanPattern(stringPatternForBitcount))) > 1) {
@@ -670,19 +918,21 @@ public class KneserNeySmoother {
 		}
 	}
 
-	protected double calculateContinuationLast(String sequence,
+	protected double calculateContinuationLast(int[] sequence,
 			int sequenceLength, String sequenceStringPattern, int countIndex) {
-		String sequenceWithoutLast = SequenceFormatter.removeWord(sequence,
-				sequenceLength - 1);
-		sequenceStringPattern = sequenceStringPattern.replaceAll("0", "_");
+		sequenceStringPattern = sequenceStringPattern.replace('0', '_');
 		String continuationLastPattern = sequenceStringPattern.substring(0,
 				sequenceStringPattern.length() - 1) + "_";
 		long continuationLastValue = this.getContinuationValue(
-				continuationLastPattern, sequenceWithoutLast, countIndex);
-		this.logger.debug("\t\tcontinuationLast(" + sequenceStringPattern + "("
-				+ sequenceLength + ")-->" + continuationLastPattern + ") for "
-				+ sequence + "-->" + sequenceWithoutLast + ":"
-				+ continuationLastValue);
+				continuationLastPattern, sequence, sequenceLength - 1,
+				countIndex);
+		if (this.logger.isDebugEnabled()) {
+			this.logger.debug("\t\tcontinuationLast(" + sequenceStringPattern
+					+ "(" + sequenceLength + ")-->" + continuationLastPattern
+					+ ") for " + this.getSequence(sequence, sequenceLength)
+					+ "-->" + this.getSequence(sequence, sequenceLength - 1)
+					+ ":" + continuationLastValue);
+		}
 		return continuationLastValue;
 	}
 
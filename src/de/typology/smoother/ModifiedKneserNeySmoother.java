@@ -3,16 +3,16 @@ package de.typology.smoother;
 import java.io.File;
 import java.util.HashMap;
 
+import de.typology.indexes.Vocabulary;
 import de.typology.patterns.PatternTransformer;
-import de.typology.utils.Counter;
 
 public class ModifiedKneserNeySmoother extends KneserNeySmoother {
 
 	public ModifiedKneserNeySmoother(File extractedSequenceDirectory,
 			File absoluteDirectory, File continuationDirectory,
-			String delimiter, int decimalPlaces) {
+			String delimiter, Vocabulary vocabulary, int decimalPlaces) {
 		super(extractedSequenceDirectory, absoluteDirectory,
-				continuationDirectory, delimiter);
+				continuationDirectory, delimiter, vocabulary);
 
 		this.discountTypesValuesMapFile = new File(this.absoluteDirectory
 				.getParentFile().getAbsolutePath()
@@ -37,14 +37,10 @@ public class ModifiedKneserNeySmoother extends KneserNeySmoother {
 				continue;
 			}
 			HashMap<String, Double> discountValuesMap = new HashMap<String, Double>();
-			long n1 = Counter.countCountsInDirectory(1, absoluteTypeDirectory,
-					"<fs>");
-			long n2 = Counter.countCountsInDirectory(2, absoluteTypeDirectory,
-					"<fs>");
-			long n3 = Counter.countCountsInDirectory(3, absoluteTypeDirectory,
-					"<fs>");
-			long n4 = Counter.countCountsInDirectory(4, absoluteTypeDirectory,
-					"<fs>");
+			long n1 = this.countCounts(1, absoluteTypeDirectory);
+			long n2 = this.countCounts(2, absoluteTypeDirectory);
+			long n3 = this.countCounts(3, absoluteTypeDirectory);
+			long n4 = this.countCounts(4, absoluteTypeDirectory);
 			this.logger.info("n1 for " + absoluteTypeDirectory.getName() + ":"
 					+ n1);
 			this.logger.info("n2 for " + absoluteTypeDirectory.getName() + ":"
@@ -84,8 +80,8 @@ public class ModifiedKneserNeySmoother extends KneserNeySmoother {
 	@Override
 	protected double getDiscountValue(String sequenceStringPattern,
 			long sequenceCount) {
-		String stringPatternForBitcount = sequenceStringPattern.replaceAll("_",
-				"0");
+		String stringPatternForBitcount = sequenceStringPattern.replace('_',
+				'0');
 		if (Integer.bitCount(PatternTransformer
 				.getIntPattern(PatternTransformer
 						.getBooleanPattern(stringPatternForBitcount))) > 1) {
@@ -112,7 +108,7 @@ public class ModifiedKneserNeySmoother extends KneserNeySmoother {
 
 	@Override
 	protected double calculateWeightNumerator(String continuationPattern,
-			String sequence, int sequenceLength, String sequenceStringPattern) {
+			int[] sequence, int sequenceLength, String sequenceStringPattern) {
 		// [0]=1+
 		// [1]=1
 		// [2]=2
@@ -0,0 +1,330 @@
+package de.typology.smoother;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import de.typology.indexes.Vocabulary;
+import de.typology.patterns.PatternTransformer;
+
+/**
+ * Scores the sequences of a file and their prefixes with several smoothers in
+ * one pass over the file.
+ * <p>
+ * The testing samples of every length (see DataSetSplitter.splitIntoSequences)
+ * are the prefixes of the longest samples, so the results of all lengths, of
+ * standard and generalized smoothing and of Kneser-Ney and modified Kneser-Ney
+ * are calculated from the longest samples: the words of a sample are looked up
+ * once, and every smoother calculates the conditional probabilities of its
+ * prefixes only once (see KneserNeySmoother.calculateProbability).
+ *
+ * @author Martin Koerner
+ *
+ */
+public class SmoothingPass {
+
+	Logger logger = LogManager.getLogger(this.getClass().getName());
+
+	// number of sequences that are scored by one task in parallel smoothing
+	private static final int SMOOTHING_BATCH_SIZE = 1000;
+
+	private File inputSequenceFile;
+	private int maxSequenceLength;
+	private boolean conditionalProbabilityOnly;
+	// the pattern of the prefix of every length
+	private String[] sequenceStringPatterns;
+
+	// result i is calculated by resultSmoothers[i] for the prefixes of
+	// resultSequenceLengths[i] words with resultSmoothComplex[i] and written
+	// to resultFiles[i]
+	private ArrayList<KneserNeySmoother> resultSmoothers = new ArrayList<KneserNeySmoother>();
+	private ArrayList<Integer> resultSequenceLengths = new ArrayList<Integer>();
+	private ArrayList<Boolean> resultSmoothComplex = new ArrayList<Boolean>();
+	private ArrayList<File> resultFiles = new ArrayList<File>();
+	// every smoother of the results once
+	private ArrayList<KneserNeySmoother> smoothers = new ArrayList<KneserNeySmoother>();
+	private Vocabulary vocabulary;
+
+	/**
+	 * @param inputSequenceFile
+	 *            : one sequence of maxSequenceLength words per line
+	 * @param conditionalProbabilityOnly
+	 *            : calculate the conditional probability of the last word of
+	 *            every prefix instead of the probability of the prefix
+	 */
+	public SmoothingPass(File inputSequenceFile, int maxSequenceLength,
+			boolean conditionalProbabilityOnly) {
+		this.inputSequenceFile = inputSequenceFile;
+		this.maxSequenceLength = maxSequenceLength;
+		this.conditionalProbabilityOnly = conditionalProbabilityOnly;
+		this.sequenceStringPatterns = new String[maxSequenceLength + 1];
+		for (int i = 1; i <= maxSequenceLength; i++) {
+			this.sequenceStringPatterns[i] = PatternTransformer
+					.getStringPattern(PatternTransformer
+							.getBooleanPatternWithOnes(i));
+		}
+	}
+
+	/**
+	 * adds the results of smoother for the prefixes of sequenceLength words of
+	 * the input sequences, which are written to resultFile. All smoothers of a
+	 * pass need to have the same vocabulary
+	 */
+	public void addResult(KneserNeySmoother smoother, int sequenceLength,
+			boolean smoothComplex, File resultFile) {
+		if (sequenceLength < 1 || sequenceLength > this.maxSequenceLength) {
+			throw new IllegalArgumentException("sequence length "
+					+ sequenceLength + " is not between 1 and "
+					+ this.maxSequenceLength);
+		}
+		if (!this.smoothers.contains(smoother)) {
+			if (this.vocabulary == null) {
+				this.vocabulary = smoother.vocabulary;
+			} else if (this.vocabulary != smoother.vocabulary) {
+				throw new IllegalArgumentException(
+						"the smoothers of a pass need to have the same vocabulary");
+			}
+			this.smoothers.add(smoother);
+		}
+		this.resultSmoothers.add(smoother);
+		this.resultSequenceLengths.add(sequenceLength);
+		this.resultSmoothComplex.add(smoothComplex);
+		this.resultFiles.add(resultFile);
+	}
+
+	/**
+	 * adds the results of standard and generalized smoothing of all lengths:
+	 * the results for the prefixes of i + 1 words are written to
+	 * simpleResultFiles[i] and complexResultFiles[i]. Result files that are
+	 * null are skipped
+	 */
+	public void addResults(KneserNeySmoother smoother,
+			File[] simpleResultFiles, File[] complexResultFiles) {
+		for (int i = 0; i < this.maxSequenceLength; i++) {
+			for (boolean smoothComplex : new boolean[] { false, true }) {
+				File[] variantResultFiles = smoothComplex ? complexResultFiles
+						: simpleResultFiles;
+				if (variantResultFiles != null
+						&& variantResultFiles[i] != null) {
+					this.addResult(smoother, i + 1, smoothComplex,
+							variantResultFiles[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * calculates all results in one pass over the input sequences
+	 *
+	 * @param cores
+	 *            : number of threads. Batches of SMOOTHING_BATCH_SIZE
+	 *            sequences are scored in parallel, the results are written in
+	 *            the order of the input sequences
+	 */
+	public void smooth(int cores) {
+		if (this.resultFiles.isEmpty()) {
+			return;
+		}
+		this.logger.info("start smoothing " + this.resultFiles.size()
+				+ " results of lengths 1 to " + this.maxSequenceLength
+				+ " in one pass over " + this.inputSequenceFile.getName());
+		for (KneserNeySmoother smoother : this.smoothers) {
+			smoother.loadDiscountValues();
+		}
+
+		for (File resultFile : this.resultFiles) {
+			if (resultFile.exists()) {
+				resultFile.delete();
+			}
+		}
+
+		BufferedReader inputSequenceReader = null;
+		BufferedWriter[] resultWriters = new BufferedWriter[this.resultFiles
+				.size()];
+		boolean succeeded = false;
+		try {
+			inputSequenceReader = new BufferedReader(new FileReader(
+					this.inputSequenceFile));
+			for (int i = 0; i < resultWriters.length; i++) {
+				resultWriters[i] = new BufferedWriter(new FileWriter(
+						this.resultFiles.get(i)));
+			}
+			if (cores > 1) {
+				this.smoothInParallel(inputSequenceReader, resultWriters, cores);
+			} else {
+				String sequence;
+				while ((sequence = inputSequenceReader.readLine()) != null) {
+					this.writeResults(resultWriters, sequence,
+							this.calculateResults(sequence));
+				}
+			}
+			succeeded = true;
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		} catch (ExecutionException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		} finally {
+			if (inputSequenceReader != null) {
+				try {
+					inputSequenceReader.close();
+				} catch (IOException e) {
+					// TODO Auto-generated catch block
+					e.printStackTrace();
+				}
+			}
+			for (BufferedWriter resultWriter : resultWriters) {
+				if (resultWriter != null) {
+					try {
+						resultWriter.close();
+					} catch (IOException e) {
+						// TODO Auto-generated catch block
+						e.printStackTrace();
+						succeeded = false;
+					}
+				}
+			}
+			if (!succeeded) {
+				// make sure that no incomplete result file is stored
+				for (File resultFile : this.resultFiles) {
+					if (resultFile.exists()) {
+						resultFile.delete();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * reads batches of sequences and scores them on cores threads. At most
+	 * two batches per thread are read ahead of the results that are written
+	 */
+	private void smoothInParallel(BufferedReader inputSequenceReader,
+			BufferedWriter[] resultWriters, int cores) throws IOException,
+			InterruptedException, ExecutionException {
+		ExecutorService executorService = Executors.newFixedThreadPool(cores);
+		LinkedList<String[]> batches = new LinkedList<String[]>();
+		LinkedList<Future<double[][]>> batchResults = new LinkedList<Future<double[][]>>();
+		try {
+			String[] batch;
+			while ((batch = readBatch(inputSequenceReader)) != null) {
+				if (batchResults.size() >= 2 * cores) {
+					this.writeResults(resultWriters, batches.removeFirst(),
+							batchResults.removeFirst().get());
+				}
+				final String[] sequences = batch;
+				batches.add(sequences);
+				batchResults.add(executorService
+						.submit(new Callable<double[][]>() {
+							@Override
+							public double[][] call() {
+								double[][] results = new double[sequences.length][];
+								for (int i = 0; i < sequences.length; i++) {
+									results[i] = SmoothingPass.this
+											.calculateResults(sequences[i]);
+								}
+								return results;
+							}
+						}));
+			}
+			while (!batchResults.isEmpty()) {
+				this.writeResults(resultWriters, batches.removeFirst(),
+						batchResults.removeFirst().get());
+			}
+		} finally {
+			// after a failure the queued batches are not scored any more and
+			// the running ones are waited for before the writers are closed
+			executorService.shutdownNow();
+			executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * returns the next SMOOTHING_BATCH_SIZE lines of reader or less at the end
+	 * of reader, null if there are none
+	 */
+	private static String[] readBatch(BufferedReader reader)
+			throws IOException {
+		ArrayList<String> batch = new ArrayList<String>(SMOOTHING_BATCH_SIZE);
+		String line;
+		while (batch.size() < SMOOTHING_BATCH_SIZE
+				&& (line = reader.readLine()) != null) {
+			batch.add(line);
+		}
+		if (batch.isEmpty()) {
+			return null;
+		}
+		return batch.toArray(new String[batch.size()]);
+	}
+
+	/**
+	 * returns the conditional probabilities or the probabilities of the
+	 * prefixes of sequence for all results
+	 */
+	private double[] calculateResults(String sequence) {
+		// the words are looked up once for all smoothers and lengths
+		int[] wordIds = this.vocabulary.getIds(sequence);
+		// results are only shared within a sequence
+		for (KneserNeySmoother smoother : this.smoothers) {
+			smoother.clearResults();
+		}
+		double[] results = new double[this.resultFiles.size()];
+		for (int i = 0; i < results.length; i++) {
+			KneserNeySmoother smoother = this.resultSmoothers.get(i);
+			int sequenceLength = this.resultSequenceLengths.get(i);
+			if (this.conditionalProbabilityOnly) {
+				results[i] = smoother.calculateConditionalProbability(wordIds,
+						sequenceLength,
+						this.sequenceStringPatterns[sequenceLength],
+						this.resultSmoothComplex.get(i));
+			} else {
+				results[i] = smoother.calculateProbability(wordIds,
+						sequenceLength, this.resultSmoothComplex.get(i));
+			}
+		}
+		return results;
+	}
+
+	private void writeResults(BufferedWriter[] resultWriters,
+			String[] sequences, double[][] results) throws IOException {
+		for (int i = 0; i < sequences.length; i++) {
+			this.writeResults(resultWriters, sequences[i], results[i]);
+		}
+	}
+
+	private void writeResults(BufferedWriter[] resultWriters, String sequence,
+			double[] results) throws IOException {
+		// the prefixes are written like the testing samples of their length
+		String[] words = sequence.split("\\s");
+		String[] prefixes = new String[this.maxSequenceLength + 1];
+		StringBuilder prefix = new StringBuilder();
+		for (int i = 1; i <= this.maxSequenceLength; i++) {
+			if (i > 1) {
+				prefix.append(' ');
+			}
+			prefix.append(words[i - 1]);
+			prefixes[i] = prefix.toString();
+		}
+		for (int i = 0; i < results.length; i++) {
+			resultWriters[i].write(this.resultSmoothers.get(i).formatResult(
+					prefixes[this.resultSequenceLengths.get(i)], results[i]));
+		}
+	}
+}
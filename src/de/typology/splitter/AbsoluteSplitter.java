@@ -1,8 +1,6 @@
 package de.typology.splitter;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -14,8 +12,11 @@ import org.apache.commons.io.FileUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import de.typology.indexes.Vocabulary;
 import de.typology.indexes.WordIndex;
 import de.typology.patterns.PatternTransformer;
+import de.typology.utils.CodecStreams;
+import de.typology.utils.SpillWriterPool;
 
 /**
  * Split
@@ -31,12 +32,29 @@ public class AbsoluteSplitter {
 	protected boolean deleteTempFiles;
 	protected String addBeforeSentence;
 	protected String addAfterSentence;
+	protected int maxBufferedSequences;
+	protected SpillWriterPool writerPool;
+	protected long aggregatorMemory;
+	protected Vocabulary vocabulary;
 
 	Logger logger = LogManager.getLogger(this.getClass().getName());
 
 	public AbsoluteSplitter(File inputFile, File indexFile,
 			File outputDirectory, String delimiter, boolean deleteTempFiles,
 			String addBeforeSentence, String addAfterSentence) {
+		this(inputFile, indexFile, outputDirectory, delimiter,
+				deleteTempFiles, addBeforeSentence, addAfterSentence, 0);
+	}
+
+	/**
+	 * @param maxBufferedSequences
+	 *            : if greater than zero, equal sequences are counted in memory
+	 *            before they are written (see SequenceCombiner)
+	 */
+	public AbsoluteSplitter(File inputFile, File indexFile,
+			File outputDirectory, String delimiter, boolean deleteTempFiles,
+			String addBeforeSentence, String addAfterSentence,
+			int maxBufferedSequences) {
 		this.inputFile = inputFile;
 		this.indexFile = indexFile;
 		this.outputDirectory = outputDirectory;
@@ -44,6 +62,7 @@ public class AbsoluteSplitter {
 		this.deleteTempFiles = deleteTempFiles;
 		this.addBeforeSentence = addBeforeSentence;
 		this.addAfterSentence = addAfterSentence;
+		this.maxBufferedSequences = maxBufferedSequences;
 		// delete old directory
 		if (outputDirectory.exists()) {
 			try {
@@ -54,6 +73,44 @@ public class AbsoluteSplitter {
 			}
 		}
 		outputDirectory.mkdir();
+		File statisticsDirectory = new File(
+				outputDirectory.getAbsolutePath() + "-stats");
+		if (statisticsDirectory.exists()) {
+			try {
+				FileUtils.deleteDirectory(statisticsDirectory);
+			} catch (IOException e) {
+				// TODO Auto-generated catch block
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * the split files of all patterns are written using writerPool (see
+	 * WordIndex.setWriterPool). null means one buffered writer per file.
+	 *
+	 * @param writerPool
+	 */
+	public void setWriterPool(SpillWriterPool writerPool) {
+		this.writerPool = writerPool;
+	}
+
+	/**
+	 * @param aggregatorMemory
+	 *            : estimated number of bytes each aggregation may use before
+	 *            it sorts externally (see Aggregator.setMaxMemory)
+	 */
+	public void setAggregatorMemory(long aggregatorMemory) {
+		this.aggregatorMemory = aggregatorMemory;
+	}
+
+	/**
+	 * @param vocabulary
+	 *            : the count files are written as binary records (see
+	 *            CountRecordWriter) if it is not null
+	 */
+	public void setVocabulary(Vocabulary vocabulary) {
+		this.vocabulary = vocabulary;
 	}
 
 	public void split(ArrayList<boolean[]> patterns, int cores) {
@@ -61,31 +118,42 @@ public class AbsoluteSplitter {
 		this.logger
 				.info("read word index: " + this.indexFile.getAbsolutePath());
 		WordIndex wordIndex = new WordIndex(this.indexFile);
+		wordIndex.setWriterPool(this.writerPool);
 
 		// initialize executerService
 		// int cores = Runtime.getRuntime().availableProcessors();
 		ExecutorService executorService = Executors.newFixedThreadPool(cores);
+		// the split files of all patterns are aggregated on a shared executor
+		ExecutorService aggregatorExecutorService = Executors
+				.newFixedThreadPool(cores);
 		for (boolean[] pattern : patterns) {
 			this.logger.debug("execute SplitterTask for: "
 					+ PatternTransformer.getStringPattern(pattern)
 					+ " sequences");
 
 			try {
-				InputStream inputFileInputStream = new FileInputStream(
-						this.inputFile);
+				InputStream inputFileInputStream = CodecStreams
+						.openInputStream(this.inputFile);
 				SplitterTask splitterTask = new SplitterTask(
 						inputFileInputStream, this.outputDirectory, wordIndex,
 						pattern, PatternTransformer.getStringPattern(pattern),
 						this.delimiter, 0, this.deleteTempFiles,
 						this.addBeforeSentence, this.addAfterSentence, false,
-						false, false);
+						false, false, this.maxBufferedSequences);
+				splitterTask.setAggregatorMemory(this.aggregatorMemory);
+				splitterTask.setVocabulary(this.vocabulary);
+				splitterTask
+						.setAggregatorExecutorService(aggregatorExecutorService);
 				executorService.execute(splitterTask);
-			} catch (FileNotFoundException e) {
+			} catch (IOException e) {
 				// TODO Auto-generated catch block
 				e.printStackTrace();
-				this.logger.error("inputFile not found: "
+				this.logger.error("inputFile not readable: "
 						+ this.inputFile.getAbsolutePath());
-				return;
+				// don't start the queued SplitterTasks, but let both executors
+				// terminate below
+				executorService.shutdownNow();
+				break;
 			}
 		}
 		executorService.shutdown();
@@ -95,5 +163,98 @@ public class AbsoluteSplitter {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
+		// all SplitterTasks are finished, so no more AggregatorTasks are added
+		aggregatorExecutorService.shutdown();
+		try {
+			aggregatorExecutorService.awaitTermination(Long.MAX_VALUE,
+					TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Same as split but reads and tokenizes the inputFile only once for all
+	 * patterns. The sequences of all patterns are written in a single pass and
+	 * aggregated afterwards using the given number of cores.
+	 * 
+	 * @param patterns
+	 * @param cores
+	 */
+	public void splitSinglePass(ArrayList<boolean[]> patterns, int cores) {
+
+		this.logger
+				.info("read word index: " + this.indexFile.getAbsolutePath());
+		WordIndex wordIndex = new WordIndex(this.indexFile);
+		wordIndex.setWriterPool(this.writerPool);
+
+		ArrayList<File> sequencerOutputDirectories = new ArrayList<File>();
+		for (boolean[] pattern : patterns) {
+			sequencerOutputDirectories.add(new File(this.outputDirectory
+					.getAbsolutePath()
+					+ "/"
+					+ PatternTransformer.getStringPattern(pattern) + "-split"));
+		}
+
+		this.logger.info("split into " + patterns.size()
+				+ " patterns in a single pass: "
+				+ this.inputFile.getAbsolutePath());
+		try {
+			InputStream inputFileInputStream = CodecStreams
+					.openInputStream(this.inputFile);
+			MultiPatternSequencer multiPatternSequencer = new MultiPatternSequencer(
+					inputFileInputStream, sequencerOutputDirectories,
+					wordIndex, patterns, this.addBeforeSentence,
+					this.addAfterSentence, this.delimiter,
+					this.maxBufferedSequences);
+			multiPatternSequencer.splitIntoFiles();
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+			this.logger.error("inputFile not readable: "
+					+ this.inputFile.getAbsolutePath());
+			return;
+		}
+
+		// initialize executerService
+		ExecutorService executorService = Executors.newFixedThreadPool(cores);
+		// the split files of all patterns are aggregated on a shared executor
+		ExecutorService aggregatorExecutorService = Executors
+				.newFixedThreadPool(cores);
+		for (boolean[] pattern : patterns) {
+			this.logger.debug("execute SplitterTask for: "
+					+ PatternTransformer.getStringPattern(pattern)
+					+ " sequences");
+
+			// inputStream is null since the sequences are already split
+			SplitterTask splitterTask = new SplitterTask(null,
+					this.outputDirectory, wordIndex, pattern,
+					PatternTransformer.getStringPattern(pattern),
+					this.delimiter, 0, this.deleteTempFiles,
+					this.addBeforeSentence, this.addAfterSentence, false,
+					false, false);
+			splitterTask.setAggregatorMemory(this.aggregatorMemory);
+			splitterTask.setVocabulary(this.vocabulary);
+			splitterTask
+					.setAggregatorExecutorService(aggregatorExecutorService);
+			executorService.execute(splitterTask);
+		}
+		executorService.shutdown();
+		try {
+			executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+		// all SplitterTasks are finished, so no more AggregatorTasks are added
+		aggregatorExecutorService.shutdown();
+		try {
+			aggregatorExecutorService.awaitTermination(Long.MAX_VALUE,
+					TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
 	}
 }
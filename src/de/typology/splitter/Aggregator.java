@@ -3,11 +3,13 @@ package de.typology.splitter;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Map.Entry;
+import java.util.PriorityQueue;
 import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeMap;
@@ -16,9 +18,20 @@ import java.util.TreeSet;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import de.typology.indexes.Vocabulary;
+import de.typology.utils.CodecStreams;
+import de.typology.utils.CountRecordReader;
+import de.typology.utils.CountRecordWriter;
+import de.typology.utils.CountStatistics;
+
 /**
  * A class for aggregating sequences by counting their occurrences. Expects an
- * inputStream with a size that is 30% of the allocated main memory.
+ * inputStream with a size that is 30% of the allocated main memory unless
+ * maxMemory is set. In that case sorted runs of at most maxMemory bytes are
+ * written next to the outputFile and merged afterwards. The inputFile and the
+ * runs may be compressed (see CodecStreams). Counts are read and written by
+ * CountRecordReader and CountRecordWriter, so they are binary if a vocabulary
+ * is set.
  * 
  * @author Martin Koerner
  * 
@@ -29,55 +42,71 @@ public class Aggregator {
 	String delimiter;
 	int startSortAtColumn;
 	boolean additionalCounts;
+	// estimated number of bytes the sorted map may use before it is written
+	// to a run file. 0 means that the whole inputFile is aggregated in memory
+	long maxMemory;
+	// the vocabulary of binary count files, null for text
+	Vocabulary vocabulary;
+	// statistics of the counts written by aggregateCounts
+	CountStatistics statistics;
+
+	// estimated number of bytes of a map entry without its characters
+	private static final int ENTRY_SIZE = 128;
+	// maximum number of run files that are merged at once
+	private static final int MAX_MERGE_RUNS = 64;
 
 	Logger logger = LogManager.getLogger(this.getClass().getName());
 
-	// this comparator is based on the value of startSortAtColumn
-	private Comparator<String> stringComparator = new Comparator<String>() {
-		@Override
-		public int compare(String string1, String string2) {
-			if (Aggregator.this.startSortAtColumn == 0) {
-				return string1.compareTo(string2);
-			} else {
-				String[] string1Split = string1.split("\\s");
-				String[] string2Split = string2.split("\\s");
-				String newString1 = "";
-				String newString2 = "";
-				for (int i = Aggregator.this.startSortAtColumn; i < string1Split.length; i++) {
-					newString1 += string1Split[i] + " ";
-					newString2 += string2Split[i] + " ";
-				}
-				newString1 = newString1.replaceFirst(" $", "");
-				newString2 = newString2.replaceFirst(" $", "");
-				int result = newString1.compareTo(newString2);
-				if (result != 0) {
-					// not equal
-					return result;
-				} else {
-					int i = 0;
-					while (i < Aggregator.this.startSortAtColumn) {
-						String newNewString1 = newString1;
-						String newNewString2 = newString2;
-						for (int j = i; j >= 0; j--) {
-							newNewString1 = string1Split[j] + " "
-									+ newNewString1;
-							newNewString2 = string2Split[j] + " "
-									+ newNewString2;
-						}
-						result = newNewString1.compareTo(newNewString2);
-						if (result != 0) {
-							// not equal
-							return result;
-						}
-						// equal
-						i++;
-					}
-					// final result: equal
-					return 0;
-				}
+	/**
+	 * Returns a key whose natural order is the order of sequences sorted from
+	 * column startSortAtColumn on: the columns from startSortAtColumn on are
+	 * moved in front of the first columns, separated by '\0'. The key is
+	 * computed once per sequence instead of splitting both sequences on every
+	 * comparison.
+	 * 
+	 * @param sequence
+	 * @param startSortAtColumn
+	 *            : First column is zero
+	 * @return
+	 */
+	static String getSortKey(String sequence, int startSortAtColumn) {
+		if (startSortAtColumn == 0) {
+			return sequence;
+		}
+		// find the beginning of column startSortAtColumn
+		int columnStart = 0;
+		int column = 0;
+		while (column < startSortAtColumn) {
+			// same characters as "\\s"
+			switch (sequence.charAt(columnStart)) {
+			case ' ':
+			case '\t':
+			case '\n':
+			case '\u000B':
+			case '\f':
+			case '\r':
+				column++;
+				break;
 			}
+			columnStart++;
+		}
+		// the first columns keep their trailing whitespace for restoring the
+		// sequence
+		return sequence.substring(columnStart) + '\0'
+				+ sequence.substring(0, columnStart);
+	}
+
+	/**
+	 * reverses getSortKey
+	 */
+	static String getSequence(String sortKey, int startSortAtColumn) {
+		if (startSortAtColumn == 0) {
+			return sortKey;
 		}
-	};
+		int separator = sortKey.lastIndexOf('\0');
+		return sortKey.substring(separator + 1)
+				+ sortKey.substring(0, separator);
+	}
 
 	/**
 	 * @param inputStream
@@ -96,21 +125,44 @@ public class Aggregator {
 
 	}
 
-	public void aggregateCounts() {
+	public void setMaxMemory(long maxMemory) {
+		this.maxMemory = maxMemory;
+	}
+
+	/**
+	 * @param vocabulary
+	 *            : the counts are read and written as binary records (see
+	 *            CountRecordWriter) if it is not null
+	 */
+	public void setVocabulary(Vocabulary vocabulary) {
+		this.vocabulary = vocabulary;
+	}
+
+	/**
+	 * @return statistics of the counts written by the last call of
+	 *         aggregateCounts or null
+	 */
+	public CountStatistics getStatistics() {
+		return this.statistics;
+	}
+
+	/**
+	 * @return false if the counts could not be read or written
+	 */
+	public boolean aggregateCounts() {
+		this.statistics = new CountStatistics();
 		try {
-			BufferedReader inputFileReader = new BufferedReader(new FileReader(
-					this.inputFile));
+			CountRecordReader inputFileReader = CountRecordReader.open(
+					this.inputFile, this.delimiter, this.vocabulary);
 
-			SortedMap<String, Long[]> wordMapAdditionalCounts = new TreeMap<String, Long[]>(
-					this.stringComparator);
-			SortedMap<String, Long> wordMapNoAdditionalCounts = new TreeMap<String, Long>(
-					this.stringComparator);
-			String inputLine;
+			SortedMap<String, Long[]> wordMapAdditionalCounts = new TreeMap<String, Long[]>();
+			SortedMap<String, Long> wordMapNoAdditionalCounts = new TreeMap<String, Long>();
+			ArrayList<File> runFiles = new ArrayList<File>();
+			long memory = 0;
 
-			while ((inputLine = inputFileReader.readLine()) != null) {
-				String[] inputLineSplit = inputLine.split(this.delimiter);
-				String words = inputLineSplit[0];
-				long count = Long.parseLong(inputLineSplit[1]);
+			while (inputFileReader.next()) {
+				String words = inputFileReader.getSequence();
+				long count = inputFileReader.getCount(0);
 				if (words.length() == 0) {
 					// TODO: understand the following comment
 					// logger.error("empty row in " + this.inputFile + ": \""
@@ -120,45 +172,98 @@ public class Aggregator {
 					continue;
 				}
 
+				String sortKey = getSortKey(words, this.startSortAtColumn);
+				int mapSize;
 				if (this.additionalCounts) {
-					this.addCountWithAdditional(wordMapAdditionalCounts, words,
-							count);
+					mapSize = wordMapAdditionalCounts.size();
+					this.addCountWithAdditional(wordMapAdditionalCounts,
+							sortKey, count);
+					if (wordMapAdditionalCounts.size() > mapSize) {
+						memory += 2 * sortKey.length() + ENTRY_SIZE;
+					}
 				} else {
+					mapSize = wordMapNoAdditionalCounts.size();
 					this.addCountWithNoAdditional(wordMapNoAdditionalCounts,
-							words, count);
+							sortKey, count);
+					if (wordMapNoAdditionalCounts.size() > mapSize) {
+						memory += 2 * sortKey.length() + ENTRY_SIZE;
+					}
+				}
+				if (this.maxMemory > 0 && memory > this.maxMemory) {
+					File runFile = this.getRunFile(runFiles.size());
+					this.writeCounts(wordMapAdditionalCounts,
+							wordMapNoAdditionalCounts, runFile, null);
+					runFiles.add(runFile);
+					wordMapAdditionalCounts.clear();
+					wordMapNoAdditionalCounts.clear();
+					memory = 0;
 				}
 			}
 
 			inputFileReader.close();
-			BufferedWriter outputFileWriter = new BufferedWriter(
-					new FileWriter(this.outputFile));
-			if (this.additionalCounts) {
-				for (Entry<String, Long[]> entry : wordMapAdditionalCounts
-						.entrySet()) {
-					String words = entry.getKey();
-					// [0]=1+
-					// [1]=1
-					// [2]=2
-					// [3]=3+
-					outputFileWriter.write(words + this.delimiter
-							+ entry.getValue()[0] + this.delimiter
-							+ entry.getValue()[1] + this.delimiter
-							+ entry.getValue()[2] + this.delimiter
-							+ entry.getValue()[3] + "\n");
-				}
+			if (runFiles.isEmpty()) {
+				this.writeCounts(wordMapAdditionalCounts,
+						wordMapNoAdditionalCounts, this.outputFile,
+						this.statistics);
 			} else {
-				for (Entry<String, Long> entry : wordMapNoAdditionalCounts
-						.entrySet()) {
-					String words = entry.getKey();
-					outputFileWriter.write(words + this.delimiter
-							+ entry.getValue() + "\n");
+				File runFile = this.getRunFile(runFiles.size());
+				this.writeCounts(wordMapAdditionalCounts,
+						wordMapNoAdditionalCounts, runFile, null);
+				runFiles.add(runFile);
+				wordMapAdditionalCounts.clear();
+				wordMapNoAdditionalCounts.clear();
+				if (this.additionalCounts) {
+					this.mergeRuns(runFiles, 4, this.statistics);
+				} else {
+					this.mergeRuns(runFiles, 1, this.statistics);
 				}
 			}
-			outputFileWriter.close();
+			return true;
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * @param statistics
+	 *            : collects the statistics of the written counts (may be null)
+	 */
+	private void writeCounts(SortedMap<String, Long[]> wordMapAdditionalCounts,
+			SortedMap<String, Long> wordMapNoAdditionalCounts, File file,
+			CountStatistics statistics) throws IOException {
+		CountRecordWriter outputFileWriter = this.openWriter(file);
+		if (this.additionalCounts) {
+			long[] counts = new long[4];
+			for (Entry<String, Long[]> entry : wordMapAdditionalCounts
+					.entrySet()) {
+				String words = getSequence(entry.getKey(),
+						this.startSortAtColumn);
+				// [0]=1+
+				// [1]=1
+				// [2]=2
+				// [3]=3+
+				for (int i = 0; i < 4; i++) {
+					counts[i] = entry.getValue()[i];
+				}
+				outputFileWriter.write(words, counts);
+				if (statistics != null) {
+					statistics.add(words, entry.getValue()[0]);
+				}
+			}
+		} else {
+			for (Entry<String, Long> entry : wordMapNoAdditionalCounts
+					.entrySet()) {
+				String words = getSequence(entry.getKey(),
+						this.startSortAtColumn);
+				outputFileWriter.write(words, entry.getValue());
+				if (statistics != null) {
+					statistics.add(words, entry.getValue());
+				}
+			}
 		}
+		outputFileWriter.close();
 	}
 
 	private void addCountWithNoAdditional(
@@ -208,28 +313,229 @@ public class Aggregator {
 		}
 	}
 
-	public void aggregateWithoutCounts() {
+	/**
+	 * @return false if the lines could not be read or written
+	 */
+	public boolean aggregateWithoutCounts() {
 		try {
-			BufferedReader inputFileReader = new BufferedReader(new FileReader(
-					this.inputFile));
+			BufferedReader inputFileReader = CodecStreams
+					.openReader(this.inputFile);
 
-			SortedSet<String> wordSet = new TreeSet<String>(
-					this.stringComparator);
+			SortedSet<String> wordSet = new TreeSet<String>();
+			ArrayList<File> runFiles = new ArrayList<File>();
+			long memory = 0;
 			String inputLine;
 
 			while ((inputLine = inputFileReader.readLine()) != null) {
-				wordSet.add(inputLine);
+				String sortKey = getSortKey(inputLine, this.startSortAtColumn);
+				if (wordSet.add(sortKey)) {
+					memory += 2 * sortKey.length() + ENTRY_SIZE;
+					if (this.maxMemory > 0 && memory > this.maxMemory) {
+						File runFile = this.getRunFile(runFiles.size());
+						this.writeLines(wordSet, runFile);
+						runFiles.add(runFile);
+						wordSet.clear();
+						memory = 0;
+					}
+				}
 			}
 			inputFileReader.close();
-			BufferedWriter outputFileWriter = new BufferedWriter(
-					new FileWriter(this.outputFile));
-			for (String line : wordSet) {
-				outputFileWriter.write(line + "\n");
+			if (runFiles.isEmpty()) {
+				this.writeLines(wordSet, this.outputFile);
+			} else {
+				File runFile = this.getRunFile(runFiles.size());
+				this.writeLines(wordSet, runFile);
+				runFiles.add(runFile);
+				wordSet.clear();
+				this.mergeRuns(runFiles, 0, null);
 			}
-			outputFileWriter.close();
+			return true;
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
+			return false;
+		}
+	}
+
+	private void writeLines(SortedSet<String> wordSet, File file)
+			throws IOException {
+		BufferedWriter outputFileWriter = this.openLineWriter(file);
+		for (String sortKey : wordSet) {
+			outputFileWriter.write(getSequence(sortKey, this.startSortAtColumn)
+					+ "\n");
+		}
+		outputFileWriter.close();
+	}
+
+	/**
+	 * run files are intermediate files, outputFile is not compressed
+	 */
+	private CountRecordWriter openWriter(File file) throws IOException {
+		if (file.equals(this.outputFile)) {
+			return CountRecordWriter.open(file, this.delimiter,
+					this.vocabulary);
+		}
+		return CountRecordWriter.openIntermediate(file, this.delimiter,
+				this.vocabulary);
+	}
+
+	/**
+	 * like openWriter for whole lines, which are always written as text
+	 */
+	private BufferedWriter openLineWriter(File file) throws IOException {
+		if (file.equals(this.outputFile)) {
+			return new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(file), CodecStreams.CHARSET));
+		}
+		return CodecStreams.openIntermediateBufferedWriter(file);
+	}
+
+	private File getRunFile(int runCount) {
+		return new File(this.outputFile.getAbsolutePath() + "-run" + runCount);
+	}
+
+	/**
+	 * merges sorted run files into outputFile by summing the count columns of
+	 * equal sequences. The run files are deleted afterwards.
+	 * 
+	 * @param runFiles
+	 * @param countColumns
+	 *            : number of count columns after the sequence. 0 means that
+	 *            whole lines are merged without counts
+	 * @param statistics
+	 *            : collects the statistics of the merged counts (may be null)
+	 * @throws IOException
+	 */
+	private void mergeRuns(ArrayList<File> runFiles, int countColumns,
+			CountStatistics statistics) throws IOException {
+		this.logger.debug("merge " + runFiles.size() + " runs into "
+				+ this.outputFile);
+		// merge in several passes to bound the number of open files
+		int runCount = runFiles.size();
+		while (runFiles.size() > MAX_MERGE_RUNS) {
+			ArrayList<File> mergedRunFiles = new ArrayList<File>();
+			for (int i = 0; i < runFiles.size(); i += MAX_MERGE_RUNS) {
+				File mergedRunFile = this.getRunFile(runCount++);
+				this.mergeRuns(
+						new ArrayList<File>(runFiles.subList(i,
+								Math.min(i + MAX_MERGE_RUNS, runFiles.size()))),
+						countColumns, mergedRunFile, null);
+				mergedRunFiles.add(mergedRunFile);
+			}
+			runFiles = mergedRunFiles;
+		}
+		this.mergeRuns(runFiles, countColumns, this.outputFile, statistics);
+	}
+
+	private void mergeRuns(ArrayList<File> runFiles, int countColumns,
+			File mergedFile, CountStatistics statistics) throws IOException {
+		PriorityQueue<Run> runQueue = new PriorityQueue<Run>(runFiles.size(),
+				new Comparator<Run>() {
+					@Override
+					public int compare(Run run1, Run run2) {
+						return run1.sortKey.compareTo(run2.sortKey);
+					}
+				});
+		for (File runFile : runFiles) {
+			Run run = new Run(runFile, countColumns);
+			if (run.next()) {
+				runQueue.add(run);
+			}
+		}
+
+		BufferedWriter lineWriter = null;
+		CountRecordWriter outputFileWriter = null;
+		if (countColumns == 0) {
+			lineWriter = this.openLineWriter(mergedFile);
+		} else {
+			outputFileWriter = this.openWriter(mergedFile);
+		}
+		long[] counts = new long[countColumns];
+		while (!runQueue.isEmpty()) {
+			Run run = runQueue.poll();
+			String sortKey = run.sortKey;
+			System.arraycopy(run.counts, 0, counts, 0, countColumns);
+			if (run.next()) {
+				runQueue.add(run);
+			}
+			// sum the counts of equal sequences from other runs
+			while (!runQueue.isEmpty()
+					&& runQueue.peek().sortKey.equals(sortKey)) {
+				Run equalRun = runQueue.poll();
+				for (int i = 0; i < countColumns; i++) {
+					counts[i] += equalRun.counts[i];
+				}
+				if (equalRun.next()) {
+					runQueue.add(equalRun);
+				}
+			}
+			String sequence = getSequence(sortKey, this.startSortAtColumn);
+			if (lineWriter != null) {
+				lineWriter.write(sequence + "\n");
+			} else {
+				outputFileWriter.write(sequence, counts);
+			}
+			if (statistics != null) {
+				statistics.add(sequence, counts[0]);
+			}
+		}
+		if (lineWriter != null) {
+			lineWriter.close();
+		} else {
+			outputFileWriter.close();
+		}
+
+		for (File runFile : runFiles) {
+			runFile.delete();
+		}
+	}
+
+	/**
+	 * A sorted run file that is read record by record, or line by line if it
+	 * has no count columns.
+	 */
+	private class Run {
+		private BufferedReader lineReader;
+		private CountRecordReader recordReader;
+		private int countColumns;
+		String sortKey;
+		long[] counts;
+
+		Run(File runFile, int countColumns) throws IOException {
+			if (countColumns == 0) {
+				this.lineReader = CodecStreams.openIntermediateReader(runFile);
+			} else {
+				this.recordReader = CountRecordReader.open(runFile,
+						Aggregator.this.delimiter, Aggregator.this.vocabulary);
+			}
+			this.countColumns = countColumns;
+			this.counts = new long[countColumns];
+		}
+
+		/**
+		 * reads the next record and closes the run at its end
+		 */
+		boolean next() throws IOException {
+			if (this.lineReader != null) {
+				String line = this.lineReader.readLine();
+				if (line == null) {
+					this.lineReader.close();
+					return false;
+				}
+				this.sortKey = getSortKey(line,
+						Aggregator.this.startSortAtColumn);
+				return true;
+			}
+			if (!this.recordReader.next()) {
+				this.recordReader.close();
+				return false;
+			}
+			this.sortKey = getSortKey(this.recordReader.getSequence(),
+					Aggregator.this.startSortAtColumn);
+			for (int i = 0; i < this.countColumns; i++) {
+				this.counts[i] = this.recordReader.getCount(i);
+			}
+			return true;
 		}
 	}
 }
@@ -0,0 +1,43 @@
+package de.typology.splitter;
+
+/**
+ * A class for running an Aggregator on a single split file, e.g. on an
+ * executor that is shared by the SplitterTasks of all patterns.
+ *
+ * @author Martin Koerner
+ *
+ */
+public class AggregatorTask implements Runnable {
+	private Aggregator aggregator;
+	private boolean aggregateCompleteLine;
+	private CompletionCallback completionCallback;
+
+	/**
+	 * @param aggregator
+	 * @param aggregateCompleteLine
+	 * @param completionCallback
+	 *            : is notified after the aggregation finished (may be null)
+	 */
+	public AggregatorTask(Aggregator aggregator, boolean aggregateCompleteLine,
+			CompletionCallback completionCallback) {
+		this.aggregator = aggregator;
+		this.aggregateCompleteLine = aggregateCompleteLine;
+		this.completionCallback = completionCallback;
+	}
+
+	@Override
+	public void run() {
+		boolean succeeded = false;
+		try {
+			if (this.aggregateCompleteLine) {
+				succeeded = this.aggregator.aggregateWithoutCounts();
+			} else {
+				succeeded = this.aggregator.aggregateCounts();
+			}
+		} finally {
+			if (this.completionCallback != null) {
+				this.completionCallback.completed(succeeded);
+			}
+		}
+	}
+}
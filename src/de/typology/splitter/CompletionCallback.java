@@ -0,0 +1,15 @@
+package de.typology.splitter;
+
+/**
+ * Is notified when a task is finished, also if it failed.
+ *
+ * @author Martin Koerner
+ *
+ */
+public interface CompletionCallback {
+	/**
+	 * @param succeeded
+	 *            : false if the task failed. Its output is incomplete then
+	 */
+	void completed(boolean succeeded);
+}
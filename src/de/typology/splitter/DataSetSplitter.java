@@ -3,16 +3,29 @@ package de.typology.splitter;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map.Entry;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import de.typology.utils.CodecStreams;
 import de.typology.utils.Config;
+import de.typology.utils.FileChunker;
 
 /**
  * This class splits and samples a given input file into trainings and test data
@@ -41,14 +54,21 @@ public class DataSetSplitter {
 				"normalized.txt");
 		dss.split("training.txt", "learning.txt", "testing.txt", 5);
 		dss.splitIntoSequences(new File(outputDirectory + "/training.txt"),
-				Config.get().modelLength, Config.get().numberOfQueries);
+				Config.get().modelLength, Config.get().numberOfQueries,
+				new Random(Config.get().splitSeed));
 
 	}
 
+	// size of the chunks that are split in parallel. Does not depend on the
+	// number of cores, so that a seed always gives the same split
+	private static final long CHUNK_SIZE = 64L * 1024L * 1024L;
+
 	private File directory;
 
 	private String inputName;
 
+	long chunkSize = CHUNK_SIZE;
+
 	Logger logger = LogManager.getLogger(this.getClass().getName());
 
 	public DataSetSplitter(File directory, String inputName) {
@@ -83,7 +103,7 @@ public class DataSetSplitter {
 		this.logger.info("splitting into training, testing and learning file: "
 				+ this.directory + "/" + this.inputName);
 		try {
-			BufferedReader reader = new BufferedReader(new FileReader(
+			BufferedReader reader = CodecStreams.openReader(new File(
 					this.directory.getAbsolutePath() + "/" + this.inputName));
 			BufferedWriter trainingDataWriter = new BufferedWriter(
 					new FileWriter(this.directory.getAbsolutePath() + "/"
@@ -94,34 +114,10 @@ public class DataSetSplitter {
 			BufferedWriter testingDataWriter = new BufferedWriter(
 					new FileWriter(this.directory.getAbsolutePath() + "/"
 							+ testingFileName));
-			int rand;
 			String line;
 			while ((line = reader.readLine()) != null) {
-				rand = (int) (Math.random() * 100);
-				if (rand >= Config.get().sampleRate) {
-					// keep data
-					rand = (int) (Math.random() * 100);
-					if (rand >= Config.get().splitDataRatio) {
-						// store data in testing or learning file
-						rand = (int) (Math.random() * 100);
-						if (rand >= Config.get().splitTestRatio) {
-							if (Config.get().addSentenceTags) {
-								// TODO make this flexible
-								line = "<s> " + line + " </s>";
-							}
-							learningDataWriter.write(line + "\n");
-						} else {
-							if (Config.get().addSentenceTags) {
-								// TODO make this flexible
-								line = "<s> " + line + " </s>";
-							}
-							testingDataWriter.write(line + "\n");
-						}
-					} else {
-						// store data in training file
-						trainingDataWriter.write(line + "\n");
-					}
-				}
+				this.splitLine(line, null, trainingDataWriter,
+						learningDataWriter, testingDataWriter);
 			}
 			reader.close();
 			trainingDataWriter.close();
@@ -136,91 +132,255 @@ public class DataSetSplitter {
 		}
 	}
 
-	public void splitIntoSequences(File inputFile, int maxSequenceLength,
-			int numberOfSequences) {
-		System.out.println(maxSequenceLength);
-		String[] fileNameSplit = inputFile.getName().split("\\.");
+	/**
+	 * Like split, but the input file is split into chunks of about 64 MB that
+	 * start at line boundaries. The chunks are split in parallel, chunk i uses
+	 * a Random with the seed seed + i. The result only depends on the input
+	 * file and the seed. A compressed input file is a single chunk.
+	 * 
+	 * @param seed
+	 * @param cores
+	 *            : number of threads
+	 */
+	public void split(String trainingFileName, String learningFileName,
+			String testingFileName, int sequenceLength, final long seed,
+			int cores) {
+		this.logger.info("splitting into training, testing and learning file: "
+				+ this.directory + "/" + this.inputName + " with seed " + seed);
+		final File inputFile = new File(this.directory.getAbsolutePath() + "/"
+				+ this.inputName);
+		final File trainingFile = new File(this.directory.getAbsolutePath()
+				+ "/" + trainingFileName);
+		final File learningFile = new File(this.directory.getAbsolutePath()
+				+ "/" + learningFileName);
+		final File testingFile = new File(this.directory.getAbsolutePath()
+				+ "/" + testingFileName);
+		try {
+			final long[] chunkBoundaries = FileChunker.getChunkBoundaries(
+					inputFile,
+					(int) Math.max(1L, inputFile.length() / this.chunkSize));
 
-		HashMap<Integer, BufferedWriter> testSequenceFileWriters = new HashMap<Integer, BufferedWriter>();
-		for (int i = 1; i <= maxSequenceLength; i++) {
-			try {
-				testSequenceFileWriters.put(i,
-						new BufferedWriter(new FileWriter(new File(
-								this.directory.getAbsolutePath() + "/"
-										+ fileNameSplit[0] + "-samples-" + i
-										+ "." + fileNameSplit[1]))));
-			} catch (IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+			ExecutorService executorService = Executors
+					.newFixedThreadPool(Math.max(1, cores));
+			ArrayList<Future<Object>> chunkSplits = new ArrayList<Future<Object>>();
+			for (int i = 0; i < chunkBoundaries.length - 1; i++) {
+				final int chunk = i;
+				chunkSplits.add(executorService.submit(new Callable<Object>() {
+					@Override
+					public Object call() throws IOException {
+						DataSetSplitter.this.splitChunk(inputFile,
+								chunkBoundaries[chunk],
+								chunkBoundaries[chunk + 1], chunk,
+								new Random(seed + chunk), trainingFile,
+								learningFile, testingFile);
+						return null;
+					}
+				}));
+			}
+			executorService.shutdown();
+			for (Future<Object> chunkSplit : chunkSplits) {
+				chunkSplit.get();
 			}
+
+			int chunkCount = chunkSplits.size();
+			this.concatenateChunks(trainingFile, chunkCount);
+			this.concatenateChunks(learningFile, chunkCount);
+			this.concatenateChunks(testingFile, chunkCount);
+
+			this.logger.info("splitting done");
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		} catch (ExecutionException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+	}
+
+	private void splitChunk(File inputFile, long chunkStart, long chunkEnd,
+			int chunk, Random random, File trainingFile, File learningFile,
+			File testingFile) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				FileChunker.openChunk(inputFile, chunkStart, chunkEnd)));
+		BufferedWriter trainingDataWriter = new BufferedWriter(new FileWriter(
+				this.getChunkFile(trainingFile, chunk)));
+		BufferedWriter learningDataWriter = new BufferedWriter(new FileWriter(
+				this.getChunkFile(learningFile, chunk)));
+		BufferedWriter testingDataWriter = new BufferedWriter(new FileWriter(
+				this.getChunkFile(testingFile, chunk)));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			this.splitLine(line, random, trainingDataWriter,
+					learningDataWriter, testingDataWriter);
 		}
+		reader.close();
+		trainingDataWriter.close();
+		learningDataWriter.close();
+		testingDataWriter.close();
+	}
 
-		// get total count from stats file
-		long sequenceCount = 0L;
-		try {
-			BufferedReader reader = new BufferedReader(
-					new FileReader(inputFile));
-			String line;
-			// count sequences
-			while ((line = reader.readLine()) != null) {
-				String[] lineSplit = line.split("\\s");
-				if (lineSplit.length < maxSequenceLength) {
-					continue;
+	private File getChunkFile(File file, int chunk) {
+		return new File(file.getAbsolutePath() + "-chunk" + chunk);
+	}
+
+	/**
+	 * writes the chunk files of file into file in the order of the chunks and
+	 * deletes them
+	 */
+	private void concatenateChunks(File file, int chunkCount)
+			throws IOException {
+		FileChannel outputChannel = new FileOutputStream(file).getChannel();
+		for (int i = 0; i < chunkCount; i++) {
+			File chunkFile = this.getChunkFile(file, i);
+			FileChannel inputChannel = new FileInputStream(chunkFile)
+					.getChannel();
+			long position = 0L;
+			long size = inputChannel.size();
+			while (position < size) {
+				position += inputChannel.transferTo(position, size - position,
+						outputChannel);
+			}
+			inputChannel.close();
+			chunkFile.delete();
+		}
+		outputChannel.close();
+	}
+
+	/**
+	 * decides with random (Math.random if random is null) whether line is
+	 * thrown away or stored in the training, learning or testing file
+	 */
+	private void splitLine(String line, Random random,
+			BufferedWriter trainingDataWriter,
+			BufferedWriter learningDataWriter, BufferedWriter testingDataWriter)
+			throws IOException {
+		int rand;
+		rand = this.getRandomPercentage(random);
+		if (rand >= Config.get().sampleRate) {
+			// keep data
+			rand = this.getRandomPercentage(random);
+			if (rand >= Config.get().splitDataRatio) {
+				// store data in testing or learning file
+				rand = this.getRandomPercentage(random);
+				if (rand >= Config.get().splitTestRatio) {
+					if (Config.get().addSentenceTags) {
+						// TODO make this flexible
+						line = "<s> " + line + " </s>";
+					}
+					learningDataWriter.write(line + "\n");
 				} else {
-					int sequenceStart = 0;
-					while (lineSplit.length - sequenceStart >= maxSequenceLength) {
-						sequenceCount++;
-						sequenceStart++;
+					if (Config.get().addSentenceTags) {
+						// TODO make this flexible
+						line = "<s> " + line + " </s>";
 					}
+					testingDataWriter.write(line + "\n");
 				}
+			} else {
+				// store data in training file
+				trainingDataWriter.write(line + "\n");
 			}
-			reader.close();
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
 		}
-		this.logger.debug("sequenceCount: " + sequenceCount);
-		double sequenceProbability = (double) numberOfSequences / sequenceCount;
-		long skipDistance = sequenceCount / numberOfSequences;
-		this.logger.debug("skipDistance: " + skipDistance);
+	}
+
+	private int getRandomPercentage(Random random) {
+		if (random == null) {
+			return (int) (Math.random() * 100);
+		}
+		return random.nextInt(100);
+	}
+
+	/**
+	 * samples exactly numberOfSequences sequences of maxSequenceLength words
+	 * (or all of them if there are fewer) in one pass over inputFile using
+	 * reservoir sampling. The prefixes of length 1 to maxSequenceLength of the
+	 * sampled sequences are written to inputFile-samples-length in the order
+	 * of inputFile.
+	 * 
+	 * @param random
+	 *            : chooses the sampled sequences
+	 */
+	public void splitIntoSequences(File inputFile, int maxSequenceLength,
+			int numberOfSequences, Random random) {
+		String[] fileNameSplit = inputFile.getName().split("\\.");
 
+		// the sampled sequences and their positions in inputFile
+		String[] sampledSequences = new String[numberOfSequences];
+		long[] sampledPositions = new long[numberOfSequences];
+		long sequenceCount = 0L;
 		try {
-			BufferedReader reader = new BufferedReader(
-					new FileReader(inputFile));
-			this.logger.info("splitting " + inputFile.getName()
-					+ " into sequences");
+			BufferedReader reader = CodecStreams.openReader(inputFile);
+			this.logger.info("sampling " + numberOfSequences
+					+ " sequences from " + inputFile.getName());
 			String line;
 			while ((line = reader.readLine()) != null) {
 				String[] originalLineSplit = line.split("\\s");
 				int linePointer = 0;
 				while (originalLineSplit.length - linePointer >= maxSequenceLength) {
-					// build current Sequence
-					String currentSequence = "";
-					for (int i = 0; i < maxSequenceLength; i++) {
-						currentSequence += originalLineSplit[linePointer + i]
-								+ " ";
+					int sample;
+					if (sequenceCount < numberOfSequences) {
+						sample = (int) sequenceCount;
+					} else {
+						// replace a sample with probability
+						// numberOfSequences / (sequenceCount + 1)
+						long position = (long) (random.nextDouble()
+								* (sequenceCount + 1));
+						sample = position < numberOfSequences ? (int) position
+								: -1;
 					}
-					currentSequence = currentSequence.replaceFirst(" $", "");
-					if (Math.random() <= sequenceProbability) {
-						String[] currentSequenceSplit = currentSequence
-								.split("\\s");
-						for (int i = 1; i <= maxSequenceLength; i++) {
-							// build result sequence
-							String resultSequence = "";
-							for (int j = 0; j < i; j++) {
-								resultSequence += currentSequenceSplit[j] + " ";
-							}
-							resultSequence = resultSequence.replaceFirst(" $",
-									"");
-							testSequenceFileWriters.get(i).write(
-									resultSequence + "\n");
+					if (sample >= 0) {
+						// build current Sequence
+						String currentSequence = "";
+						for (int i = 0; i < maxSequenceLength; i++) {
+							currentSequence += originalLineSplit[linePointer + i]
+									+ " ";
 						}
+						sampledSequences[sample] = currentSequence
+								.replaceFirst(" $", "");
+						sampledPositions[sample] = sequenceCount;
 					}
+					sequenceCount++;
 					linePointer++;
 				}
 			}
-
 			reader.close();
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+		this.logger.debug("sequenceCount: " + sequenceCount);
+
+		// restore the order of inputFile
+		TreeMap<Long, String> orderedSequences = new TreeMap<Long, String>();
+		for (int sample = 0; sample < Math.min(numberOfSequences,
+				sequenceCount); sample++) {
+			orderedSequences.put(sampledPositions[sample],
+					sampledSequences[sample]);
+		}
+
+		HashMap<Integer, BufferedWriter> testSequenceFileWriters = new HashMap<Integer, BufferedWriter>();
+		try {
+			for (int i = 1; i <= maxSequenceLength; i++) {
+				testSequenceFileWriters.put(i,
+						new BufferedWriter(new FileWriter(new File(
+								this.directory.getAbsolutePath() + "/"
+										+ fileNameSplit[0] + "-samples-" + i
+										+ "." + fileNameSplit[1]))));
+			}
+			for (String currentSequence : orderedSequences.values()) {
+				String[] currentSequenceSplit = currentSequence.split("\\s");
+				for (int i = 1; i <= maxSequenceLength; i++) {
+					// build result sequence
+					String resultSequence = "";
+					for (int j = 0; j < i; j++) {
+						resultSequence += currentSequenceSplit[j] + " ";
+					}
+					resultSequence = resultSequence.replaceFirst(" $", "");
+					testSequenceFileWriters.get(i).write(resultSequence + "\n");
+				}
+			}
 			for (Entry<Integer, BufferedWriter> testSequenceWritersEntry : testSequenceFileWriters
 					.entrySet()) {
 				testSequenceWritersEntry.getValue().close();
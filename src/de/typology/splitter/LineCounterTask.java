@@ -1,31 +1,31 @@
 package de.typology.splitter;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import de.typology.utils.CountStatistics;
+
 public class LineCounterTask implements Runnable {
-	protected InputStream inputStream;
+	protected RecordChannel recordChannel;
 	protected File outputDirectory;
 	protected String patternLabel;
 	protected String delimiter;
 	protected boolean setCountToOne;
 	protected boolean additionalCounts;
+	protected CompletionCallback completionCallback;
 
 	Logger logger = LogManager.getLogger(this.getClass().getName());
 
-	public LineCounterTask(InputStream inputStream, File outputDirectory,
+	public LineCounterTask(RecordChannel recordChannel, File outputDirectory,
 			String patternLabel, String delimiter, boolean setCountToOne,
 			boolean additionalCounts) {
-		this.inputStream = inputStream;
+		this.recordChannel = recordChannel;
 		this.outputDirectory = outputDirectory;
 		this.patternLabel = patternLabel;
 		this.delimiter = delimiter;
@@ -33,8 +33,47 @@ public class LineCounterTask implements Runnable {
 		this.additionalCounts = additionalCounts;
 	}
 
+	/**
+	 * @param completionCallback
+	 *            : is notified after the line count is written, also if this
+	 *            task failed
+	 */
+	public void setCompletionCallback(CompletionCallback completionCallback) {
+		this.completionCallback = completionCallback;
+	}
+
+	private void addCount(long[] lineCounts, long currentCount) {
+		lineCounts[0] += currentCount;
+		if (currentCount == 1L) {
+			lineCounts[1] += currentCount;
+		}
+		if (currentCount == 2L) {
+			lineCounts[2] += currentCount;
+		}
+		if (currentCount >= 3L) {
+			lineCounts[3] += currentCount;
+		}
+	}
+
 	@Override
 	public void run() {
+		boolean succeeded = false;
+		try {
+			succeeded = this.countLines();
+		} finally {
+			// stops the producer if not all records were taken
+			this.recordChannel.abort();
+			if (this.completionCallback != null) {
+				this.completionCallback.completed(succeeded);
+			}
+		}
+	}
+
+	/**
+	 * @return false if the records could not be read or the count could not
+	 *         be written
+	 */
+	private boolean countLines() {
 		File outputDirectory = new File(this.outputDirectory.getAbsolutePath()
 				+ "/" + this.patternLabel);
 		if (outputDirectory.exists()) {
@@ -49,35 +88,24 @@ public class LineCounterTask implements Runnable {
 		this.logger.info("count lines for: "
 				+ outputDirectory.getAbsolutePath());
 
-		BufferedReader inputStreamReader = new BufferedReader(
-				new InputStreamReader(this.inputStream));
-		long onePlusLineCount = 0L;
-		long oneLineCount = 0L;
-		long twoLineCount = 0L;
-		long threePlusLineCount = 0L;
-		String line;
+		// [0]=1+
+		// [1]=1
+		// [2]=2
+		// [3]=3+
+		long[] lineCounts = new long[4];
 		try {
-			if (this.setCountToOne) {
-				while ((line = inputStreamReader.readLine()) != null) {
-					onePlusLineCount++;
-				}
-			} else {
-				while ((line = inputStreamReader.readLine()) != null) {
-					long currentCount = Long.parseLong(line
-							.split(this.delimiter)[1]);
-					onePlusLineCount += currentCount;
-					if (currentCount == 1L) {
-						oneLineCount += currentCount;
-					}
-					if (currentCount == 2L) {
-						twoLineCount += currentCount;
-					}
-					if (currentCount >= 3L) {
-						threePlusLineCount += currentCount;
-					}
+			SequenceRecord record;
+			while ((record = this.recordChannel.take()) != null) {
+				if (this.setCountToOne) {
+					lineCounts[0]++;
+				} else {
+					this.addCount(lineCounts, record.getCount());
 				}
 			}
-			inputStreamReader.close();
+			long onePlusLineCount = lineCounts[0];
+			long oneLineCount = lineCounts[1];
+			long twoLineCount = lineCounts[2];
+			long threePlusLineCount = lineCounts[3];
 
 			BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(
 					outputDirectory.getAbsolutePath() + "/" + "all"));
@@ -90,9 +118,21 @@ public class LineCounterTask implements Runnable {
 			}
 			bufferedWriter.close();
 
+			// the "all" file is a single line, Counter.countCounts uses its
+			// second column if there is one
+			CountStatistics countStatistics = new CountStatistics();
+			if (this.additionalCounts) {
+				countStatistics.add("", oneLineCount);
+			} else {
+				countStatistics.add("", onePlusLineCount);
+			}
+			countStatistics.write(CountStatistics.getStatisticsFile(
+					this.outputDirectory, this.patternLabel));
+			return true;
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
+			return false;
 		}
 	}
 }
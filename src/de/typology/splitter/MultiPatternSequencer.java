@@ -0,0 +1,172 @@
+package de.typology.splitter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import de.typology.indexes.WordIndex;
+
+/**
+ * A class for splitting a text file (via inputStream) into the sequences of
+ * several patterns at once. Every line is read and tokenized only once and the
+ * sequences of each pattern are stored in the pattern's own output directory
+ * based on the indexFile.
+ *
+ * @author Martin Koerner
+ *
+ */
+public class MultiPatternSequencer {
+	protected InputStream inputStream;
+	protected ArrayList<File> outputDirectories;
+	protected WordIndex wordIndex;
+	protected ArrayList<boolean[]> patterns;
+	protected String addBeforeSentence;
+	protected String addAfterSentence;
+	protected String delimiter;
+	protected int maxBufferedSequences;
+
+	Logger logger = LogManager.getLogger(this.getClass().getName());
+
+	/**
+	 * @param inputStream
+	 * @param outputDirectories
+	 *            : one output directory for each pattern in patterns
+	 * @param wordIndex
+	 * @param patterns
+	 * @param addBeforeSentence
+	 * @param addAfterSentence
+	 * @param delimiter
+	 */
+	public MultiPatternSequencer(InputStream inputStream,
+			ArrayList<File> outputDirectories, WordIndex wordIndex,
+			ArrayList<boolean[]> patterns, String addBeforeSentence,
+			String addAfterSentence, String delimiter) {
+		this(inputStream, outputDirectories, wordIndex, patterns,
+				addBeforeSentence, addAfterSentence, delimiter, 0);
+	}
+
+	/**
+	 * @param maxBufferedSequences
+	 *            : if greater than zero, the counts of up to
+	 *            maxBufferedSequences distinct sequences (shared by all
+	 *            patterns) are summed in memory before they are written (see
+	 *            SequenceCombiner)
+	 */
+	public MultiPatternSequencer(InputStream inputStream,
+			ArrayList<File> outputDirectories, WordIndex wordIndex,
+			ArrayList<boolean[]> patterns, String addBeforeSentence,
+			String addAfterSentence, String delimiter, int maxBufferedSequences) {
+		this.inputStream = inputStream;
+		this.outputDirectories = outputDirectories;
+		this.wordIndex = wordIndex;
+		this.patterns = patterns;
+		this.addBeforeSentence = addBeforeSentence;
+		this.addAfterSentence = addAfterSentence;
+		this.delimiter = delimiter;
+		this.maxBufferedSequences = maxBufferedSequences;
+	}
+
+	public void splitIntoFiles() {
+		int patternCount = this.patterns.size();
+		ArrayList<HashMap<Integer, BufferedWriter>> writers = new ArrayList<HashMap<Integer, BufferedWriter>>(
+				patternCount);
+		// position of the first word of a pattern's sequence, which decides
+		// the file the sequence is stored in
+		int[] firstWordPositions = new int[patternCount];
+		SequenceCombiner[] sequenceCombiners = null;
+		if (this.maxBufferedSequences > 0) {
+			sequenceCombiners = new SequenceCombiner[patternCount];
+		}
+		for (int p = 0; p < patternCount; p++) {
+			writers.add(this.wordIndex.openWriters(this.outputDirectories
+					.get(p)));
+			boolean[] pattern = this.patterns.get(p);
+			int firstWordPosition = 0;
+			while (firstWordPosition < pattern.length - 1
+					&& !pattern[firstWordPosition]) {
+				firstWordPosition++;
+			}
+			firstWordPositions[p] = firstWordPosition;
+			if (sequenceCombiners != null) {
+				sequenceCombiners[p] = new SequenceCombiner(writers.get(p),
+						this.delimiter, Math.max(1, this.maxBufferedSequences
+								/ patternCount));
+			}
+		}
+
+		BufferedReader bufferedReader = new BufferedReader(
+				new InputStreamReader(this.inputStream), 100 * 8 * 1024);
+		StringBuilder sequence = new StringBuilder();
+		String line;
+		try {
+			while ((line = bufferedReader.readLine()) != null) {
+				line = this.addBeforeSentence + line + this.addAfterSentence;
+				String[] lineSplit = line.split("\\s");
+
+				// every word is ranked once for all patterns
+				int[] ranks = new int[lineSplit.length];
+				for (int i = 0; i < lineSplit.length; i++) {
+					ranks[i] = this.wordIndex.rank(lineSplit[i]);
+				}
+
+				for (int p = 0; p < patternCount; p++) {
+					boolean[] pattern = this.patterns.get(p);
+					HashMap<Integer, BufferedWriter> patternWriters = writers
+							.get(p);
+					int linePointer = 0;
+					while (lineSplit.length - linePointer >= pattern.length) {
+						sequence.setLength(0);
+						boolean firstWord = true;
+						for (int i = 0; i < pattern.length; i++) {
+							if (pattern[i]) {
+								if (!firstWord) {
+									sequence.append(' ');
+								}
+								sequence.append(lineSplit[linePointer + i]);
+								firstWord = false;
+							}
+						}
+						int fileCount = ranks[linePointer + firstWordPositions[p]];
+
+						// write sequence
+						if (sequenceCombiners != null) {
+							sequenceCombiners[p].add(fileCount,
+									sequence.toString());
+						} else {
+							sequence.append(this.delimiter).append("1\n");
+							patternWriters.get(fileCount).write(
+									sequence.toString());
+						}
+
+						linePointer++;
+					}
+				}
+			}
+			if (sequenceCombiners != null) {
+				for (SequenceCombiner sequenceCombiner : sequenceCombiners) {
+					sequenceCombiner.spill();
+				}
+			}
+			bufferedReader.close();
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+
+		for (HashMap<Integer, BufferedWriter> patternWriters : writers) {
+			this.wordIndex.closeWriters(patternWriters);
+		}
+	}
+
+	public ArrayList<boolean[]> getPatterns() {
+		return this.patterns;
+	}
+}
@@ -0,0 +1,138 @@
+package de.typology.splitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded channel for passing SequenceRecords from one producer thread to
+ * one consumer thread without encoding them as text. Records are passed in
+ * batches of batchSize records. If maxBatches batches are waiting, put blocks
+ * until the consumer took a batch.
+ *
+ * If the producer fails, it calls fail and take throws an IOException. If
+ * the consumer stops, it calls abort and put throws an IOException, so
+ * neither side waits for the other one forever.
+ *
+ * @author Martin Koerner
+ *
+ */
+public class RecordChannel {
+	// marks the end of the records
+	private static final ArrayList<SequenceRecord> END = new ArrayList<SequenceRecord>(
+			0);
+	// how long put waits for space before it checks if the consumer aborted
+	private static final long PUT_TIMEOUT_MILLIS = 100;
+
+	private ArrayBlockingQueue<ArrayList<SequenceRecord>> batches;
+	private int batchSize;
+	private volatile boolean failed;
+	private volatile boolean aborted;
+
+	// only used by the producer
+	private ArrayList<SequenceRecord> putBatch;
+
+	// only used by the consumer
+	private ArrayList<SequenceRecord> takeBatch;
+	private int takePosition;
+
+	public RecordChannel(int batchSize, int maxBatches) {
+		this.batches = new ArrayBlockingQueue<ArrayList<SequenceRecord>>(
+				maxBatches);
+		this.batchSize = batchSize;
+		this.putBatch = new ArrayList<SequenceRecord>(batchSize);
+	}
+
+	public void put(String sequence, long count) throws IOException {
+		this.putBatch.add(new SequenceRecord(sequence, count));
+		if (this.putBatch.size() >= this.batchSize) {
+			this.putBatch(this.putBatch);
+			this.putBatch = new ArrayList<SequenceRecord>(this.batchSize);
+		}
+	}
+
+	/**
+	 * passes the remaining records and marks the end of the channel. Has to
+	 * be called by the producer, also if it failed.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		if (this.aborted) {
+			return;
+		}
+		if (this.putBatch.size() > 0) {
+			this.putBatch(this.putBatch);
+			this.putBatch = new ArrayList<SequenceRecord>(0);
+		}
+		this.putBatch(END);
+	}
+
+	/**
+	 * marks the end of the channel after the producer failed instead of close.
+	 * The records that are not taken yet are dropped and take throws an
+	 * IOException.
+	 *
+	 * @throws IOException
+	 */
+	public void fail() throws IOException {
+		this.failed = true;
+		if (this.aborted) {
+			return;
+		}
+		this.batches.clear();
+		this.putBatch(END);
+	}
+
+	/**
+	 * Has to be called by the consumer when it stops taking records, also if
+	 * it failed. A producer that still puts records gets an IOException.
+	 */
+	public void abort() {
+		this.aborted = true;
+		// unblocks the producer and frees the records
+		this.batches.clear();
+	}
+
+	/**
+	 * @return the next record or null if the channel is closed and all records
+	 *         are taken
+	 * @throws IOException
+	 *             if the producer failed
+	 */
+	public SequenceRecord take() throws IOException {
+		while (this.takeBatch == null
+				|| this.takePosition >= this.takeBatch.size()) {
+			if (this.takeBatch == END) {
+				if (this.failed) {
+					throw new IOException("the producer of the records failed");
+				}
+				return null;
+			}
+			try {
+				this.takeBatch = this.batches.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+			}
+			this.takePosition = 0;
+		}
+		return this.takeBatch.get(this.takePosition++);
+	}
+
+	private void putBatch(ArrayList<SequenceRecord> batch) throws IOException {
+		try {
+			while (!this.aborted) {
+				if (this.batches.offer(batch, PUT_TIMEOUT_MILLIS,
+						TimeUnit.MILLISECONDS)) {
+					return;
+				}
+			}
+			throw new IOException("the consumer of the records aborted");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+	}
+}
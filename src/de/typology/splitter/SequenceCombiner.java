@@ -0,0 +1,72 @@
+package de.typology.splitter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map.Entry;
+
+import de.typology.indexes.WordCounter;
+
+/**
+ * A bounded in-memory buffer that sums the counts of equal sequences before
+ * they are written into the files of a Sequencer, like the combiner of a
+ * MapReduce job. If more than maxBufferedSequences distinct sequences are
+ * buffered, the partial counts are spilled to the writers. The Aggregator sums
+ * the partial counts afterwards.
+ * 
+ * @author Martin Koerner
+ * 
+ */
+public class SequenceCombiner {
+	private HashMap<Integer, BufferedWriter> writers;
+	private String delimiter;
+	private int maxBufferedSequences;
+
+	private HashMap<Integer, WordCounter> buffers;
+	private int bufferedSequences;
+
+	public SequenceCombiner(HashMap<Integer, BufferedWriter> writers,
+			String delimiter, int maxBufferedSequences) {
+		this.writers = writers;
+		this.delimiter = delimiter;
+		this.maxBufferedSequences = maxBufferedSequences;
+		this.buffers = new HashMap<Integer, WordCounter>();
+	}
+
+	public void add(int fileCount, String sequence) throws IOException {
+		WordCounter buffer = this.buffers.get(fileCount);
+		if (buffer == null) {
+			buffer = new WordCounter(64);
+			this.buffers.put(fileCount, buffer);
+		}
+		int bufferSize = buffer.size();
+		buffer.increment(sequence);
+		if (buffer.size() > bufferSize) {
+			this.bufferedSequences++;
+			if (this.bufferedSequences > this.maxBufferedSequences) {
+				this.spill();
+			}
+		}
+	}
+
+	/**
+	 * writes all buffered sequences with their partial counts
+	 * 
+	 * @throws IOException
+	 */
+	public void spill() throws IOException {
+		for (Entry<Integer, WordCounter> bufferEntry : this.buffers.entrySet()) {
+			WordCounter buffer = bufferEntry.getValue();
+			if (buffer.size() == 0) {
+				continue;
+			}
+			BufferedWriter writer = this.writers.get(bufferEntry.getKey());
+			for (String sequence : buffer.getWords()) {
+				writer.write(sequence + this.delimiter
+						+ buffer.getCount(sequence) + "\n");
+			}
+			buffer.clear();
+		}
+		this.bufferedSequences = 0;
+	}
+}
@@ -1,16 +1,20 @@
 package de.typology.splitter;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+
+import de.typology.indexes.Vocabulary;
+import de.typology.utils.CountRecordReader;
 
 /**
  * A class for modifying the sequences in InputDirectory based on the given
- * Pattern. The modified sequences are returned as outputStream
+ * Pattern. The modified sequences are returned as outputStream or as records
+ * of a RecordChannel. Several patterns can be applied in one scan of
+ * inputDirectory, each one writing to its own RecordChannel.
  * 
  * @author Martin Koerner
  * 
@@ -18,89 +22,167 @@ import java.io.OutputStreamWriter;
 public class SequenceModifier implements Runnable {
 	private File inputDirectory;
 	private OutputStream outputStream;
+	// one channel per pattern, empty if outputStream is used
+	private ArrayList<RecordChannel> recordChannels;
 	private String delimiter;
-	private boolean[] pattern;
+	private ArrayList<boolean[]> patterns;
 	private boolean modifyCount;
 	private boolean setCountToOne;
+	// the vocabulary of binary count files, null for text
+	private Vocabulary vocabulary;
 
 	public SequenceModifier(File inputDirectory, OutputStream outputStream,
 			String delimiter, boolean[] pattern, boolean modifyCount,
 			boolean setCountToOne) {
 		this.inputDirectory = inputDirectory;
 		this.outputStream = outputStream;
+		this.recordChannels = new ArrayList<RecordChannel>();
 		this.delimiter = delimiter;
-		this.pattern = pattern;
+		this.patterns = new ArrayList<boolean[]>();
+		this.patterns.add(pattern);
 		this.modifyCount = modifyCount;
 		this.setCountToOne = setCountToOne;
 	}
 
+	public SequenceModifier(File inputDirectory, RecordChannel recordChannel,
+			String delimiter, boolean[] pattern, boolean modifyCount,
+			boolean setCountToOne) {
+		this(inputDirectory, (OutputStream) null, delimiter, pattern,
+				modifyCount, setCountToOne);
+		this.recordChannels.add(recordChannel);
+	}
+
+	/**
+	 * modifies the sequences of inputDirectory based on every pattern of
+	 * patterns and passes them to the RecordChannel with the same position in
+	 * recordChannels
+	 */
+	public SequenceModifier(File inputDirectory,
+			ArrayList<RecordChannel> recordChannels, String delimiter,
+			ArrayList<boolean[]> patterns, boolean modifyCount,
+			boolean setCountToOne) {
+		this.inputDirectory = inputDirectory;
+		this.recordChannels = recordChannels;
+		this.delimiter = delimiter;
+		this.patterns = patterns;
+		this.modifyCount = modifyCount;
+		this.setCountToOne = setCountToOne;
+	}
+
+	/**
+	 * @param vocabulary
+	 *            : the vocabulary of the input files if they are binary (see
+	 *            CountRecordWriter)
+	 */
+	public void setVocabulary(Vocabulary vocabulary) {
+		this.vocabulary = vocabulary;
+	}
+
 	@Override
 	public void run() {
-		BufferedWriter outputStreamWriter = new BufferedWriter(
-				new OutputStreamWriter(this.outputStream));
+		boolean succeeded = false;
+		BufferedWriter outputStreamWriter = null;
+		if (this.outputStream != null) {
+			outputStreamWriter = new BufferedWriter(new OutputStreamWriter(
+					this.outputStream));
+		}
 		try {
 			for (File inputFile : this.inputDirectory.listFiles()) {
-				BufferedReader inputFileReader = new BufferedReader(
-						new FileReader(inputFile));
-				String line;
-				while ((line = inputFileReader.readLine()) != null) {
-					String[] lineSplit = line.split(this.delimiter);
+				CountRecordReader inputFileReader = CountRecordReader.open(
+						inputFile, this.delimiter, this.vocabulary);
+				while (inputFileReader.next()) {
+					String sequence = inputFileReader.getSequence();
+					long count = inputFileReader.getCount(0);
 					if (this.modifyCount) {
-						String[] words = lineSplit[0].split("\\s");
-						String modifiedWords = "";
-						try {
-							for (int i = 0; i < this.pattern.length; i++) {
-								if (this.pattern[i]) {
-									modifiedWords += words[i] + " ";
-								}
-							}
-						} catch (Exception e) {
-							e.printStackTrace();
-						}
-						modifiedWords = modifiedWords.replaceFirst(" $", "");
-						// TODO: better solution?
-						if (words[0].equals("<fs>")) {
-							// for kneser-ney smoothing: every sequence that
-							// starts
-							// with <fs> counts as a new sequence
-							if (this.inputDirectory.getName().equals("1")) {
-								continue;
-							}
-							if (!this.pattern[0]) {
-								// set <s> in _1 to zero
-								if (this.inputDirectory.getName().equals("11")
-										&& words[1].equals("<s>")) {
-									outputStreamWriter.write("<s>"
-											+ this.delimiter + "0\n");
-								} else {
-									outputStreamWriter.write(modifiedWords
-											+ this.delimiter
-											+ line.split(this.delimiter)[1]
-											+ "\n");
-								}
-							}
-							// if pattern[0]==true: leave out sequence
-						} else {
-							if (this.setCountToOne) {
-								outputStreamWriter.write(modifiedWords
-										+ this.delimiter + "1\n");
-							} else {
-								outputStreamWriter.write(modifiedWords
-										+ this.delimiter + lineSplit[1] + "\n");
-							}
+						String[] words = sequence.split("\\s");
+						for (int output = 0; output < this.patterns.size(); output++) {
+							this.modify(outputStreamWriter, output, words,
+									count);
 						}
 					} else {
-						outputStreamWriter.write(line + "\n");
+						for (int output = 0; output < this.patterns.size(); output++) {
+							this.write(outputStreamWriter, output, sequence,
+									count);
+						}
 					}
 
 				}
 				inputFileReader.close();
 			}
-			outputStreamWriter.close();
+			if (outputStreamWriter != null) {
+				outputStreamWriter.close();
+			}
+			succeeded = true;
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
+		} finally {
+			// the consumers wait for the end of their channels
+			for (RecordChannel recordChannel : this.recordChannels) {
+				try {
+					if (succeeded) {
+						recordChannel.close();
+					} else {
+						recordChannel.fail();
+					}
+				} catch (IOException e) {
+					// TODO Auto-generated catch block
+					e.printStackTrace();
+				}
+			}
+		}
+
+	}
+
+	private void modify(BufferedWriter outputStreamWriter, int output,
+			String[] words, long count) throws IOException {
+		boolean[] pattern = this.patterns.get(output);
+		String modifiedWords = "";
+		try {
+			for (int i = 0; i < pattern.length; i++) {
+				if (pattern[i]) {
+					modifiedWords += words[i] + " ";
+				}
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
 		}
+		modifiedWords = modifiedWords.replaceFirst(" $", "");
+		// TODO: better solution?
+		if (words[0].equals("<fs>")) {
+			// for kneser-ney smoothing: every sequence that
+			// starts
+			// with <fs> counts as a new sequence
+			if (this.inputDirectory.getName().equals("1")) {
+				return;
+			}
+			if (!pattern[0]) {
+				// set <s> in _1 to zero
+				if (this.inputDirectory.getName().equals("11")
+						&& words[1].equals("<s>")) {
+					this.write(outputStreamWriter, output, "<s>", 0L);
+				} else {
+					this.write(outputStreamWriter, output, modifiedWords,
+							count);
+				}
+			}
+			// if pattern[0]==true: leave out sequence
+		} else {
+			if (this.setCountToOne) {
+				this.write(outputStreamWriter, output, modifiedWords, 1L);
+			} else {
+				this.write(outputStreamWriter, output, modifiedWords,
+						count);
+			}
+		}
+	}
 
+	private void write(BufferedWriter outputStreamWriter, int output,
+			String sequence, long count) throws IOException {
+		if (this.recordChannels.isEmpty()) {
+			outputStreamWriter.write(sequence + this.delimiter + count + "\n");
+		} else {
+			this.recordChannels.get(output).put(sequence, count);
+		}
 	}
 }
@@ -0,0 +1,25 @@
+package de.typology.splitter;
+
+/**
+ * A sequence and its count as passed through a RecordChannel.
+ *
+ * @author Martin Koerner
+ *
+ */
+public class SequenceRecord {
+	private String sequence;
+	private long count;
+
+	public SequenceRecord(String sequence, long count) {
+		this.sequence = sequence;
+		this.count = count;
+	}
+
+	public String getSequence() {
+		return this.sequence;
+	}
+
+	public long getCount() {
+		return this.count;
+	}
+}
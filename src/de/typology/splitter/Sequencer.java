@@ -14,14 +14,16 @@ import org.apache.logging.log4j.Logger;
 import de.typology.indexes.WordIndex;
 
 /**
- * A class for splitting a text file (via inputStream) into sequences that are
- * stored in different files based on the indexFile in outputDirectory.
+ * A class for splitting a text file (via inputStream) or the records of a
+ * RecordChannel into sequences that are stored in different files based on
+ * the indexFile in outputDirectory.
  * 
  * @author Martin Koerner
  * 
  */
 public class Sequencer {
 	protected InputStream inputStream;
+	protected RecordChannel recordChannel;
 	protected File outputDirectory;
 	protected WordIndex wordIndex;
 	protected boolean[] pattern;
@@ -30,6 +32,7 @@ public class Sequencer {
 	protected String delimiter;
 	protected boolean completeLine;
 	private int startSortAtColumn;
+	private int maxBufferedSequences;
 
 	Logger logger = LogManager.getLogger(this.getClass().getName());
 
@@ -37,6 +40,22 @@ public class Sequencer {
 			WordIndex wordIndex, boolean[] pattern, String addBeforeSentence,
 			String addAfterSentence, String delimiter, boolean completeLine,
 			int startSortAtColumn) {
+		this(inputStream, outputDirectory, wordIndex, pattern,
+				addBeforeSentence, addAfterSentence, delimiter, completeLine,
+				startSortAtColumn, 0);
+	}
+
+	/**
+	 * @param maxBufferedSequences
+	 *            : if greater than zero, the counts of up to
+	 *            maxBufferedSequences distinct sequences are summed in memory
+	 *            before they are written (see SequenceCombiner). Not used if
+	 *            completeLine is true.
+	 */
+	public Sequencer(InputStream inputStream, File outputDirectory,
+			WordIndex wordIndex, boolean[] pattern, String addBeforeSentence,
+			String addAfterSentence, String delimiter, boolean completeLine,
+			int startSortAtColumn, int maxBufferedSequences) {
 		this.inputStream = inputStream;
 		this.outputDirectory = outputDirectory;
 		this.wordIndex = wordIndex;
@@ -46,20 +65,46 @@ public class Sequencer {
 		this.delimiter = delimiter;
 		this.completeLine = completeLine;
 		this.startSortAtColumn = startSortAtColumn;
+		this.maxBufferedSequences = maxBufferedSequences;
+	}
 
+	/**
+	 * reads the records of recordChannel as lines of "sequence delimiter
+	 * count"
+	 */
+	public Sequencer(RecordChannel recordChannel, File outputDirectory,
+			WordIndex wordIndex, boolean[] pattern, String addBeforeSentence,
+			String addAfterSentence, String delimiter, boolean completeLine,
+			int startSortAtColumn, int maxBufferedSequences) {
+		this((InputStream) null, outputDirectory, wordIndex, pattern,
+				addBeforeSentence, addAfterSentence, delimiter, completeLine,
+				startSortAtColumn, maxBufferedSequences);
+		this.recordChannel = recordChannel;
 	}
 
-	public void splitIntoFiles() {
+	/**
+	 * @return false if the sequences could not be read or written
+	 */
+	public boolean splitIntoFiles() {
+		boolean succeeded = false;
 		HashMap<Integer, BufferedWriter> writers = this.wordIndex
 				.openWriters(this.outputDirectory);
 		// TODO: bufferSize calculation
-		BufferedReader bufferedReader = new BufferedReader(
-				new InputStreamReader(this.inputStream), 100 * 8 * 1024);
+		BufferedReader bufferedReader = null;
+		if (this.recordChannel == null) {
+			bufferedReader = new BufferedReader(new InputStreamReader(
+					this.inputStream), 100 * 8 * 1024);
+		}
 		// BufferedReader bufferedReader = new BufferedReader(
 		// new InputStreamReader(this.inputStream), 10 * 8 * 1024);
+		SequenceCombiner sequenceCombiner = null;
+		if (this.maxBufferedSequences > 0 && !this.completeLine) {
+			sequenceCombiner = new SequenceCombiner(writers, this.delimiter,
+					this.maxBufferedSequences);
+		}
 		String line;
 		try {
-			while ((line = bufferedReader.readLine()) != null) {
+			while ((line = this.readLine(bufferedReader)) != null) {
 				line = this.addBeforeSentence + line + this.addAfterSentence;
 				if (this.completeLine) {
 					String[] lineSplit = line.split("\\s");
@@ -78,25 +123,46 @@ public class Sequencer {
 							}
 						}
 						sequence = sequence.replaceFirst(" $", "");
-						sequence += this.delimiter + "1\n";
+						int fileCount = this.wordIndex.rank(sequence
+								.split(" ")[this.startSortAtColumn]);
 
 						// write sequence
-
-						writers.get(
-								this.wordIndex.rank(sequence.split(" ")[this.startSortAtColumn]))
-								.write(sequence);
+						if (sequenceCombiner != null) {
+							sequenceCombiner.add(fileCount, sequence);
+						} else {
+							writers.get(fileCount).write(
+									sequence + this.delimiter + "1\n");
+						}
 
 						linePointer++;
 					}
 				}
 			}
-			bufferedReader.close();
+			if (sequenceCombiner != null) {
+				sequenceCombiner.spill();
+			}
+			if (bufferedReader != null) {
+				bufferedReader.close();
+			}
+			succeeded = true;
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
 
 		this.wordIndex.closeWriters(writers);
+		return succeeded;
+	}
+
+	private String readLine(BufferedReader bufferedReader) throws IOException {
+		if (this.recordChannel == null) {
+			return bufferedReader.readLine();
+		}
+		SequenceRecord record = this.recordChannel.take();
+		if (record == null) {
+			return null;
+		}
+		return record.getSequence() + this.delimiter + record.getCount();
 	}
 
 	public boolean[] getPattern() {
@@ -1,16 +1,16 @@
 package de.typology.splitter;
 
 import java.io.File;
-import java.io.IOException;
-import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -18,18 +18,45 @@ import java.util.concurrent.TimeUnit;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import de.typology.indexes.Vocabulary;
 import de.typology.indexes.WordIndex;
 import de.typology.patterns.PatternTransformer;
+import de.typology.utils.SpillWriterPool;
 
 public class SmoothingSplitter {
+	// records per batch and batches per RecordChannel between a
+	// SequenceModifier and its consumer
+	private static final int CHANNEL_BATCH_SIZE = 1024;
+	private static final int CHANNEL_MAX_BATCHES = 16;
+	// patterns that are modified in one scan of their input files. Larger
+	// fan-outs are split into several scans, so every scan needs at most this
+	// many threads of pipelineExecutorService
+	private static final int MAX_PIPES_PER_SCAN = 4;
+
 	private File absoluteDirectory;
 	private File continuationDirectory;
 	private File indexFile;
 	private String delimiter;
 	protected boolean deleteTempFiles;
+	protected SpillWriterPool writerPool;
+	protected long aggregatorMemory;
+	protected Vocabulary vocabulary;
+	protected boolean singlePassContinuation;
 
 	Logger logger = LogManager.getLogger(this.getClass().getName());
 	private ExecutorService executorService;
+	// runs the SequenceModifiers and consumers of the scans that are run by
+	// executorService
+	private ExecutorService pipelineExecutorService;
+	// the split files of all patterns are aggregated on a shared executor
+	private ExecutorService aggregatorExecutorService;
+	private WordIndex wordIndex;
+	// continuation patterns stored by the label of the continuation pattern
+	// they are built from
+	private HashMap<String, ArrayList<Entry<boolean[], boolean[]>>> dependentEntries;
+	private CountDownLatch unfinishedPatterns;
+	// labels of the continuation patterns that could not be built
+	private List<String> failedPatterns;
 
 	private Comparator<boolean[]> patternComparator = new Comparator<boolean[]>() {
 		@Override
@@ -50,193 +77,398 @@ public class SmoothingSplitter {
 		this.deleteTempFiles = deleteTempFiles;
 	}
 
+	/**
+	 * the split files of all patterns are written using writerPool (see
+	 * WordIndex.setWriterPool). null means one buffered writer per file.
+	 *
+	 * @param writerPool
+	 */
+	public void setWriterPool(SpillWriterPool writerPool) {
+		this.writerPool = writerPool;
+	}
+
+	/**
+	 * @param aggregatorMemory
+	 *            : estimated number of bytes each aggregation may use before
+	 *            it sorts externally (see Aggregator.setMaxMemory)
+	 */
+	public void setAggregatorMemory(long aggregatorMemory) {
+		this.aggregatorMemory = aggregatorMemory;
+	}
+
+	/**
+	 * @param vocabulary
+	 *            : the vocabulary of the binary absolute count files (see
+	 *            AbsoluteSplitter.setVocabulary), the continuation count files
+	 *            are written with it as well
+	 */
+	public void setVocabulary(Vocabulary vocabulary) {
+		this.vocabulary = vocabulary;
+	}
+
+	/**
+	 * @param singlePassContinuation
+	 *            : if true, the continuation patterns that are built from the
+	 *            same pattern are modified in one scan of its files
+	 */
+	public void setSinglePassContinuation(boolean singlePassContinuation) {
+		this.singlePassContinuation = singlePassContinuation;
+	}
+
+	/**
+	 * @throws IllegalStateException
+	 *             if a continuation pattern could not be built. The patterns
+	 *             that are built from it are skipped
+	 */
 	public void split(ArrayList<boolean[]> patterns, int cores) {
 		// read Index
 		this.logger
 				.info("read word index: " + this.indexFile.getAbsolutePath());
-		WordIndex wordIndex = new WordIndex(this.indexFile);
+		this.wordIndex = new WordIndex(this.indexFile);
+		this.wordIndex.setWriterPool(this.writerPool);
 		// initialize executerService
 		// int cores = Runtime.getRuntime().availableProcessors();
 
 		SortedMap<boolean[], boolean[]> continuationMap = this
 				.filterContinuationMap(this.getContinuationMap(patterns));
 
-		HashSet<boolean[]> finishedPatterns = new HashSet<boolean[]>();
-
-		while (finishedPatterns.size() < continuationMap.size()) {
-			ArrayList<boolean[]> currentPatterns = new ArrayList<boolean[]>();
-			this.executorService = Executors.newFixedThreadPool(cores);
-
-			for (Entry<boolean[], boolean[]> entry : continuationMap.entrySet()) {
-				// list for storing patterns that are currently computed
-
-				if (!finishedPatterns.contains(entry.getKey())) {
-					if (!PatternTransformer.getStringPattern(entry.getValue())
-							.contains("0")) {
-						// read absolute files
-						currentPatterns.add(entry.getKey());
-						this.logger.info("build continuation for "
-								+ PatternTransformer.getStringPattern(entry
-										.getKey())
-								+ " from absolute "
-								+ PatternTransformer.getStringPattern(entry
-										.getValue()));
-
-						String inputPatternLabel = PatternTransformer
-								.getStringPattern(entry.getValue());
-						boolean[] outputPattern = PatternTransformer
-								.getBooleanPattern(PatternTransformer
-										.getStringPattern(entry.getKey())
-										.replaceAll("0", ""));
-						String outputPatternLabel = PatternTransformer
-								.getStringPattern(entry.getKey()).replaceAll(
-										"0", "_");
-
-						File currentAbsoluteInputDirectory = new File(
-								this.absoluteDirectory.getAbsolutePath() + "/"
-										+ inputPatternLabel);
-
-						this.logger.debug("inputPattern: "
-								+ PatternTransformer.getStringPattern(entry
-										.getValue()));
-						this.logger.debug("inputPatternLabel: "
-								+ inputPatternLabel);
-						this.logger.debug("outputPattern: "
-								+ PatternTransformer
-										.getStringPattern(outputPattern));
-						this.logger.debug("newPatternLabel: "
-								+ outputPatternLabel);
-						this.logger.debug("patternForModifier: "
-								+ PatternTransformer.getStringPattern(entry
-										.getKey()));
-
-						this.splitType(currentAbsoluteInputDirectory,
-								this.continuationDirectory, outputPattern,
-								outputPatternLabel, entry.getKey(), wordIndex,
-								true, true);
-					} else {
-						if (finishedPatterns.contains(entry.getValue())) {
-							// read continuation files
-							currentPatterns.add(entry.getKey());
-							this.logger.info("build continuation for "
-									+ PatternTransformer.getStringPattern(entry
-											.getKey())
-									+ " from continuation "
-									+ PatternTransformer.getStringPattern(entry
-											.getValue()));
-
-							String inputPatternLabel = PatternTransformer
-									.getStringPattern(entry.getValue())
-									.replaceAll("0", "_");
-							boolean[] outputPattern = PatternTransformer
-									.getBooleanPattern(PatternTransformer
-											.getStringPattern(entry.getKey())
-											.replaceAll("0", ""));
-							String outputPatternLabel = PatternTransformer
-									.getStringPattern(entry.getKey())
-									.replaceAll("0", "_");
-
-							File currentContinuationInputDirectory = new File(
-									this.continuationDirectory
-											.getAbsolutePath()
-											+ "/"
-											+ inputPatternLabel);
-
-							// build patternForModifier
-							boolean[] patternForModifier = new boolean[Integer
-									.bitCount(PatternTransformer
-											.getIntPattern(entry.getValue()))];
-							System.out.println(outputPatternLabel + "<--"
-									+ inputPatternLabel + " "
-									+ patternForModifier.length);
-							int patternPointer = 0;
-							for (int i = 0; i < entry.getValue().length; i++) {
-								if (entry.getKey()[i] && entry.getValue()[i]) {
-									patternForModifier[patternPointer] = true;
-									patternPointer++;
-								} else {
-									if (!entry.getKey()[i]
-											&& entry.getValue()[i]) {
-										patternForModifier[patternPointer] = false;
-										patternPointer++;
-									}
-								}
-							}
-
-							this.logger.debug("inputPattern: "
-									+ PatternTransformer.getStringPattern(entry
-											.getValue()));
-							this.logger.debug("inputPatternLabel: "
-									+ inputPatternLabel);
-							this.logger.debug("outputPattern: "
-									+ PatternTransformer
-											.getStringPattern(outputPattern));
-							this.logger.debug("newPatternLabel: "
-									+ outputPatternLabel);
-							this.logger
-									.debug("patternForModifier: "
-											+ PatternTransformer
-													.getStringPattern(patternForModifier));
-
-							this.splitType(currentContinuationInputDirectory,
-									this.continuationDirectory, outputPattern,
-									outputPatternLabel, patternForModifier,
-									wordIndex, false, true);
-
-						}
-					}
+		// every continuation pattern is built as soon as the pattern it is
+		// built from is finished
+		HashSet<String> continuationLabels = new HashSet<String>();
+		for (boolean[] continuationPattern : continuationMap.keySet()) {
+			continuationLabels.add(PatternTransformer
+					.getStringPattern(continuationPattern));
+		}
+		HashMap<String, ArrayList<Entry<boolean[], boolean[]>>> absoluteEntries = new HashMap<String, ArrayList<Entry<boolean[], boolean[]>>>();
+		this.dependentEntries = new HashMap<String, ArrayList<Entry<boolean[], boolean[]>>>();
+		int patternCount = 0;
+		for (Entry<boolean[], boolean[]> entry : continuationMap.entrySet()) {
+			String sourceLabel = PatternTransformer.getStringPattern(entry
+					.getValue());
+			if (!sourceLabel.contains("0")) {
+				// read absolute files
+				if (!absoluteEntries.containsKey(sourceLabel)) {
+					absoluteEntries.put(sourceLabel,
+							new ArrayList<Entry<boolean[], boolean[]>>());
 				}
+				absoluteEntries.get(sourceLabel).add(entry);
+			} else if (continuationLabels.contains(sourceLabel)) {
+				// read continuation files
+				if (!this.dependentEntries.containsKey(sourceLabel)) {
+					this.dependentEntries.put(sourceLabel,
+							new ArrayList<Entry<boolean[], boolean[]>>());
+				}
+				this.dependentEntries.get(sourceLabel).add(entry);
+			} else {
+				this.logger.error("no continuation pattern "
+						+ sourceLabel
+						+ " for building "
+						+ PatternTransformer.getStringPattern(entry.getKey()));
+				continue;
+			}
+			patternCount++;
+		}
+
+		this.executorService = Executors.newFixedThreadPool(cores);
+		// every task of executorService waits for the at most
+		// MAX_PIPES_PER_SCAN tasks it starts, so they never wait in the queue
+		this.pipelineExecutorService = Executors.newFixedThreadPool(cores
+				* MAX_PIPES_PER_SCAN);
+		this.aggregatorExecutorService = Executors.newFixedThreadPool(cores);
+		this.unfinishedPatterns = new CountDownLatch(patternCount);
+		this.failedPatterns = Collections
+				.synchronizedList(new ArrayList<String>());
+		for (ArrayList<Entry<boolean[], boolean[]>> entries : absoluteEntries
+				.values()) {
+			this.buildContinuations(entries);
+		}
+		try {
+			this.unfinishedPatterns.await();
+		} catch (InterruptedException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+		this.executorService.shutdown();
+		this.pipelineExecutorService.shutdown();
+		this.aggregatorExecutorService.shutdown();
+		try {
+			this.executorService.awaitTermination(Long.MAX_VALUE,
+					TimeUnit.SECONDS);
+			this.pipelineExecutorService.awaitTermination(Long.MAX_VALUE,
+					TimeUnit.SECONDS);
+			this.aggregatorExecutorService.awaitTermination(Long.MAX_VALUE,
+					TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+		if (!this.failedPatterns.isEmpty()) {
+			this.logger.error("failed continuation patterns: "
+					+ this.failedPatterns);
+			throw new IllegalStateException(
+					"could not build continuation patterns "
+							+ this.failedPatterns);
+		}
+	}
+
+	/**
+	 * starts building the continuation patterns of entries, which are all built
+	 * from the same pattern. If singlePassContinuation is set, the sequences
+	 * of up to MAX_PIPES_PER_SCAN piped patterns are modified in one scan of
+	 * the input files. Can be called by several threads.
+	 */
+	private void buildContinuations(
+			ArrayList<Entry<boolean[], boolean[]>> entries) {
+		ArrayList<Pipe> pipes = new ArrayList<Pipe>();
+		for (Entry<boolean[], boolean[]> entry : entries) {
+			Pipe pipe = this.buildContinuation(entry);
+			if (pipe != null) {
+				pipes.add(pipe);
+			}
+		}
+		if (this.singlePassContinuation) {
+			for (int start = 0; start < pipes.size(); start += MAX_PIPES_PER_SCAN) {
+				this.startPipes(new ArrayList<Pipe>(pipes.subList(start,
+						Math.min(start + MAX_PIPES_PER_SCAN, pipes.size()))));
 			}
-			this.executorService.shutdown();
-			this.logger.info("end of this round of calculation");
-			try {
-				this.executorService.awaitTermination(Long.MAX_VALUE,
-						TimeUnit.SECONDS);
-			} catch (InterruptedException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+		} else {
+			for (Pipe pipe : pipes) {
+				ArrayList<Pipe> singlePipe = new ArrayList<Pipe>();
+				singlePipe.add(pipe);
+				this.startPipes(singlePipe);
 			}
-			// add currently computed patterns to finishedPatterns
-			for (boolean[] currentPattern : currentPatterns) {
-				finishedPatterns.add(currentPattern);
+		}
+	}
+
+	/**
+	 * prepares building the continuation pattern entry.getKey() from
+	 * entry.getValue().
+	 * 
+	 * @return the pipe that still has to be started or null if the pattern is
+	 *         already submitted
+	 */
+	private Pipe buildContinuation(final Entry<boolean[], boolean[]> entry) {
+		CompletionCallback completionCallback = new CompletionCallback() {
+			@Override
+			public void completed(boolean succeeded) {
+				SmoothingSplitter.this.finishContinuation(entry.getKey(),
+						succeeded);
 			}
+		};
+		String inputPatternLabel;
+		File currentInputDirectory;
+		boolean[] patternForModifier;
+		boolean setCountToOne;
+		if (!PatternTransformer.getStringPattern(entry.getValue())
+				.contains("0")) {
+			// read absolute files
+			this.logger.info("build continuation for "
+					+ PatternTransformer.getStringPattern(entry.getKey())
+					+ " from absolute "
+					+ PatternTransformer.getStringPattern(entry.getValue()));
+
+			inputPatternLabel = PatternTransformer.getStringPattern(entry
+					.getValue());
+			currentInputDirectory = new File(
+					this.absoluteDirectory.getAbsolutePath() + "/"
+							+ inputPatternLabel);
+			patternForModifier = entry.getKey();
+			setCountToOne = true;
+		} else {
+			// read continuation files
+			this.logger.info("build continuation for "
+					+ PatternTransformer.getStringPattern(entry.getKey())
+					+ " from continuation "
+					+ PatternTransformer.getStringPattern(entry.getValue()));
+
+			inputPatternLabel = PatternTransformer.getStringPattern(
+					entry.getValue()).replaceAll("0", "_");
+			currentInputDirectory = new File(
+					this.continuationDirectory.getAbsolutePath() + "/"
+							+ inputPatternLabel);
+
+			// build patternForModifier
+			patternForModifier = new boolean[Integer
+					.bitCount(PatternTransformer.getIntPattern(entry
+							.getValue()))];
+			int patternPointer = 0;
+			for (int i = 0; i < entry.getValue().length; i++) {
+				if (entry.getKey()[i] && entry.getValue()[i]) {
+					patternForModifier[patternPointer] = true;
+					patternPointer++;
+				} else {
+					if (!entry.getKey()[i] && entry.getValue()[i]) {
+						patternForModifier[patternPointer] = false;
+						patternPointer++;
+					}
+				}
+			}
+			setCountToOne = false;
 		}
+		boolean[] outputPattern = PatternTransformer
+				.getBooleanPattern(PatternTransformer.getStringPattern(
+						entry.getKey()).replaceAll("0", ""));
+		String outputPatternLabel = PatternTransformer.getStringPattern(
+				entry.getKey()).replaceAll("0", "_");
+
+		this.logger.debug("inputPattern: "
+				+ PatternTransformer.getStringPattern(entry.getValue()));
+		this.logger.debug("inputPatternLabel: " + inputPatternLabel);
+		this.logger.debug("outputPattern: "
+				+ PatternTransformer.getStringPattern(outputPattern));
+		this.logger.debug("newPatternLabel: " + outputPatternLabel);
+		this.logger.debug("patternForModifier: "
+				+ PatternTransformer.getStringPattern(patternForModifier));
+
+		return this.splitType(currentInputDirectory, this.continuationDirectory,
+				outputPattern, outputPatternLabel, patternForModifier,
+				this.wordIndex, setCountToOne, true, completionCallback);
+	}
+
+	/**
+	 * starts all continuation patterns that are built from pattern. If
+	 * building pattern failed, they are skipped instead.
+	 */
+	private void finishContinuation(boolean[] pattern, boolean succeeded) {
+		String label = PatternTransformer.getStringPattern(pattern);
+		ArrayList<Entry<boolean[], boolean[]>> entries = this.dependentEntries
+				.get(label);
+		if (succeeded) {
+			this.logger.info("finished continuation for " + label);
+			if (entries != null) {
+				this.buildContinuations(entries);
+			}
+		} else {
+			this.logger.error("building continuation for " + label
+					+ " failed");
+			this.failedPatterns.add(label);
+			this.skipContinuations(entries);
+		}
+		this.unfinishedPatterns.countDown();
+	}
 
+	/**
+	 * counts down the continuation patterns of entries and all patterns that
+	 * are built from them without building them
+	 */
+	private void skipContinuations(
+			ArrayList<Entry<boolean[], boolean[]>> entries) {
+		if (entries == null) {
+			return;
+		}
+		for (Entry<boolean[], boolean[]> entry : entries) {
+			String label = PatternTransformer.getStringPattern(entry.getKey());
+			this.logger.error("skip continuation for " + label);
+			this.skipContinuations(this.dependentEntries.get(label));
+			this.unfinishedPatterns.countDown();
+		}
 	}
 
-	private void splitType(File currentInputDirectory, File outputDirectory,
+	/**
+	 * If patternForModifier only removes trailing words, the sorted input files
+	 * are counted directly by a SortedContinuationTask. Otherwise the task for
+	 * building newPattern is returned as a Pipe that reads its sequences from
+	 * a RecordChannel.
+	 */
+	private Pipe splitType(File currentInputDirectory, File outputDirectory,
 			boolean[] newPattern, String newPatternLabel,
 			boolean[] patternForModifier, WordIndex wordIndex,
-			boolean setCountToOne, boolean additionalCounts) {
-		PipedInputStream pipedInputStream = new PipedInputStream(100 * 8 * 1024);
+			boolean setCountToOne, boolean additionalCounts,
+			CompletionCallback completionCallback) {
+		if (Integer.bitCount(PatternTransformer.getIntPattern(newPattern)) > 0
+				&& SortedContinuationTask
+						.isPrefixPattern(patternForModifier)) {
+			// the input files are already grouped by the remaining words
+			SortedContinuationTask sortedContinuationTask = new SortedContinuationTask(
+					currentInputDirectory, outputDirectory, newPatternLabel,
+					this.delimiter, patternForModifier, setCountToOne);
+			sortedContinuationTask.setAggregatorMemory(this.aggregatorMemory);
+			sortedContinuationTask.setVocabulary(this.vocabulary);
+			sortedContinuationTask.setCompletionCallback(completionCallback);
+			this.executorService.execute(sortedContinuationTask);
+			return null;
+		}
+		RecordChannel recordChannel = new RecordChannel(CHANNEL_BATCH_SIZE,
+				CHANNEL_MAX_BATCHES);
 
+		Runnable consumer;
 		if (Integer.bitCount(PatternTransformer.getIntPattern(newPattern)) == 0) {
-			LineCounterTask lineCountTask = new LineCounterTask(
-					pipedInputStream, outputDirectory, newPatternLabel,
-					this.delimiter, setCountToOne, additionalCounts);
-			this.executorService.execute(lineCountTask);
+			LineCounterTask lineCountTask = new LineCounterTask(recordChannel,
+					outputDirectory, newPatternLabel, this.delimiter,
+					setCountToOne, additionalCounts);
+			lineCountTask.setCompletionCallback(completionCallback);
+			consumer = lineCountTask;
 		} else {
 			// don't add tags here
-			SplitterTask splitterTask = new SplitterTask(pipedInputStream,
-					outputDirectory, wordIndex, newPattern, newPatternLabel,
-					this.delimiter, 0, this.deleteTempFiles, "", "", true,
-					false, additionalCounts);
-			this.executorService.execute(splitterTask);
+			SplitterTask splitterTask = new SplitterTask(null, outputDirectory,
+					wordIndex, newPattern, newPatternLabel, this.delimiter, 0,
+					this.deleteTempFiles, "", "", true, false, additionalCounts);
+			splitterTask.setRecordChannel(recordChannel);
+			splitterTask.setAggregatorMemory(this.aggregatorMemory);
+			splitterTask.setVocabulary(this.vocabulary);
+			splitterTask
+					.setAggregatorExecutorService(this.aggregatorExecutorService);
+			splitterTask.setCompletionCallback(completionCallback);
+			consumer = splitterTask;
 		}
+		return new Pipe(currentInputDirectory, patternForModifier,
+				setCountToOne, recordChannel, consumer);
+	}
 
-		try {
-			OutputStream pipedOutputStream = new PipedOutputStream(
-					pipedInputStream);
-			SequenceModifier sequenceModifier = new SequenceModifier(
-					currentInputDirectory, pipedOutputStream, this.delimiter,
-					patternForModifier, true, setCountToOne);
-			this.executorService.execute(sequenceModifier);
-
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+	/**
+	 * submits the consumers of pipes, which all read the same input files. One
+	 * SequenceModifier passes the records of all pipes to their channels. The
+	 * task on executorService runs the first consumer and waits until the
+	 * SequenceModifier and the other consumers on pipelineExecutorService are
+	 * finished. So at most MAX_PIPES_PER_SCAN tasks of pipelineExecutorService
+	 * are running per thread of executorService and a producer never waits
+	 * for a consumer that is still queued.
+	 */
+	private void startPipes(final ArrayList<Pipe> pipes) {
+		ArrayList<boolean[]> patternsForModifier = new ArrayList<boolean[]>();
+		ArrayList<RecordChannel> recordChannels = new ArrayList<RecordChannel>();
+		for (Pipe pipe : pipes) {
+			patternsForModifier.add(pipe.patternForModifier);
+			recordChannels.add(pipe.recordChannel);
 		}
+		final SequenceModifier sequenceModifier = new SequenceModifier(
+				pipes.get(0).inputDirectory, recordChannels, this.delimiter,
+				patternsForModifier, true, pipes.get(0).setCountToOne);
+		sequenceModifier.setVocabulary(this.vocabulary);
+		this.executorService.execute(new Runnable() {
+			@Override
+			public void run() {
+				CountDownLatch unfinishedTasks = new CountDownLatch(pipes
+						.size());
+				for (int i = 1; i < pipes.size(); i++) {
+					SmoothingSplitter.this.executePipelineTask(
+							pipes.get(i).consumer, unfinishedTasks);
+				}
+				SmoothingSplitter.this.executePipelineTask(sequenceModifier,
+						unfinishedTasks);
+				pipes.get(0).consumer.run();
+				try {
+					unfinishedTasks.await();
+				} catch (InterruptedException e) {
+					// TODO Auto-generated catch block
+					e.printStackTrace();
+				}
+			}
+		});
+	}
 
+	private void executePipelineTask(final Runnable task,
+			final CountDownLatch unfinishedTasks) {
+		this.pipelineExecutorService.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					task.run();
+				} finally {
+					unfinishedTasks.countDown();
+				}
+			}
+		});
 	}
 
 	private SortedMap<boolean[], boolean[]> filterContinuationMap(
@@ -283,4 +515,25 @@ public class SmoothingSplitter {
 		}
 	}
 
+	/**
+	 * a continuation pattern whose consumer reads the sequences of
+	 * inputDirectory modified by patternForModifier from recordChannel
+	 */
+	private static class Pipe {
+		File inputDirectory;
+		boolean[] patternForModifier;
+		boolean setCountToOne;
+		RecordChannel recordChannel;
+		Runnable consumer;
+
+		Pipe(File inputDirectory, boolean[] patternForModifier,
+				boolean setCountToOne, RecordChannel recordChannel,
+				Runnable consumer) {
+			this.inputDirectory = inputDirectory;
+			this.patternForModifier = patternForModifier;
+			this.setCountToOne = setCountToOne;
+			this.recordChannel = recordChannel;
+			this.consumer = consumer;
+		}
+	}
 }
@@ -0,0 +1,311 @@
+package de.typology.splitter;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import de.typology.indexes.Vocabulary;
+import de.typology.utils.CountRecordReader;
+import de.typology.utils.CountRecordWriter;
+import de.typology.utils.CountStatistics;
+
+/**
+ * A class for building a continuation pattern whose patternForModifier only
+ * removes trailing words. The aggregated files in inputDirectory are sorted by
+ * their sequences and partitioned by their first word, so all sequences with
+ * the same remaining words are adjacent and the counts 1+, 1, 2 and 3+ of the
+ * remaining words are computed in one pass over the input files without
+ * sequencing and aggregating them again.
+ * <p>
+ * The output equals the output of a SequenceModifier piped into a SplitterTask
+ * with additionalCounts. If the groups of a file are not in the order of their
+ * sequences (words containing characters that are sorted before the space),
+ * that file is aggregated by an Aggregator instead.
+ *
+ * @author Martin Koerner
+ *
+ */
+public class SortedContinuationTask implements Runnable {
+	protected File inputDirectory;
+	protected File outputDirectory;
+	protected String patternLabel;
+	protected String delimiter;
+	// number of words that are kept
+	protected int wordCount;
+	protected boolean setCountToOne;
+	protected long aggregatorMemory;
+	protected Vocabulary vocabulary;
+	protected CompletionCallback completionCallback;
+
+	Logger logger = LogManager.getLogger(this.getClass().getName());
+
+	/**
+	 * @param inputDirectory
+	 * @param outputDirectory
+	 * @param patternLabel
+	 * @param delimiter
+	 * @param patternForModifier
+	 *            : has to be a prefix pattern (see isPrefixPattern)
+	 * @param setCountToOne
+	 */
+	public SortedContinuationTask(File inputDirectory, File outputDirectory,
+			String patternLabel, String delimiter,
+			boolean[] patternForModifier, boolean setCountToOne) {
+		this.inputDirectory = inputDirectory;
+		this.outputDirectory = outputDirectory;
+		this.patternLabel = patternLabel;
+		this.delimiter = delimiter;
+		this.wordCount = 0;
+		while (this.wordCount < patternForModifier.length
+				&& patternForModifier[this.wordCount]) {
+			this.wordCount++;
+		}
+		this.setCountToOne = setCountToOne;
+	}
+
+	/**
+	 * @return true if pattern keeps at least the first word and only removes
+	 *         trailing words, e.g. 1110
+	 */
+	public static boolean isPrefixPattern(boolean[] pattern) {
+		if (pattern.length == 0 || !pattern[0]) {
+			return false;
+		}
+		boolean removed = false;
+		for (boolean position : pattern) {
+			if (position && removed) {
+				return false;
+			}
+			if (!position) {
+				removed = true;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param aggregatorMemory
+	 *            : see Aggregator.setMaxMemory, used for files that are not
+	 *            grouped in order
+	 */
+	public void setAggregatorMemory(long aggregatorMemory) {
+		this.aggregatorMemory = aggregatorMemory;
+	}
+
+	/**
+	 * @param vocabulary
+	 *            : the input and output files are binary (see
+	 *            CountRecordWriter) if it is not null
+	 */
+	public void setVocabulary(Vocabulary vocabulary) {
+		this.vocabulary = vocabulary;
+	}
+
+	/**
+	 * @param completionCallback
+	 *            : is notified after all counts are written, also if this
+	 *            task failed
+	 */
+	public void setCompletionCallback(CompletionCallback completionCallback) {
+		this.completionCallback = completionCallback;
+	}
+
+	@Override
+	public void run() {
+		boolean succeeded = false;
+		try {
+			succeeded = this.countSortedContinuation();
+		} finally {
+			if (this.completionCallback != null) {
+				this.completionCallback.completed(succeeded);
+			}
+		}
+	}
+
+	/**
+	 * @return false if the counts could not be written
+	 */
+	private boolean countSortedContinuation() {
+		File patternOutputDirectory = new File(
+				this.outputDirectory.getAbsolutePath() + "/"
+						+ this.patternLabel);
+		if (patternOutputDirectory.exists()) {
+			try {
+				FileUtils.deleteDirectory(patternOutputDirectory);
+			} catch (IOException e) {
+				// TODO Auto-generated catch block
+				e.printStackTrace();
+			}
+		}
+		patternOutputDirectory.mkdir();
+		this.logger.info("count sorted continuation: "
+				+ patternOutputDirectory.getAbsolutePath());
+
+		CountStatistics patternStatistics = new CountStatistics();
+		try {
+			File[] inputFiles = this.inputDirectory.listFiles();
+			if (inputFiles == null) {
+				throw new IOException("cannot list " + this.inputDirectory);
+			}
+			for (File inputFile : inputFiles) {
+				File outputFile = new File(
+						patternOutputDirectory.getAbsolutePath() + "/"
+								+ inputFile.getName());
+				CountStatistics fileStatistics = new CountStatistics();
+				if (!this.countSortedFile(inputFile, outputFile,
+						fileStatistics)) {
+					this.logger.debug("groups of " + inputFile
+							+ " are not sorted, aggregate them");
+					fileStatistics = this.aggregateFile(inputFile, outputFile);
+				}
+				patternStatistics.add(fileStatistics);
+			}
+			patternStatistics.write(CountStatistics.getStatisticsFile(
+					this.outputDirectory, this.patternLabel));
+			return true;
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * @return false if the groups of inputFile are not sorted. outputFile is
+	 *         incomplete in that case
+	 */
+	private boolean countSortedFile(File inputFile, File outputFile,
+			CountStatistics statistics) throws IOException {
+		CountRecordReader inputFileReader = CountRecordReader.open(inputFile,
+				this.delimiter, this.vocabulary);
+		CountRecordWriter outputFileWriter = CountRecordWriter.open(outputFile,
+				this.delimiter, this.vocabulary);
+		String currentWords = null;
+		// [0]=1+
+		// [1]=1
+		// [2]=2
+		// [3]=3+
+		long[] counts = new long[4];
+		boolean sorted = true;
+		while (inputFileReader.next()) {
+			String words = this.getWords(inputFileReader.getSequence());
+			if (words == null) {
+				continue;
+			}
+			if (currentWords == null || !words.equals(currentWords)) {
+				if (currentWords != null) {
+					if (words.compareTo(currentWords) < 0) {
+						sorted = false;
+						break;
+					}
+					this.writeCounts(outputFileWriter, currentWords, counts,
+							statistics);
+				}
+				currentWords = words;
+				counts = new long[4];
+			}
+			if (this.setCountToOne) {
+				this.addCount(counts, 1L);
+			} else {
+				this.addCount(counts, inputFileReader.getCount(0));
+			}
+		}
+		if (sorted && currentWords != null) {
+			this.writeCounts(outputFileWriter, currentWords, counts,
+					statistics);
+		}
+		inputFileReader.close();
+		outputFileWriter.close();
+		return sorted;
+	}
+
+	/**
+	 * writes the remaining words of inputFile next to outputFile and
+	 * aggregates them like a SplitterTask
+	 *
+	 * @throws IOException
+	 *             also if the aggregation failed. The unsorted file is kept
+	 *             then and outputFile is deleted
+	 */
+	private CountStatistics aggregateFile(File inputFile, File outputFile)
+			throws IOException {
+		File unsortedFile = new File(outputFile.getAbsolutePath()
+				+ "-unsorted");
+		CountRecordReader inputFileReader = CountRecordReader.open(inputFile,
+				this.delimiter, this.vocabulary);
+		CountRecordWriter unsortedFileWriter = CountRecordWriter
+				.openIntermediate(unsortedFile, this.delimiter, this.vocabulary);
+		while (inputFileReader.next()) {
+			String words = this.getWords(inputFileReader.getSequence());
+			if (words == null) {
+				continue;
+			}
+			if (this.setCountToOne) {
+				unsortedFileWriter.write(words, 1L);
+			} else {
+				unsortedFileWriter.write(words, inputFileReader.getCount(0));
+			}
+		}
+		inputFileReader.close();
+		unsortedFileWriter.close();
+		Aggregator aggregator = this.getAggregator(unsortedFile, outputFile);
+		if (!aggregator.aggregateCounts()) {
+			outputFile.delete();
+			throw new IOException("could not aggregate " + unsortedFile);
+		}
+		unsortedFile.delete();
+		return aggregator.getStatistics();
+	}
+
+	protected Aggregator getAggregator(File unsortedFile, File outputFile) {
+		Aggregator aggregator = new Aggregator(unsortedFile, outputFile,
+				this.delimiter, 0, true);
+		aggregator.setMaxMemory(this.aggregatorMemory);
+		aggregator.setVocabulary(this.vocabulary);
+		return aggregator;
+	}
+
+	/**
+	 * @return the first wordCount words of sequence or null if the sequence
+	 *         is left out (like SequenceModifier does for sequences starting
+	 *         with &lt;fs&gt;)
+	 */
+	private String getWords(String sequence) {
+		String[] words = sequence.split("\\s");
+		if (words[0].equals("<fs>")) {
+			return null;
+		}
+		StringBuilder modifiedWords = new StringBuilder();
+		for (int i = 0; i < this.wordCount && i < words.length; i++) {
+			if (i > 0) {
+				modifiedWords.append(' ');
+			}
+			modifiedWords.append(words[i]);
+		}
+		return modifiedWords.toString();
+	}
+
+	// same counts as Aggregator.addCountWithAdditional
+	private void addCount(long[] counts, long count) {
+		counts[0] += count;
+		if (count == 1L) {
+			counts[1] += count;
+		}
+		if (count == 2L) {
+			counts[2] += count;
+		}
+		if (count >= 3L) {
+			counts[3] += count;
+		}
+	}
+
+	private void writeCounts(CountRecordWriter outputFileWriter,
+			String words, long[] counts, CountStatistics statistics)
+			throws IOException {
+		outputFileWriter.write(words, counts);
+		statistics.add(words, counts[0]);
+	}
+}
@@ -3,12 +3,18 @@ package de.typology.splitter;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import de.typology.indexes.Vocabulary;
 import de.typology.indexes.WordIndex;
+import de.typology.utils.CountStatistics;
 
 /**
  * A class for running Sequencer and Aggregator for a given pattern.
@@ -18,6 +24,7 @@ import de.typology.indexes.WordIndex;
  */
 public class SplitterTask implements Runnable {
 	private InputStream inputStream;
+	private RecordChannel recordChannel;
 	private File outputDirectory;
 	private WordIndex wordIndex;
 	private boolean[] pattern;
@@ -31,15 +38,47 @@ public class SplitterTask implements Runnable {
 	private boolean sequenceModifyCounts;
 	private boolean aggregateCompleteLine;
 	private boolean additionalCounts;
+	private int maxBufferedSequences;
+	private long aggregatorMemory;
+	private Vocabulary vocabulary;
+	private ExecutorService aggregatorExecutorService;
+	private CompletionCallback completionCallback;
+
+	// counts run itself and the AggregatorTasks that are not finished yet
+	private AtomicInteger unfinishedTasks = new AtomicInteger();
+	private volatile boolean failed;
+	private CountStatistics patternStatistics;
+	private File sequencerOutputDirectory;
 
 	Logger logger = LogManager.getLogger(this.getClass().getName());
 
+	/**
+	 * If inputStream is null and no recordChannel is set, the sequences are
+	 * expected to be already stored in the patternLabel-split directory (e.g.
+	 * by a MultiPatternSequencer) and only the aggregation is executed.
+	 */
 	public SplitterTask(InputStream inputStream, File outputDirectory,
 			WordIndex wordIndex, boolean[] pattern, String patternLabel,
 			String delimiter, int startSortAtColumn, boolean deleteTempFiles,
 			String addBeforeSentence, String addAfterSentence,
 			boolean sequenceModifyCounts, boolean aggregateCompleteLine,
 			boolean additionalCounts) {
+		this(inputStream, outputDirectory, wordIndex, pattern, patternLabel,
+				delimiter, startSortAtColumn, deleteTempFiles,
+				addBeforeSentence, addAfterSentence, sequenceModifyCounts,
+				aggregateCompleteLine, additionalCounts, 0);
+	}
+
+	/**
+	 * @param maxBufferedSequences
+	 *            : see Sequencer
+	 */
+	public SplitterTask(InputStream inputStream, File outputDirectory,
+			WordIndex wordIndex, boolean[] pattern, String patternLabel,
+			String delimiter, int startSortAtColumn, boolean deleteTempFiles,
+			String addBeforeSentence, String addAfterSentence,
+			boolean sequenceModifyCounts, boolean aggregateCompleteLine,
+			boolean additionalCounts, int maxBufferedSequences) {
 		this.inputStream = inputStream;
 		this.outputDirectory = outputDirectory;
 		this.wordIndex = wordIndex;
@@ -53,31 +92,117 @@ public class SplitterTask implements Runnable {
 		this.sequenceModifyCounts = sequenceModifyCounts;
 		this.aggregateCompleteLine = aggregateCompleteLine;
 		this.additionalCounts = additionalCounts;
+		this.maxBufferedSequences = maxBufferedSequences;
+	}
+
+	/**
+	 * reads the sequences from recordChannel instead of inputStream
+	 * 
+	 * @param recordChannel
+	 */
+	public void setRecordChannel(RecordChannel recordChannel) {
+		this.recordChannel = recordChannel;
+	}
+
+	/**
+	 * @param aggregatorMemory
+	 *            : see Aggregator.setMaxMemory
+	 */
+	public void setAggregatorMemory(long aggregatorMemory) {
+		this.aggregatorMemory = aggregatorMemory;
+	}
+
+	/**
+	 * @param vocabulary
+	 *            : see Aggregator.setVocabulary
+	 */
+	public void setVocabulary(Vocabulary vocabulary) {
+		this.vocabulary = vocabulary;
+	}
+
+	/**
+	 * If aggregatorExecutorService is not null, every split file is aggregated
+	 * by its own AggregatorTask on aggregatorExecutorService and run returns
+	 * without waiting for the aggregation. The executor can be shared by the
+	 * SplitterTasks of several patterns and has to be terminated before the
+	 * aggregated files are read.
+	 *
+	 * @param aggregatorExecutorService
+	 */
+	public void setAggregatorExecutorService(
+			ExecutorService aggregatorExecutorService) {
+		this.aggregatorExecutorService = aggregatorExecutorService;
+	}
+
+	/**
+	 * @param completionCallback
+	 *            : is notified after all split files are aggregated, also if
+	 *            the sequencer or one of the aggregators failed
+	 */
+	public void setCompletionCallback(CompletionCallback completionCallback) {
+		this.completionCallback = completionCallback;
 	}
 
 	@Override
 	public void run() {
-		File sequencerOutputDirectory = new File(
+		this.unfinishedTasks.set(1);
+		this.failed = false;
+		this.patternStatistics = new CountStatistics();
+		boolean succeeded = false;
+		try {
+			succeeded = this.splitAndAggregate();
+		} finally {
+			if (this.recordChannel != null) {
+				// stops the producer if not all records were taken
+				this.recordChannel.abort();
+			}
+			this.taskFinished(succeeded);
+		}
+	}
+
+	/**
+	 * @return false if the sequences could not be split. AggregatorTasks that
+	 *         fail later are reported by taskFinished
+	 */
+	private boolean splitAndAggregate() {
+		this.sequencerOutputDirectory = new File(
 				this.outputDirectory.getAbsolutePath() + "/"
 						+ this.patternLabel + "-split");
-		if (sequencerOutputDirectory.exists()) {
-			try {
-				FileUtils.deleteDirectory(sequencerOutputDirectory);
-			} catch (IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+		if (this.inputStream != null || this.recordChannel != null) {
+			if (this.sequencerOutputDirectory.exists()) {
+				try {
+					FileUtils.deleteDirectory(this.sequencerOutputDirectory);
+				} catch (IOException e) {
+					// TODO Auto-generated catch block
+					e.printStackTrace();
+				}
 			}
-		}
-		sequencerOutputDirectory.mkdir();
-		this.logger.info("start building: "
-				+ sequencerOutputDirectory.getAbsolutePath());
+			this.sequencerOutputDirectory.mkdir();
+			this.logger.info("start building: "
+					+ this.sequencerOutputDirectory.getAbsolutePath());
 
-		// initialize sequencer
-		Sequencer sequencer = new Sequencer(this.inputStream,
-				sequencerOutputDirectory, this.wordIndex, this.pattern,
-				this.addBeforeSentence, this.addAfterSentence, this.delimiter,
-				this.sequenceModifyCounts, this.startSortAtColumn);
-		sequencer.splitIntoFiles();
+			// initialize sequencer
+			Sequencer sequencer;
+			if (this.recordChannel != null) {
+				sequencer = new Sequencer(this.recordChannel,
+						this.sequencerOutputDirectory, this.wordIndex,
+						this.pattern, this.addBeforeSentence,
+						this.addAfterSentence, this.delimiter,
+						this.sequenceModifyCounts, this.startSortAtColumn,
+						this.maxBufferedSequences);
+			} else {
+				sequencer = new Sequencer(this.inputStream,
+						this.sequencerOutputDirectory, this.wordIndex,
+						this.pattern, this.addBeforeSentence,
+						this.addAfterSentence, this.delimiter,
+						this.sequenceModifyCounts, this.startSortAtColumn,
+						this.maxBufferedSequences);
+			}
+			if (!sequencer.splitIntoFiles()) {
+				this.logger.error("splitting failed: " + this.patternLabel);
+				return false;
+			}
+		}
 
 		File aggregatedOutputDirectory = new File(
 				this.outputDirectory.getAbsolutePath() + "/"
@@ -93,19 +218,105 @@ public class SplitterTask implements Runnable {
 		aggregatedOutputDirectory.mkdir();
 		this.logger.info("aggregate into: " + aggregatedOutputDirectory);
 
-		for (File splitFile : sequencerOutputDirectory.listFiles()) {
-			Aggregator aggregator = new Aggregator(splitFile, new File(
-					aggregatedOutputDirectory.getAbsolutePath() + "/"
-							+ splitFile.getName()), this.delimiter,
-					this.startSortAtColumn, this.additionalCounts);
-			if (this.aggregateCompleteLine) {
-				aggregator.aggregateWithoutCounts();
+		File[] splitFiles = this.sequencerOutputDirectory.listFiles();
+		if (splitFiles == null) {
+			this.logger.error("cannot list " + this.sequencerOutputDirectory);
+			return false;
+		}
+		if (this.aggregatorExecutorService != null) {
+			// start with the largest files so that the small ones fill the
+			// gaps at the end
+			Arrays.sort(splitFiles, new Comparator<File>() {
+				@Override
+				public int compare(File file1, File file2) {
+					return Long.valueOf(file2.length()).compareTo(
+							file1.length());
+				}
+			});
+		}
+		for (File splitFile : splitFiles) {
+			final Aggregator aggregator = this.getAggregator(splitFile,
+					aggregatedOutputDirectory);
+			CompletionCallback aggregatorCallback = new CompletionCallback() {
+				@Override
+				public void completed(boolean succeeded) {
+					if (succeeded && aggregator.getStatistics() != null) {
+						SplitterTask.this.patternStatistics.add(aggregator
+								.getStatistics());
+					}
+					SplitterTask.this.taskFinished(succeeded);
+				}
+			};
+			AggregatorTask aggregatorTask = new AggregatorTask(aggregator,
+					this.aggregateCompleteLine, aggregatorCallback);
+			this.unfinishedTasks.incrementAndGet();
+			if (this.aggregatorExecutorService == null) {
+				aggregatorTask.run();
 			} else {
-				aggregator.aggregateCounts();
+				try {
+					this.aggregatorExecutorService.execute(aggregatorTask);
+				} catch (RuntimeException e) {
+					// the task will never report back
+					this.taskFinished(false);
+					throw e;
+				}
 			}
 		}
+		return true;
+	}
+
+	/**
+	 * Is called once by run and once by every AggregatorTask. The last call
+	 * finishes the aggregation.
+	 */
+	private void taskFinished(boolean succeeded) {
+		if (!succeeded) {
+			this.failed = true;
+		}
+		if (this.unfinishedTasks.decrementAndGet() == 0) {
+			this.finishAggregation();
+		}
+	}
+
+	/**
+	 * writes the statistics of the pattern, deletes the split files and
+	 * notifies the completionCallback
+	 */
+	private void finishAggregation() {
+		if (this.failed) {
+			// incomplete statistics would be taken for valid ones
+			this.logger.error("aggregation failed: " + this.patternLabel);
+		} else if (!this.aggregateCompleteLine) {
+			try {
+				this.patternStatistics.write(CountStatistics
+						.getStatisticsFile(this.outputDirectory,
+								this.patternLabel));
+			} catch (IOException e) {
+				// TODO Auto-generated catch block
+				e.printStackTrace();
+				this.failed = true;
+			}
+		}
+		if (this.sequencerOutputDirectory != null) {
+			this.deleteSequencerOutputDirectory(this.sequencerOutputDirectory);
+		}
+		if (this.completionCallback != null) {
+			this.completionCallback.completed(!this.failed);
+		}
+	}
+
+	private Aggregator getAggregator(File splitFile,
+			File aggregatedOutputDirectory) {
+		Aggregator aggregator = new Aggregator(splitFile, new File(
+				aggregatedOutputDirectory.getAbsolutePath() + "/"
+						+ splitFile.getName()), this.delimiter,
+				this.startSortAtColumn, this.additionalCounts);
+		aggregator.setMaxMemory(this.aggregatorMemory);
+		aggregator.setVocabulary(this.vocabulary);
+		return aggregator;
+	}
 
-		// delete sequencerOutputDirectory
+	private void deleteSequencerOutputDirectory(File sequencerOutputDirectory) {
 		if (this.deleteTempFiles) {
 			try {
 				FileUtils.deleteDirectory(sequencerOutputDirectory);
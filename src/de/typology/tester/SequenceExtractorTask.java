@@ -1,22 +1,26 @@
 package de.typology.tester;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashSet;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import de.typology.indexes.Vocabulary;
+import de.typology.utils.CountRecordReader;
+import de.typology.utils.CountRecordWriter;
+
 /**
- * This class takes an ArrayList of sequences and a directory of Files as an
- * input and writes all occurrences of the sequences into new files in the
- * outputDirectory
+ * This class takes the test sequences and a directory of Files as an input and
+ * writes all occurrences of the NGrams of the test sequences that are needed
+ * for pattern into new files in the outputDirectory
+ * <p>
+ * Every needed NGram is routed to the file of the partition of its first word
+ * (see TestSequences). Only these files are read and they are merge joined
+ * with the sorted needed NGrams, so reading stops after the last needed NGram
+ * of a file.
  * 
  * @author Martin Koerner
  * 
@@ -25,16 +29,23 @@ public class SequenceExtractorTask implements Runnable {
 
 	Logger logger = LogManager.getLogger(this.getClass().getName());
 
-	private ArrayList<String> originalSequences;
+	private TestSequences testSequences;
 	private boolean[] pattern;
 	private File inputDirectory;
 	private File outputDirectory;
 	private String delimiter;
-
-	public SequenceExtractorTask(ArrayList<String> originalSequences,
+	// the vocabulary of binary count files, null for text
+	private Vocabulary vocabulary;
+
+	/**
+	 * @param testSequences
+	 *            : has to use the index that partitioned the files of
+	 *            inputDirectory
+	 */
+	public SequenceExtractorTask(TestSequences testSequences,
 			boolean[] pattern, File inputDirectory, File outputDirectory,
 			String delimiter) {
-		this.originalSequences = originalSequences;
+		this.testSequences = testSequences;
 		this.pattern = pattern;
 
 		this.inputDirectory = inputDirectory;
@@ -52,9 +63,19 @@ public class SequenceExtractorTask implements Runnable {
 
 	}
 
+	/**
+	 * @param vocabulary
+	 *            : the vocabulary of the input files if they are binary, the
+	 *            output files are written with it as well (see
+	 *            CountRecordWriter)
+	 */
+	public void setVocabulary(Vocabulary vocabulary) {
+		this.vocabulary = vocabulary;
+	}
+
 	@Override
 	public void run() {
-		HashSet<String> newSequences = this.getNewSequences();
+		TestNGramSet nGramSet = this.testSequences.getNGramSet(this.pattern);
 
 		for (File inputFile : this.inputDirectory.listFiles()) {
 			File outputFile = new File(this.outputDirectory.getAbsolutePath()
@@ -67,22 +88,18 @@ public class SequenceExtractorTask implements Runnable {
 					e.printStackTrace();
 				}
 			} else {
+				String partition = inputFile.getName();
+				// no needed NGram in this partition
+				if (nGramSet.size(partition) == 0) {
+					continue;
+				}
 				try {
-					BufferedReader inputFileReader = new BufferedReader(
-							new FileReader(inputFile));
-					BufferedWriter outputFileWriter = new BufferedWriter(
-							new FileWriter(outputFile));
-					String line;
-
-					while ((line = inputFileReader.readLine()) != null) {
-						if (newSequences
-								.contains(line.split(this.delimiter)[0])) {
-
-							outputFileWriter.write(line + "\n");
-						}
+					if (!this.mergeJoin(inputFile, outputFile, nGramSet,
+							partition)) {
+						this.logger.debug(inputFile + " is not sorted, scan it");
+						this.scan(inputFile, outputFile,
+								nGramSet.getSequences(partition));
 					}
-					inputFileReader.close();
-					outputFileWriter.close();
 				} catch (IOException e) {
 					// TODO Auto-generated catch block
 					e.printStackTrace();
@@ -93,53 +110,69 @@ public class SequenceExtractorTask implements Runnable {
 
 	}
 
-	private HashSet<String> getNewSequences() {
-		HashSet<String> newSequences = new HashSet<String>();
-
-		for (String originalLine : this.originalSequences) {
-			// modify sequences for continuation
-			if (!this.pattern[0] || !this.pattern[this.pattern.length - 1]) {
-				for (boolean element : this.pattern) {
-					if (element) {
-						break;
-					} else {
-						originalLine = "<dummy> " + originalLine;
-					}
-				}
-				for (int i = this.pattern.length - 1; i >= 0; i--) {
-					if (this.pattern[i]) {
-						break;
-					} else {
-						originalLine = originalLine + " <dummy>";
-					}
-				}
+	/**
+	 * writes all records of inputFile whose sequence is in newSequences
+	 */
+	private void scan(File inputFile, File outputFile,
+			HashSet<String> newSequences) throws IOException {
+		CountRecordReader inputFileReader = CountRecordReader.open(inputFile,
+				this.delimiter, this.vocabulary);
+		CountRecordWriter outputFileWriter = CountRecordWriter.open(
+				outputFile, this.delimiter, this.vocabulary);
+		while (inputFileReader.next()) {
+			if (newSequences.contains(inputFileReader.getSequence())) {
+				this.write(outputFileWriter, inputFileReader);
 			}
-			String[] originalLineSplit = originalLine.split("\\s");
-			int linePointer = 0;
-			while (originalLineSplit.length - linePointer >= this.pattern.length) {
-
-				// build current Sequence
-				String currentSequence = "";
-				for (int i = 0; i < this.pattern.length; i++) {
-					currentSequence += originalLineSplit[linePointer + i] + " ";
-				}
-				currentSequence = currentSequence.replaceFirst(" $", "");
-
-				String[] currentSequenceSplit = currentSequence.split("\\s");
-				String newSequence = "";
-				for (int i = 0; i < this.pattern.length; i++) {
-					if (this.pattern[i]) {
-						newSequence += currentSequenceSplit[i] + " ";
-					}
-				}
-				newSequence = newSequence.replaceFirst(" $", "");
-				if (newSequence.length() > 0) {
-					newSequences.add(newSequence);
-				}
+		}
+		inputFileReader.close();
+		outputFileWriter.close();
+	}
 
-				linePointer++;
+	/**
+	 * writes all records of the sorted inputFile whose sequence is one of the
+	 * NGrams of partition
+	 * 
+	 * @return false if inputFile is not sorted. outputFile is incomplete in
+	 *         that case
+	 */
+	private boolean mergeJoin(File inputFile, File outputFile,
+			TestNGramSet nGramSet, String partition) throws IOException {
+		CountRecordReader inputFileReader = CountRecordReader.open(inputFile,
+				this.delimiter, this.vocabulary);
+		CountRecordWriter outputFileWriter = CountRecordWriter.open(
+				outputFile, this.delimiter, this.vocabulary);
+		boolean sorted = true;
+		int nGramCount = nGramSet.size(partition);
+		int nGramPointer = 0;
+		String nGramSequence = nGramSet.getSequence(partition, 0);
+		String previousSequence = null;
+		while (nGramPointer < nGramCount && inputFileReader.next()) {
+			String sequence = inputFileReader.getSequence();
+			if (previousSequence != null
+					&& sequence.compareTo(previousSequence) < 0) {
+				sorted = false;
+				break;
 			}
+			previousSequence = sequence;
+			while (nGramSequence.compareTo(sequence) < 0
+					&& ++nGramPointer < nGramCount) {
+				nGramSequence = nGramSet.getSequence(partition, nGramPointer);
+			}
+			if (nGramPointer < nGramCount && nGramSequence.equals(sequence)) {
+				this.write(outputFileWriter, inputFileReader);
+			}
+		}
+		inputFileReader.close();
+		outputFileWriter.close();
+		return sorted;
+	}
+
+	private void write(CountRecordWriter outputFileWriter,
+			CountRecordReader inputFileReader) throws IOException {
+		long[] counts = new long[inputFileReader.getCountColumns()];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = inputFileReader.getCount(i);
 		}
-		return newSequences;
+		outputFileWriter.write(inputFileReader.getSequence(), counts);
 	}
 }
@@ -0,0 +1,102 @@
+package de.typology.tester;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map.Entry;
+
+/**
+ * An immutable set of the NGrams that are needed from the files of a pattern
+ * (see TestSequences.getNGramSet). The NGrams of every partition are stored as
+ * one array of word ids and are sorted like their sequences in the aggregated
+ * files, so they can be merge joined with these files.
+ *
+ * @author Martin Koerner
+ *
+ */
+public class TestNGramSet {
+	private TestSequences testSequences;
+	// number of words of every NGram
+	private int length;
+	// the sorted and distinct NGrams of every partition, length ids each
+	private HashMap<String, int[]> partitionIds;
+
+	TestNGramSet(TestSequences testSequences, int length,
+			HashMap<String, ArrayList<int[]>> partitionNGrams) {
+		this.testSequences = testSequences;
+		this.length = length;
+		this.partitionIds = new HashMap<String, int[]>();
+		for (Entry<String, ArrayList<int[]>> entry : partitionNGrams
+				.entrySet()) {
+			ArrayList<int[]> nGrams = entry.getValue();
+			final String[] sequences = new String[nGrams.size()];
+			Integer[] order = new Integer[nGrams.size()];
+			for (int i = 0; i < sequences.length; i++) {
+				sequences[i] = this.getSequence(nGrams.get(i), 0);
+				order[i] = i;
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer i1, Integer i2) {
+					return sequences[i1].compareTo(sequences[i2]);
+				}
+			});
+			int[] ids = new int[sequences.length * length];
+			int distinctCount = 0;
+			for (int i = 0; i < order.length; i++) {
+				if (i > 0 && sequences[order[i]].equals(sequences[order[i - 1]])) {
+					continue;
+				}
+				System.arraycopy(nGrams.get(order[i]), 0, ids, distinctCount
+						* length, length);
+				distinctCount++;
+			}
+			this.partitionIds.put(entry.getKey(),
+					Arrays.copyOf(ids, distinctCount * length));
+		}
+	}
+
+	/**
+	 * @return the number of NGrams in partition
+	 */
+	public int size(String partition) {
+		int[] ids = this.partitionIds.get(partition);
+		if (ids == null) {
+			return 0;
+		}
+		return ids.length / this.length;
+	}
+
+	/**
+	 * returns the sequence of the NGram at index of the sorted NGrams in
+	 * partition
+	 */
+	public String getSequence(String partition, int index) {
+		return this.getSequence(this.partitionIds.get(partition), index
+				* this.length);
+	}
+
+	/**
+	 * returns the sequences of all NGrams in partition
+	 */
+	public HashSet<String> getSequences(String partition) {
+		HashSet<String> sequences = new HashSet<String>();
+		for (int i = 0; i < this.size(partition); i++) {
+			sequences.add(this.getSequence(partition, i));
+		}
+		return sequences;
+	}
+
+	private String getSequence(int[] ids, int offset) {
+		StringBuilder sequence = new StringBuilder();
+		for (int i = 0; i < this.length; i++) {
+			if (i > 0) {
+				sequence.append(' ');
+			}
+			sequence.append(this.testSequences.getWord(ids[offset + i]));
+		}
+		return sequence.toString();
+	}
+}
@@ -1,14 +1,12 @@
 package de.typology.tester;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
+import de.typology.indexes.Vocabulary;
 import de.typology.indexes.WordIndex;
 import de.typology.patterns.PatternBuilder;
 import de.typology.patterns.PatternTransformer;
@@ -28,6 +26,9 @@ public class TestSequenceExtractor {
 
 	private String delimiter;
 	private WordIndex wordIndex;
+	private Vocabulary vocabulary;
+	// read once for both extract methods
+	private TestSequences testSequences;
 
 	public TestSequenceExtractor(File testSequenceFile, File absoluteDirectory,
 			File continuationDirectory, File outputDirectory, String delimiter,
@@ -41,22 +42,26 @@ public class TestSequenceExtractor {
 
 	}
 
-	public void extractSequences(int maxModelLength, int cores) {
+	/**
+	 * @param vocabulary
+	 *            : the vocabulary of the binary count files (see
+	 *            SequenceExtractorTask.setVocabulary)
+	 */
+	public void setVocabulary(Vocabulary vocabulary) {
+		this.vocabulary = vocabulary;
+	}
 
-		// read test sequences into HashSet
-		ArrayList<String> sequences = new ArrayList<String>();
-		try {
-			BufferedReader testSequenceReader = new BufferedReader(
-					new FileReader(this.testSequenceFile));
-			String line;
-			while ((line = testSequenceReader.readLine()) != null) {
-				sequences.add(line);
-			}
-			testSequenceReader.close();
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+	private TestSequences getTestSequences() {
+		if (this.testSequences == null) {
+			this.testSequences = new TestSequences(this.testSequenceFile,
+					this.wordIndex);
 		}
+		return this.testSequences;
+	}
+
+	public void extractSequences(int maxModelLength, int cores) {
+
+		TestSequences sequences = this.getTestSequences();
 
 		ArrayList<boolean[]> absolutePatterns = PatternBuilder
 				.getGLMForSmoothingPatterns(maxModelLength);
@@ -80,6 +85,7 @@ public class TestSequenceExtractor {
 			SequenceExtractorTask absoluteSET = new SequenceExtractorTask(
 					sequences, absolutePattern, absoluteInputDirectory,
 					absoluteOutputDirectory, this.delimiter);
+			absoluteSET.setVocabulary(this.vocabulary);
 			executorService.execute(absoluteSET);
 
 		}
@@ -95,20 +101,7 @@ public class TestSequenceExtractor {
 
 	public void extractContinuationSequences(int maxModelLength, int cores) {
 
-		// read test sequences into HashSet
-		ArrayList<String> sequences = new ArrayList<String>();
-		try {
-			BufferedReader testSequenceReader = new BufferedReader(
-					new FileReader(this.testSequenceFile));
-			String line;
-			while ((line = testSequenceReader.readLine()) != null) {
-				sequences.add(line);
-			}
-			testSequenceReader.close();
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
+		TestSequences sequences = this.getTestSequences();
 		// call SequenceExtractorTasks
 
 		// initialize executerService
@@ -129,6 +122,7 @@ public class TestSequenceExtractor {
 			SequenceExtractorTask continuationSET = new SequenceExtractorTask(
 					sequences, continuationPattern, continuationTypeDirectory,
 					continuationOutputDirectory, this.delimiter);
+			continuationSET.setVocabulary(this.vocabulary);
 			executorService.execute(continuationSET);
 
 		}
@@ -0,0 +1,125 @@
+package de.typology.tester;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.TreeSet;
+
+import de.typology.indexes.WordIndex;
+
+/**
+ * The test sequences of a test sequence file, read once and shared by all
+ * SequenceExtractorTasks. Every word is replaced by its id in the sorted words
+ * of the file, so the NGrams of every pattern (see getNGramSet) are derived
+ * without splitting and padding the sequences again.
+ *
+ * @author Martin Koerner
+ *
+ */
+public class TestSequences {
+	private String[] words;
+	// the partition of every word (see WordIndex.rank)
+	private String[] wordPartitions;
+	private int[][] sequences;
+
+	public TestSequences(File testSequenceFile, WordIndex wordIndex) {
+		ArrayList<String[]> sequenceWords = new ArrayList<String[]>();
+		TreeSet<String> sortedWords = new TreeSet<String>();
+		try {
+			BufferedReader testSequenceReader = new BufferedReader(
+					new FileReader(testSequenceFile));
+			String line;
+			while ((line = testSequenceReader.readLine()) != null) {
+				String[] lineSplit = line.split("\\s");
+				sequenceWords.add(lineSplit);
+				sortedWords.addAll(Arrays.asList(lineSplit));
+			}
+			testSequenceReader.close();
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+
+		this.words = sortedWords.toArray(new String[sortedWords.size()]);
+		this.wordPartitions = new String[this.words.length];
+		HashMap<String, Integer> wordIds = new HashMap<String, Integer>(
+				this.words.length * 2);
+		for (int i = 0; i < this.words.length; i++) {
+			wordIds.put(this.words[i], i);
+			this.wordPartitions[i] = String.valueOf(wordIndex
+					.rank(this.words[i]));
+		}
+		this.sequences = new int[sequenceWords.size()][];
+		for (int i = 0; i < this.sequences.length; i++) {
+			String[] lineSplit = sequenceWords.get(i);
+			this.sequences[i] = new int[lineSplit.length];
+			for (int j = 0; j < lineSplit.length; j++) {
+				this.sequences[i][j] = wordIds.get(lineSplit[j]);
+			}
+		}
+	}
+
+	public int size() {
+		return this.sequences.length;
+	}
+
+	String getWord(int wordId) {
+		return this.words[wordId];
+	}
+
+	/**
+	 * returns the distinct NGrams that are needed from the files of pattern:
+	 * the words at the positions of pattern in every window of pattern.length
+	 * words of every test sequence. If pattern does not start or end with a
+	 * word, the windows may also start or end before or after a sequence (like
+	 * padding the sequence with &lt;dummy&gt; words at these positions)
+	 *
+	 * @param pattern
+	 * @return
+	 */
+	public TestNGramSet getNGramSet(boolean[] pattern) {
+		int leadingSkips = 0;
+		while (leadingSkips < pattern.length && !pattern[leadingSkips]) {
+			leadingSkips++;
+		}
+		int trailingSkips = 0;
+		while (trailingSkips < pattern.length
+				&& !pattern[pattern.length - 1 - trailingSkips]) {
+			trailingSkips++;
+		}
+		int length = 0;
+		for (boolean position : pattern) {
+			if (position) {
+				length++;
+			}
+		}
+		HashMap<String, ArrayList<int[]>> partitionNGrams = new HashMap<String, ArrayList<int[]>>();
+		if (length == 0) {
+			return new TestNGramSet(this, length, partitionNGrams);
+		}
+		for (int[] sequence : this.sequences) {
+			for (int windowStart = -leadingSkips; sequence.length
+					+ trailingSkips - windowStart >= pattern.length; windowStart++) {
+				int[] nGram = new int[length];
+				int nGramPosition = 0;
+				for (int i = 0; i < pattern.length; i++) {
+					if (pattern[i]) {
+						nGram[nGramPosition++] = sequence[windowStart + i];
+					}
+				}
+				String partition = this.wordPartitions[nGram[0]];
+				ArrayList<int[]> nGrams = partitionNGrams.get(partition);
+				if (nGrams == null) {
+					nGrams = new ArrayList<int[]>();
+					partitionNGrams.put(partition, nGrams);
+				}
+				nGrams.add(nGram);
+			}
+		}
+		return new TestNGramSet(this, length, partitionNGrams);
+	}
+}
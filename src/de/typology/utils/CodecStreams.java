@@ -0,0 +1,197 @@
+package de.typology.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+
+/**
+ * A class for opening files that may be compressed.
+ * <p>
+ * Input files are decompressed if they start with the magic bytes of gzip,
+ * bzip2 or xz, otherwise they are read as plain text. Concatenated streams
+ * are read completely, so compressed files can be appended to. Reading xz
+ * files needs the xz library (org.tukaani.xz) on the classpath.
+ * <p>
+ * Intermediate files (split files and sorted runs that are deleted after they
+ * are aggregated) are written with gzip at its fastest level if
+ * compressIntermediateFiles is set, otherwise as plain text. Count files and
+ * intermediate files are always encoded with CHARSET, independent of the
+ * platform default.
+ *
+ * @author Martin Koerner
+ *
+ */
+public class CodecStreams {
+	// the encoding of count files and intermediate files
+	public static final String CHARSET = "UTF-8";
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	// XZCompressorInputStream.matches needs the xz library, so the magic
+	// bytes of xz are checked here
+	private static final byte[] XZ_MAGIC = { (byte) 0xFD, '7', 'z', 'X', 'Z',
+			0 };
+	// enough for the longest magic bytes (xz)
+	private static final int MAGIC_LENGTH = XZ_MAGIC.length;
+
+	private static volatile boolean compressIntermediateFiles;
+
+	public static void setCompressIntermediateFiles(
+			boolean compressIntermediateFiles) {
+		CodecStreams.compressIntermediateFiles = compressIntermediateFiles;
+	}
+
+	public static boolean isCompressIntermediateFiles() {
+		return compressIntermediateFiles;
+	}
+
+	/**
+	 * @return true if file starts with the magic bytes of a supported codec.
+	 *         Compressed files can't be split into byte ranges by FileChunker
+	 * @throws IOException
+	 */
+	public static boolean isCompressed(File file) throws IOException {
+		InputStream inputStream = new FileInputStream(file);
+		try {
+			byte[] magic = new byte[MAGIC_LENGTH];
+			return getCodec(magic, readMagic(inputStream, magic)) != null;
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	/**
+	 * returns a buffered InputStream of the decompressed content of file
+	 *
+	 * @throws IOException
+	 */
+	public static InputStream openInputStream(File file) throws IOException {
+		BufferedInputStream inputStream = new BufferedInputStream(
+				new FileInputStream(file), BUFFER_SIZE);
+		byte[] magic = new byte[MAGIC_LENGTH];
+		inputStream.mark(MAGIC_LENGTH);
+		int magicLength = readMagic(inputStream, magic);
+		inputStream.reset();
+		String codec = getCodec(magic, magicLength);
+		if (codec == null) {
+			return inputStream;
+		}
+		InputStream decompressedInputStream;
+		if (codec.equals("gzip")) {
+			decompressedInputStream = new GzipCompressorInputStream(
+					inputStream, true);
+		} else if (codec.equals("bzip2")) {
+			decompressedInputStream = new BZip2CompressorInputStream(
+					inputStream, true);
+		} else {
+			decompressedInputStream = new XZCompressorInputStream(inputStream,
+					true);
+		}
+		return new BufferedInputStream(decompressedInputStream, BUFFER_SIZE);
+	}
+
+	public static BufferedReader openReader(File file) throws IOException {
+		return new BufferedReader(new InputStreamReader(openInputStream(file)));
+	}
+
+	/**
+	 * like openReader for count files and intermediate files, which are
+	 * encoded with CHARSET
+	 *
+	 * @throws IOException
+	 */
+	public static BufferedReader openIntermediateReader(File file)
+			throws IOException {
+		return new BufferedReader(new InputStreamReader(openInputStream(file),
+				CHARSET));
+	}
+
+	/**
+	 * opens an intermediate file for writing, compressed if
+	 * compressIntermediateFiles is set
+	 *
+	 * @param file
+	 * @param append
+	 *            : if true, the written content is appended to file. A
+	 *            compressed file gets another gzip member in that case
+	 * @throws IOException
+	 */
+	public static Writer openIntermediateWriter(File file, boolean append)
+			throws IOException {
+		return new OutputStreamWriter(openIntermediateOutputStream(file,
+				append), CHARSET);
+	}
+
+	/**
+	 * like openIntermediateWriter, but returns a buffered OutputStream for
+	 * binary content
+	 *
+	 * @throws IOException
+	 */
+	public static OutputStream openIntermediateOutputStream(File file,
+			boolean append) throws IOException {
+		OutputStream outputStream = new FileOutputStream(file, append);
+		if (compressIntermediateFiles) {
+			outputStream = new GZIPOutputStream(new BufferedOutputStream(
+					outputStream, BUFFER_SIZE), BUFFER_SIZE) {
+				{
+					this.def.setLevel(Deflater.BEST_SPEED);
+				}
+			};
+		}
+		return new BufferedOutputStream(outputStream, BUFFER_SIZE);
+	}
+
+	public static BufferedWriter openIntermediateBufferedWriter(File file)
+			throws IOException {
+		return new BufferedWriter(openIntermediateWriter(file, false));
+	}
+
+	private static int readMagic(InputStream inputStream, byte[] magic)
+			throws IOException {
+		int length = 0;
+		int read;
+		while (length < magic.length
+				&& (read = inputStream.read(magic, length, magic.length
+						- length)) != -1) {
+			length += read;
+		}
+		return length;
+	}
+
+	/**
+	 * @return "gzip", "bzip2", "xz" or null for plain files
+	 */
+	private static String getCodec(byte[] magic, int length) {
+		if (GzipCompressorInputStream.matches(magic, length)) {
+			return "gzip";
+		}
+		if (BZip2CompressorInputStream.matches(magic, length)) {
+			return "bzip2";
+		}
+		if (length < XZ_MAGIC.length) {
+			return null;
+		}
+		for (int i = 0; i < XZ_MAGIC.length; i++) {
+			if (magic[i] != XZ_MAGIC[i]) {
+				return null;
+			}
+		}
+		return "xz";
+	}
+}
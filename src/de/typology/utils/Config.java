@@ -36,12 +36,21 @@ public class Config extends Properties {
 
 	public boolean conditionalProbabilityOnly;
 	public boolean backoffAbsolute;
+	// score the test sequences on numberOfCores threads
+	public boolean parallelSmoothing;
 
 	public boolean kneserNeySimple;
 	public boolean kneserNeyComplex;
 
 	public boolean deleteTempFiles;
 
+	public boolean singlePassSequencing;
+	public boolean singlePassContinuation;
+	// write split files and sorted runs compressed
+	public boolean compressIntermediateFiles;
+	// write count files as binary records of word ids (see CountRecordWriter)
+	public boolean binaryCountFiles;
+
 	public boolean addSentenceTags;
 	public boolean addFakeStartTag;
 
@@ -53,6 +62,7 @@ public class Config extends Properties {
 
 	public String outputDirectory;
 	public int maxCountDivider;
+	public boolean balancedIndex;
 	public int modelLength;
 
 	public int numberOfQueries;
@@ -65,6 +75,31 @@ public class Config extends Properties {
 	public int splitTestRatio; // \in [0, 100] 0 means all data is stored in
 	// test file. 100 means all data is stored in (smaller) learning file
 
+	// only every indexSampleStride-th line is used for estimating the
+	// sequence counts of a balanced index
+	public int indexSampleStride;
+
+	// number of distinct sequences which are counted in memory before they are
+	// written to the split files. 0 means no in-memory counting
+	public int combinerCapacity;
+
+	// memory in MB that is shared by the buffers of all split files. 0 means
+	// that every split file has its own buffer and stays open
+	public int writerBufferMemory;
+	// maximum number of split files that are open at the same time if
+	// writerBufferMemory is used
+	public int maxOpenFiles;
+
+	// memory in MB that each aggregation of a split file may use before it
+	// sorts externally. 0 means that every split file is aggregated in memory
+	public int aggregatorMemory;
+
+	// split the data set in parallel chunks with random generators seeded by
+	// splitSeed, so that the split can be reproduced. The query samples are
+	// always drawn with a generator seeded by splitSeed
+	public boolean parallelSplit;
+	public long splitSeed;
+
 	private static final long serialVersionUID = -4439565094382127683L;
 
 	static Config instance = null;
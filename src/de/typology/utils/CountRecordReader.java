@@ -0,0 +1,186 @@
+package de.typology.utils;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import de.typology.indexes.Vocabulary;
+
+/**
+ * A class for reading the records of count files written by CountRecordWriter
+ * or of delimited text files. The format is detected by the header of the
+ * file, binary files are decoded with the vocabulary they were written with.
+ * Files may be compressed (see CodecStreams).
+ * <p>
+ * A text line is split at the delimiter: the first column is the sequence and
+ * the remaining columns are the counts.
+ *
+ * @author Martin Koerner
+ *
+ */
+public class CountRecordReader {
+	private InputStream inputStream;
+	// null for the binary format
+	private BufferedReader textReader;
+	private String delimiter;
+	private Vocabulary vocabulary;
+
+	private String sequence;
+	private long[] counts = new long[4];
+	private int countColumns;
+	private StringBuilder sequenceBuilder = new StringBuilder();
+
+	/**
+	 * @param vocabulary
+	 *            : the vocabulary the file was written with if it is binary,
+	 *            text files are read without it
+	 * @throws IOException
+	 * @throws IllegalStateException
+	 *             if file is binary and vocabulary is null
+	 */
+	public static CountRecordReader open(File file, String delimiter,
+			Vocabulary vocabulary) throws IOException {
+		return new CountRecordReader(file, delimiter, vocabulary);
+	}
+
+	private CountRecordReader(File file, String delimiter,
+			Vocabulary vocabulary) throws IOException {
+		this.delimiter = delimiter;
+		this.inputStream = CodecStreams.openInputStream(file);
+		byte[] magic = new byte[CountRecordWriter.MAGIC.length];
+		this.inputStream.mark(magic.length);
+		int magicLength = 0;
+		int read;
+		while (magicLength < magic.length
+				&& (read = this.inputStream.read(magic, magicLength,
+						magic.length - magicLength)) != -1) {
+			magicLength += read;
+		}
+		boolean binary = magicLength == magic.length;
+		for (int i = 0; binary && i < magic.length; i++) {
+			binary = magic[i] == CountRecordWriter.MAGIC[i];
+		}
+		if (binary) {
+			this.vocabulary = vocabulary;
+			if (this.vocabulary == null) {
+				this.inputStream.close();
+				throw new IllegalStateException(
+						"no vocabulary for reading binary count file: "
+								+ file.getAbsolutePath());
+			}
+		} else {
+			this.inputStream.reset();
+			this.textReader = new BufferedReader(new InputStreamReader(
+					this.inputStream, CodecStreams.CHARSET));
+		}
+	}
+
+	/**
+	 * reads the next record
+	 *
+	 * @return false at the end of the file
+	 * @throws IOException
+	 */
+	public boolean next() throws IOException {
+		if (this.textReader != null) {
+			String line = this.textReader.readLine();
+			if (line == null) {
+				return false;
+			}
+			String[] lineSplit = line.split(this.delimiter);
+			this.sequence = lineSplit[0];
+			this.setCountColumns(lineSplit.length - 1);
+			for (int i = 0; i < this.countColumns; i++) {
+				this.counts[i] = Long.parseLong(lineSplit[i + 1]);
+			}
+			return true;
+		}
+		int firstByte = this.inputStream.read();
+		if (firstByte == -1) {
+			return false;
+		}
+		int wordCount = (int) this.readVarint(firstByte);
+		this.sequenceBuilder.setLength(0);
+		for (int i = 0; i < wordCount; i++) {
+			if (i > 0) {
+				this.sequenceBuilder.append(' ');
+			}
+			long wordId = this.readVarint(this.inputStream.read());
+			if (wordId > 0) {
+				this.sequenceBuilder.append(this.vocabulary
+						.getWord((int) (wordId - 1)));
+			} else {
+				byte[] wordBytes = new byte[(int) this.readVarint(this.inputStream
+						.read())];
+				int length = 0;
+				while (length < wordBytes.length) {
+					int read = this.inputStream.read(wordBytes, length,
+							wordBytes.length - length);
+					if (read == -1) {
+						throw new EOFException();
+					}
+					length += read;
+				}
+				this.sequenceBuilder.append(new String(wordBytes,
+						CodecStreams.CHARSET));
+			}
+		}
+		this.sequence = this.sequenceBuilder.toString();
+		this.setCountColumns((int) this.readVarint(this.inputStream.read()));
+		for (int i = 0; i < this.countColumns; i++) {
+			this.counts[i] = this.readVarint(this.inputStream.read());
+		}
+		return true;
+	}
+
+	private void setCountColumns(int countColumns) {
+		this.countColumns = countColumns;
+		if (this.counts.length < countColumns) {
+			this.counts = new long[countColumns];
+		}
+	}
+
+	/**
+	 * @param firstByte
+	 *            : the first byte of the varint that is already read
+	 */
+	private long readVarint(int firstByte) throws IOException {
+		long value = 0;
+		int shift = 0;
+		int currentByte = firstByte;
+		while (true) {
+			if (currentByte == -1) {
+				throw new EOFException();
+			}
+			value |= (long) (currentByte & 0x7F) << shift;
+			if ((currentByte & 0x80) == 0) {
+				return value;
+			}
+			shift += 7;
+			currentByte = this.inputStream.read();
+		}
+	}
+
+	public String getSequence() {
+		return this.sequence;
+	}
+
+	public int getCountColumns() {
+		return this.countColumns;
+	}
+
+	/**
+	 * @param column
+	 *            : First count column is zero
+	 */
+	public long getCount(int column) {
+		return this.counts[column];
+	}
+
+	public void close() throws IOException {
+		this.inputStream.close();
+	}
+}
@@ -0,0 +1,149 @@
+package de.typology.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import de.typology.indexes.Vocabulary;
+
+/**
+ * A class for writing count files: lines of a sequence followed by its count
+ * columns.
+ * <p>
+ * If a vocabulary is given, the records are written in a binary format instead
+ * of delimited text: after the header (see MAGIC) every record consists of the
+ * number of words, the words, the number of count columns and the counts, all
+ * of them as unsigned varints. A word is written as its id in the vocabulary
+ * plus one, or as zero followed by the length and the UTF-8 bytes of the word
+ * if it is not part of the vocabulary. CountRecordReader reads both formats.
+ * Without a vocabulary the text format is written, which stays the format for
+ * exporting counts. Text records are encoded with CodecStreams.CHARSET (UTF-8)
+ * as well.
+ *
+ * @author Martin Koerner
+ *
+ */
+public class CountRecordWriter {
+	// starts with a byte that is not part of any text count file
+	static final byte[] MAGIC = { 0, 'G', 'L', 'M', 1 };
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private OutputStream outputStream;
+	private String delimiter;
+	// null for the text format
+	private Vocabulary recordVocabulary;
+	// encodes the text format
+	private StringBuilder line;
+
+	/**
+	 * opens a count file that is kept after building the language model
+	 *
+	 * @param vocabulary
+	 *            : the file is written in the binary format if it is not null
+	 * @throws IOException
+	 */
+	public static CountRecordWriter open(File file, String delimiter,
+			Vocabulary vocabulary) throws IOException {
+		return new CountRecordWriter(new BufferedOutputStream(
+				new FileOutputStream(file), BUFFER_SIZE), delimiter, vocabulary);
+	}
+
+	/**
+	 * opens an intermediate count file, compressed if
+	 * CodecStreams.isCompressIntermediateFiles is set
+	 *
+	 * @param vocabulary
+	 *            : the file is written in the binary format if it is not null
+	 * @throws IOException
+	 */
+	public static CountRecordWriter openIntermediate(File file,
+			String delimiter, Vocabulary vocabulary) throws IOException {
+		return new CountRecordWriter(CodecStreams.openIntermediateOutputStream(
+				file, false), delimiter, vocabulary);
+	}
+
+	private CountRecordWriter(OutputStream outputStream, String delimiter,
+			Vocabulary vocabulary) throws IOException {
+		this.outputStream = outputStream;
+		this.delimiter = delimiter;
+		this.recordVocabulary = vocabulary;
+		if (this.recordVocabulary == null) {
+			this.line = new StringBuilder();
+		} else {
+			this.outputStream.write(MAGIC);
+		}
+	}
+
+	public void write(String sequence, long count) throws IOException {
+		this.write(sequence, new long[] { count }, 1);
+	}
+
+	public void write(String sequence, long[] counts) throws IOException {
+		this.write(sequence, counts, counts.length);
+	}
+
+	/**
+	 * writes sequence and the first countColumns values of counts
+	 *
+	 * @throws IOException
+	 */
+	public void write(String sequence, long[] counts, int countColumns)
+			throws IOException {
+		if (this.recordVocabulary == null) {
+			this.line.setLength(0);
+			this.line.append(sequence);
+			for (int i = 0; i < countColumns; i++) {
+				this.line.append(this.delimiter).append(counts[i]);
+			}
+			this.line.append('\n');
+			this.outputStream.write(this.line.toString().getBytes(
+					CodecStreams.CHARSET));
+			return;
+		}
+		// the words are separated by single spaces, like Sequencer writes
+		// them
+		int wordCount = 1;
+		for (int i = 0; i < sequence.length(); i++) {
+			if (sequence.charAt(i) == ' ') {
+				wordCount++;
+			}
+		}
+		this.writeVarint(wordCount);
+		int wordStart = 0;
+		for (int i = 0; i < wordCount; i++) {
+			int wordEnd = sequence.indexOf(' ', wordStart);
+			if (wordEnd == -1) {
+				wordEnd = sequence.length();
+			}
+			String word = sequence.substring(wordStart, wordEnd);
+			int wordId = this.recordVocabulary.getId(word);
+			if (wordId >= 0) {
+				this.writeVarint(wordId + 1L);
+			} else {
+				byte[] wordBytes = word.getBytes(CodecStreams.CHARSET);
+				this.writeVarint(0L);
+				this.writeVarint(wordBytes.length);
+				this.outputStream.write(wordBytes);
+			}
+			wordStart = wordEnd + 1;
+		}
+		this.writeVarint(countColumns);
+		for (int i = 0; i < countColumns; i++) {
+			this.writeVarint(counts[i]);
+		}
+	}
+
+	private void writeVarint(long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			this.outputStream.write((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		this.outputStream.write((int) value);
+	}
+
+	public void close() throws IOException {
+		this.outputStream.close();
+	}
+}
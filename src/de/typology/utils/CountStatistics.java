@@ -0,0 +1,134 @@
+package de.typology.utils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * Statistics about the counts of a pattern that are collected while the counts
+ * are written, so that smoothing methods don't have to read all counts again:
+ * the count of counts n1 to n4, the total count and the number of distinct
+ * sequences (both without sequences starting with &lt;fs&gt;, like
+ * Counter.countCounts) and the number of lines.
+ * <p>
+ * The statistics of the pattern directory outputDirectory/patternLabel are
+ * stored in outputDirectory-stats/patternLabel.
+ *
+ * @author Martin Koerner
+ *
+ */
+public class CountStatistics {
+	private long[] countOfCounts;
+	private long totalCount;
+	private long distinctCount;
+	private long lineCount;
+
+	public CountStatistics() {
+		this.countOfCounts = new long[4];
+	}
+
+	/**
+	 * adds a line of a count file
+	 *
+	 * @param sequence
+	 * @param count
+	 *            : the first count of the line
+	 */
+	public void add(String sequence, long count) {
+		this.lineCount++;
+		if (sequence.startsWith("<fs>")) {
+			return;
+		}
+		this.distinctCount++;
+		this.totalCount += count;
+		if (count >= 1 && count <= this.countOfCounts.length) {
+			this.countOfCounts[(int) count - 1]++;
+		}
+	}
+
+	public synchronized void add(CountStatistics countStatistics) {
+		for (int i = 0; i < this.countOfCounts.length; i++) {
+			this.countOfCounts[i] += countStatistics.countOfCounts[i];
+		}
+		this.totalCount += countStatistics.totalCount;
+		this.distinctCount += countStatistics.distinctCount;
+		this.lineCount += countStatistics.lineCount;
+	}
+
+	/**
+	 * @param count
+	 *            : 1 to 4
+	 * @return number of sequences that occur exactly count times
+	 */
+	public long getCountOfCounts(int count) {
+		return this.countOfCounts[count - 1];
+	}
+
+	public long getTotalCount() {
+		return this.totalCount;
+	}
+
+	public long getDistinctCount() {
+		return this.distinctCount;
+	}
+
+	public long getLineCount() {
+		return this.lineCount;
+	}
+
+	public static File getStatisticsFile(File outputDirectory,
+			String patternLabel) {
+		return new File(outputDirectory.getAbsolutePath() + "-stats/"
+				+ patternLabel);
+	}
+
+	public void write(File file) throws IOException {
+		file.getParentFile().mkdirs();
+		BufferedWriter bw = new BufferedWriter(new FileWriter(file));
+		for (int i = 0; i < this.countOfCounts.length; i++) {
+			bw.write("n" + (i + 1) + "\t" + this.countOfCounts[i] + "\n");
+		}
+		bw.write("total\t" + this.totalCount + "\n");
+		bw.write("distinct\t" + this.distinctCount + "\n");
+		bw.write("lines\t" + this.lineCount + "\n");
+		bw.close();
+	}
+
+	/**
+	 * @param file
+	 * @return null if file does not exist
+	 */
+	public static CountStatistics read(File file) {
+		if (!file.exists()) {
+			return null;
+		}
+		CountStatistics countStatistics = new CountStatistics();
+		try {
+			BufferedReader br = new BufferedReader(new FileReader(file));
+			String line;
+			while ((line = br.readLine()) != null) {
+				String[] lineSplit = line.split("\t");
+				long value = Long.parseLong(lineSplit[1]);
+				if (lineSplit[0].equals("total")) {
+					countStatistics.totalCount = value;
+				} else if (lineSplit[0].equals("distinct")) {
+					countStatistics.distinctCount = value;
+				} else if (lineSplit[0].equals("lines")) {
+					countStatistics.lineCount = value;
+				} else {
+					countStatistics.countOfCounts[Integer.parseInt(lineSplit[0]
+							.substring(1)) - 1] = value;
+				}
+			}
+			br.close();
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+			return null;
+		}
+		return countStatistics;
+	}
+}
@@ -1,14 +1,14 @@
 package de.typology.utils;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 
+import de.typology.indexes.Vocabulary;
+
 public class Counter {
 
 	public static long countLinesInDirectory(File directory) {
@@ -57,14 +57,15 @@ public class Counter {
 	private static long currentCountForDirectory;
 
 	public static long countColumnCountsInDirectory(int columnNumberStartZero,
-			File directory) {
+			File directory, Vocabulary vocabulary) {
 		if (columnNumberStartZero == Counter.columnNumberStartZero
 				&& directory.equals(Counter.directory)) {
 			return Counter.currentCountForDirectory;
 		} else {
 			long totalCount = 0;
 			for (File file : directory.listFiles()) {
-				totalCount += countColumnCounts(columnNumberStartZero, file);
+				totalCount += countColumnCounts(columnNumberStartZero, file,
+						vocabulary);
 			}
 			Counter.columnNumberStartZero = columnNumberStartZero;
 			Counter.currentCountForDirectory = totalCount;
@@ -73,20 +74,18 @@ public class Counter {
 		}
 	}
 
-	public static long countColumnCounts(int columnNumberStartZero, File file) {
+	public static long countColumnCounts(int columnNumberStartZero, File file,
+			Vocabulary vocabulary) {
 		long totalCount = 0;
 		try {
-			BufferedReader br = new BufferedReader(new FileReader(file));
+			CountRecordReader reader = CountRecordReader.open(file, "\t",
+					vocabulary);
 			try {
-				String line;
-				String[] lineSplit;
-				while ((line = br.readLine()) != null) {
-					lineSplit = line.split("\t");
-					totalCount += Long
-							.parseLong(lineSplit[columnNumberStartZero]);
+				while (reader.next()) {
+					totalCount += getColumn(reader, columnNumberStartZero);
 				}
 			} finally {
-				br.close();
+				reader.close();
 			}
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
@@ -102,10 +101,11 @@ public class Counter {
 	 * @param directory
 	 * @return
 	 */
-	public static long aggregateCountsInDirectory(File directory) {
+	public static long aggregateCountsInDirectory(File directory,
+			Vocabulary vocabulary) {
 		long totalCount = 0;
 		for (File file : directory.listFiles()) {
-			totalCount += aggregateCounts(file);
+			totalCount += aggregateCounts(file, vocabulary);
 		}
 		return totalCount;
 	}
@@ -117,24 +117,21 @@ public class Counter {
 	 * @param directoryName
 	 * @return
 	 */
-	public static long aggregateCounts(File file) {
+	public static long aggregateCounts(File file, Vocabulary vocabulary) {
 		long totalCount = 0;
 		try {
-			BufferedReader br = new BufferedReader(new FileReader(file));
+			CountRecordReader reader = CountRecordReader.open(file, "\t",
+					vocabulary);
 			try {
-				String line;
-				String[] lineSplit;
-				while ((line = br.readLine()) != null) {
+				while (reader.next()) {
 					// TODO remove this or make it pretty
-					if (line.startsWith("<fs>")) {
+					if (reader.getSequence().startsWith("<fs>")) {
 						continue;
 					}
-					lineSplit = line.split("\t");
-					totalCount += Long
-							.parseLong(lineSplit[lineSplit.length - 1]);
+					totalCount += getColumn(reader, reader.getCountColumns());
 				}
 			} finally {
-				br.close();
+				reader.close();
 			}
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
@@ -151,11 +148,12 @@ public class Counter {
 	 * @return
 	 */
 	public static long countCountsInDirectory(int count, File directory,
-			String skipSequence) {
+			String skipSequence, Vocabulary vocabulary) {
 		long totalCount = 0;
 		for (File file : directory.listFiles()) {
 			if (!file.getName().contains("-split")) {
-				totalCount += countCounts(count, file, skipSequence);
+				totalCount += countCounts(count, file, skipSequence,
+						vocabulary);
 			}
 		}
 		return totalCount;
@@ -168,32 +166,32 @@ public class Counter {
 	 * @param directoryName
 	 * @return
 	 */
-	public static long countCounts(int count, File file, String skipSequence) {
+	public static long countCounts(int count, File file, String skipSequence,
+			Vocabulary vocabulary) {
 		long totalCount = 0;
 		try {
-			BufferedReader br = new BufferedReader(new FileReader(file));
+			// FIXME: put the delimiter to a global config file or at
+			// least as a constant
+			CountRecordReader reader = CountRecordReader.open(file, "\t",
+					vocabulary);
 			try {
-				String line;
-				String[] lineSplit;
-				while ((line = br.readLine()) != null) {
-					if (line.startsWith("<fs>")) {
+				while (reader.next()) {
+					if (reader.getSequence().startsWith("<fs>")) {
 						continue;
 					}
-					// FIXME: put the delimiter to a global config file or at
-					// least as a constant
-					lineSplit = line.split("\t");
 					long currentCount;
-					if (lineSplit.length == 1) {
-						currentCount = Long.parseLong(lineSplit[0]);
+					if (reader.getCountColumns() == 0) {
+						currentCount = getColumn(reader, 0);
 					} else {
-						currentCount = Long.parseLong(lineSplit[1]);
+						currentCount = getColumn(reader, 1);
 					}
-					if (count == currentCount && !lineSplit[0].equals("<fs>")) {
+					if (count == currentCount
+							&& !reader.getSequence().equals("<fs>")) {
 						totalCount += 1;
 					}
 				}
 			} finally {
-				br.close();
+				reader.close();
 			}
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
@@ -201,4 +199,17 @@ public class Counter {
 		}
 		return totalCount;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * returns the column of the current record like it is split from a text
+	 * line: column zero is the sequence, which is a count in files that only
+	 * contain counts (e.g. "all")
+	 */
+	private static long getColumn(CountRecordReader reader,
+			int columnNumberStartZero) {
+		if (columnNumberStartZero == 0) {
+			return Long.parseLong(reader.getSequence());
+		}
+		return reader.getCount(columnNumberStartZero - 1);
+	}
+}
@@ -0,0 +1,130 @@
+package de.typology.utils;
+
+import java.util.Arrays;
+
+/**
+ * A sample of at most maxSize distinct long fingerprints, e.g. of sequences,
+ * that uses a fixed amount of memory. A fingerprint is kept if its lowest
+ * level bits are zero. If more than maxSize fingerprints are kept, level is
+ * increased and about half of them are dropped. So every distinct fingerprint
+ * is kept with the probability 2^-level and every kept fingerprint stands for
+ * 2^level distinct fingerprints.
+ * <p>
+ * Every fingerprint carries an int label, e.g. the position of the first word
+ * of its sequence, so that the distinct fingerprints with certain labels can
+ * be estimated as well. The fingerprints have to be well mixed.
+ *
+ * @author Martin Koerner
+ *
+ */
+public class DistinctSample {
+	private static final long EMPTY = 0L;
+
+	private long[] fingerprints;
+	private int[] labels;
+	private int size;
+	private int maxSize;
+	private int mask;
+	private int level;
+
+	public DistinctSample(int maxSize) {
+		this.maxSize = Math.max(1, maxSize);
+		int capacity = 16;
+		while (capacity < this.maxSize * 2 + 2) {
+			capacity <<= 1;
+		}
+		this.fingerprints = new long[capacity];
+		this.labels = new int[capacity];
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * adds fingerprint with label if it is sampled and not contained yet. The
+	 * label of a fingerprint that is added again is not changed.
+	 *
+	 * @param fingerprint
+	 * @param label
+	 */
+	public void add(long fingerprint, int label) {
+		if (fingerprint == EMPTY) {
+			// EMPTY marks free slots, its sampling bits are zero as well
+			fingerprint = Long.MIN_VALUE;
+		}
+		if (Long.numberOfTrailingZeros(fingerprint) < this.level) {
+			return;
+		}
+		int slot = this.getSlot(fingerprint);
+		if (this.fingerprints[slot] == fingerprint) {
+			return;
+		}
+		this.fingerprints[slot] = fingerprint;
+		this.labels[slot] = label;
+		this.size++;
+		while (this.size > this.maxSize) {
+			this.increaseLevel();
+		}
+	}
+
+	/**
+	 * @return the number of kept fingerprints
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	public int getLevel() {
+		return this.level;
+	}
+
+	/**
+	 * @return the estimated number of distinct fingerprints that were added
+	 */
+	public long getEstimate() {
+		return (long) this.size << this.level;
+	}
+
+	/**
+	 * @return the labels of all kept fingerprints in ascending order. Every
+	 *         label stands for 2^level distinct fingerprints
+	 */
+	public int[] getSortedLabels() {
+		int[] sortedLabels = new int[this.size];
+		int i = 0;
+		for (int slot = 0; slot < this.fingerprints.length; slot++) {
+			if (this.fingerprints[slot] != EMPTY) {
+				sortedLabels[i++] = this.labels[slot];
+			}
+		}
+		Arrays.sort(sortedLabels);
+		return sortedLabels;
+	}
+
+	private int getSlot(long fingerprint) {
+		int slot = (int) (fingerprint ^ fingerprint >>> 32) * 0x9E3779B9
+				& this.mask;
+		while (this.fingerprints[slot] != EMPTY
+				&& this.fingerprints[slot] != fingerprint) {
+			slot = slot + 1 & this.mask;
+		}
+		return slot;
+	}
+
+	private void increaseLevel() {
+		this.level++;
+		long[] oldFingerprints = this.fingerprints;
+		int[] oldLabels = this.labels;
+		this.fingerprints = new long[oldFingerprints.length];
+		this.labels = new int[oldLabels.length];
+		this.size = 0;
+		for (int slot = 0; slot < oldFingerprints.length; slot++) {
+			long fingerprint = oldFingerprints[slot];
+			if (fingerprint != EMPTY
+					&& Long.numberOfTrailingZeros(fingerprint) >= this.level) {
+				int newSlot = this.getSlot(fingerprint);
+				this.fingerprints[newSlot] = fingerprint;
+				this.labels[newSlot] = oldLabels[slot];
+				this.size++;
+			}
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package de.typology.utils;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
+/**
+ * A class for splitting a text file into byte ranges that start and end at
+ * line boundaries. The ranges can be read independently, e.g. by different
+ * threads. Compressed files (see CodecStreams) can't be split and are read as
+ * a single chunk.
+ * 
+ * @author Martin Koerner
+ * 
+ */
+public class FileChunker {
+
+	/**
+	 * returns the start offsets of the chunks followed by the file length. All
+	 * chunks except the first one start directly after a '\n'.
+	 * 
+	 * @param file
+	 * @param numberOfChunks
+	 * @return
+	 * @throws IOException
+	 */
+	public static long[] getChunkBoundaries(File file, int numberOfChunks)
+			throws IOException {
+		long fileLength = file.length();
+		if (CodecStreams.isCompressed(file)) {
+			return new long[] { 0L, fileLength };
+		}
+		ArrayList<Long> boundaries = new ArrayList<Long>();
+		boundaries.add(0L);
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			for (int i = 1; i < numberOfChunks; i++) {
+				long boundary = Math.max(fileLength * i / numberOfChunks,
+						boundaries.get(boundaries.size() - 1));
+				randomAccessFile.seek(boundary);
+				// move boundary behind the next line break
+				int currentByte;
+				while ((currentByte = randomAccessFile.read()) != -1) {
+					boundary++;
+					if (currentByte == '\n') {
+						break;
+					}
+				}
+				if (currentByte == -1) {
+					break;
+				}
+				if (boundary > boundaries.get(boundaries.size() - 1)) {
+					boundaries.add(boundary);
+				}
+			}
+		} finally {
+			randomAccessFile.close();
+		}
+		if (boundaries.get(boundaries.size() - 1) < fileLength
+				|| boundaries.size() == 1) {
+			boundaries.add(fileLength);
+		}
+		long[] result = new long[boundaries.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = boundaries.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * returns an InputStream that reads the bytes from start (inclusive) to end
+	 * (exclusive) of file. The chunk of a compressed file is decompressed
+	 * 
+	 * @param file
+	 * @param start
+	 * @param end
+	 * @return
+	 * @throws IOException
+	 */
+	public static InputStream openChunk(File file, final long start,
+			final long end) throws IOException {
+		if (start == 0L && end == file.length()
+				&& CodecStreams.isCompressed(file)) {
+			return CodecStreams.openInputStream(file);
+		}
+		final FileInputStream fileInputStream = new FileInputStream(file);
+		long skipped = 0L;
+		while (skipped < start) {
+			long currentSkipped = fileInputStream.skip(start - skipped);
+			if (currentSkipped <= 0) {
+				break;
+			}
+			skipped += currentSkipped;
+		}
+		InputStream chunkInputStream = new InputStream() {
+			private long remaining = end - start;
+
+			@Override
+			public int read() throws IOException {
+				if (this.remaining <= 0) {
+					return -1;
+				}
+				int result = fileInputStream.read();
+				if (result != -1) {
+					this.remaining--;
+				}
+				return result;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (this.remaining <= 0) {
+					return -1;
+				}
+				int result = fileInputStream.read(b, off,
+						(int) Math.min(len, this.remaining));
+				if (result > 0) {
+					this.remaining -= result;
+				}
+				return result;
+			}
+
+			@Override
+			public void close() throws IOException {
+				fileInputStream.close();
+			}
+		};
+		return new BufferedInputStream(chunkInputStream, 100 * 8 * 1024);
+	}
+}
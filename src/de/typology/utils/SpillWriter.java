@@ -0,0 +1,101 @@
+package de.typology.utils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+
+import org.apache.commons.io.output.NullWriter;
+
+/**
+ * A writer whose buffer is managed by a SpillWriterPool. It extends
+ * BufferedWriter so it can be used wherever the writers of
+ * WordIndex.openWriters are used. The buffer grows as needed and is released
+ * after its content is written to the file.
+ *
+ * @author Martin Koerner
+ *
+ */
+public class SpillWriter extends BufferedWriter {
+	private SpillWriterPool pool;
+	private File file;
+	private StringBuilder buffer;
+
+	// only accessed while holding the pool's lock
+	boolean created;
+	int spillSize;
+
+	SpillWriter(SpillWriterPool pool, File file) {
+		// the buffer of BufferedWriter is not used
+		super(new NullWriter(), 1);
+		this.pool = pool;
+		this.file = file;
+	}
+
+	public File getFile() {
+		return this.file;
+	}
+
+	synchronized int getBufferedChars() {
+		if (this.buffer == null) {
+			return 0;
+		}
+		return this.buffer.length();
+	}
+
+	/**
+	 * writes the buffer to fileWriter and releases it
+	 *
+	 * @return number of written characters
+	 */
+	synchronized int drainTo(Writer fileWriter) throws IOException {
+		if (this.buffer == null) {
+			return 0;
+		}
+		int chars = this.buffer.length();
+		fileWriter.write(this.buffer.toString());
+		this.buffer = null;
+		return chars;
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		synchronized (this) {
+			this.getBuffer().append((char) c);
+		}
+		this.pool.buffered(1);
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		synchronized (this) {
+			this.getBuffer().append(cbuf, off, len);
+		}
+		this.pool.buffered(len);
+	}
+
+	@Override
+	public void write(String s, int off, int len) throws IOException {
+		synchronized (this) {
+			this.getBuffer().append(s, off, off + len);
+		}
+		this.pool.buffered(len);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		this.pool.flush(this);
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.pool.close(this);
+	}
+
+	private StringBuilder getBuffer() {
+		if (this.buffer == null) {
+			this.buffer = new StringBuilder(256);
+		}
+		return this.buffer;
+	}
+}
@@ -0,0 +1,178 @@
+package de.typology.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A pool of SpillWriters that share one memory budget instead of using a fixed
+ * buffer per file. If all writers together buffer more than maxBufferedChars
+ * characters, the largest buffers are written to their files first until half
+ * of the budget is free again. At most maxOpenFiles files are open at the same
+ * time; the least recently used file is closed and later reopened for
+ * appending.
+ * <p>
+ * A pool can be used by several threads. Locks are always acquired in the
+ * order pool, writer.
+ *
+ * @author Martin Koerner
+ *
+ */
+public class SpillWriterPool {
+	private long maxBufferedChars;
+	private int maxOpenFiles;
+
+	private AtomicLong bufferedChars;
+	private HashSet<SpillWriter> writers;
+	private LinkedHashMap<SpillWriter, Writer> openFiles;
+
+	Logger logger = LogManager.getLogger(this.getClass().getName());
+
+	private Comparator<SpillWriter> spillSizeComparator = new Comparator<SpillWriter>() {
+		@Override
+		public int compare(SpillWriter writer1, SpillWriter writer2) {
+			if (writer1.spillSize > writer2.spillSize) {
+				return -1;
+			}
+			if (writer1.spillSize < writer2.spillSize) {
+				return 1;
+			}
+			return 0;
+		}
+	};
+
+	public SpillWriterPool(long maxBufferedChars, int maxOpenFiles) {
+		this.maxBufferedChars = maxBufferedChars;
+		this.maxOpenFiles = Math.max(1, maxOpenFiles);
+		this.bufferedChars = new AtomicLong();
+		this.writers = new HashSet<SpillWriter>();
+		// access ordered for closing the least recently used file
+		this.openFiles = new LinkedHashMap<SpillWriter, Writer>(16, 0.75f,
+				true);
+	}
+
+	/**
+	 * returns a writer for file. The file is created or truncated when the
+	 * writer's content is written for the first time.
+	 *
+	 * @param file
+	 * @return
+	 */
+	public synchronized SpillWriter openWriter(File file) {
+		SpillWriter writer = new SpillWriter(this, file);
+		this.writers.add(writer);
+		return writer;
+	}
+
+	public long getBufferedChars() {
+		return this.bufferedChars.get();
+	}
+
+	public synchronized int getOpenFiles() {
+		return this.openFiles.size();
+	}
+
+	/**
+	 * called by a writer after it buffered chars characters. The writer's lock
+	 * must not be held.
+	 */
+	void buffered(int chars) throws IOException {
+		if (this.bufferedChars.addAndGet(chars) > this.maxBufferedChars) {
+			this.spill();
+		}
+	}
+
+	/**
+	 * writes the largest buffers to their files until at most half of the
+	 * budget is used
+	 *
+	 * @throws IOException
+	 */
+	synchronized void spill() throws IOException {
+		if (this.bufferedChars.get() <= this.maxBufferedChars) {
+			// another thread already spilled
+			return;
+		}
+		// the buffer sizes are fixed for sorting since other threads may
+		// still write into their buffers
+		ArrayList<SpillWriter> spillWriters = new ArrayList<SpillWriter>(
+				this.writers);
+		for (SpillWriter writer : spillWriters) {
+			writer.spillSize = writer.getBufferedChars();
+		}
+		Collections.sort(spillWriters, this.spillSizeComparator);
+		long targetChars = this.maxBufferedChars / 2;
+		for (SpillWriter writer : spillWriters) {
+			if (this.bufferedChars.get() <= targetChars
+					|| writer.spillSize == 0) {
+				break;
+			}
+			this.writeOut(writer);
+		}
+	}
+
+	synchronized void flush(SpillWriter writer) throws IOException {
+		this.writeOut(writer);
+		Writer fileWriter = this.openFiles.get(writer);
+		if (fileWriter != null) {
+			fileWriter.flush();
+		}
+	}
+
+	synchronized void close(SpillWriter writer) throws IOException {
+		if (!this.writers.remove(writer)) {
+			// already closed
+			return;
+		}
+		this.writeOut(writer);
+		if (!writer.created) {
+			// create empty file
+			this.getFileWriter(writer);
+		}
+		Writer fileWriter = this.openFiles.remove(writer);
+		if (fileWriter != null) {
+			fileWriter.close();
+		}
+	}
+
+	private void writeOut(SpillWriter writer) throws IOException {
+		int chars;
+		synchronized (writer) {
+			if (writer.getBufferedChars() == 0) {
+				return;
+			}
+			chars = writer.drainTo(this.getFileWriter(writer));
+		}
+		this.bufferedChars.addAndGet(-chars);
+	}
+
+	private Writer getFileWriter(SpillWriter writer) throws IOException {
+		Writer fileWriter = this.openFiles.get(writer);
+		if (fileWriter == null) {
+			if (this.openFiles.size() >= this.maxOpenFiles) {
+				Iterator<Entry<SpillWriter, Writer>> iterator = this.openFiles
+						.entrySet().iterator();
+				Writer eldestFileWriter = iterator.next().getValue();
+				iterator.remove();
+				eldestFileWriter.close();
+			}
+			// the first write truncates the file, later ones append
+			fileWriter = CodecStreams.openIntermediateWriter(writer.getFile(),
+					writer.created);
+			writer.created = true;
+			this.openFiles.put(writer, fileWriter);
+		}
+		return fileWriter;
+	}
+}
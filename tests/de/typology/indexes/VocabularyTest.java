@@ -0,0 +1,60 @@
+package de.typology.indexes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class VocabularyTest {
+	File inputFile = new File("testDataset/training.txt");
+	File indexFile = new File("testDataset/index.txt");
+	File vocabularyFile = new File("testDataset/vocabulary.txt");
+
+	@Before
+	public void setUp() throws Exception {
+		WordIndexer wi = new WordIndexer();
+		wi.buildIndex(this.inputFile, this.indexFile, this.vocabularyFile, 10,
+				"<fs> <s> ", " </s>");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (this.indexFile.exists()) {
+			this.indexFile.delete();
+		}
+		if (this.vocabularyFile.exists()) {
+			this.vocabularyFile.delete();
+		}
+	}
+
+	@Test
+	public void idOrderTest() {
+		Vocabulary vocabulary = new Vocabulary(this.vocabularyFile);
+		WordIndex wordIndex = new WordIndex(this.indexFile);
+		int[] ranks = vocabulary.getRanks(wordIndex);
+		for (int i = 1; i < vocabulary.size(); i++) {
+			assertTrue(vocabulary.getWord(i - 1)
+					.compareTo(vocabulary.getWord(i)) < 0);
+			assertTrue(ranks[i - 1] <= ranks[i]);
+		}
+		assertEquals(-1, vocabulary.getId("notFound"));
+		assertEquals("et", vocabulary.getWord(vocabulary.getId("et")));
+	}
+
+	@Test
+	public void idsTest() {
+		Vocabulary vocabulary = new Vocabulary(this.vocabularyFile);
+		int[] ids = vocabulary.getIds("Lorem ipsum notFound");
+		assertEquals(3, ids.length);
+		assertEquals(vocabulary.getId("Lorem"), ids[0]);
+		assertEquals(vocabulary.getId("ipsum"), ids[1]);
+		assertEquals(-1, ids[2]);
+		assertEquals("Lorem ipsum", vocabulary.getSequence(new int[] {
+				ids[0], ids[1] }));
+		assertEquals(0, vocabulary.getIds("").length);
+	}
+}
@@ -1,8 +1,18 @@
 package de.typology.indexes;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -10,9 +20,12 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import de.typology.patterns.PatternBuilder;
+
 public class WordIndexerTest {
 	File inputFile = new File("testDataset/training.txt");
 	File indexFile = new File("testDataset/index.txt");
+	File skewedFile = new File("testDataset/skewed.txt");
 
 	@BeforeClass
 	public static void setUpBeforeClass() throws Exception {
@@ -34,6 +47,9 @@ public class WordIndexerTest {
 		if (this.indexFile.exists()) {
 			this.indexFile.delete();
 		}
+		if (this.skewedFile.exists()) {
+			this.skewedFile.delete();
+		}
 	}
 
 	@Test
@@ -44,4 +60,103 @@ public class WordIndexerTest {
 		assertEquals(13, maxCountPerFile);
 	}
 
+	@Test
+	public void buildIndexParallelTest() {
+		WordIndexer wi = new WordIndexer(4);
+		long maxCountPerFile = wi.buildIndex(this.inputFile, this.indexFile,
+				10, "<fs> <s> ", " </s>");
+		assertEquals(13, maxCountPerFile);
+		WordIndex wordIndex = new WordIndex(this.indexFile);
+		assertEquals(8, wordIndex.rank("et"));
+		assertEquals(11, wordIndex.rank("tempora"));
+	}
+
+	@Test
+	public void buildBalancedIndexTest() {
+		// zipf distributed words, so that the first words are very frequent
+		String[] words = new String[200];
+		double[] cumulativeWeights = new double[words.length];
+		double weightSum = 0;
+		for (int i = 0; i < words.length; i++) {
+			words[i] = "w" + i;
+			weightSum += 1.0 / (i + 1);
+			cumulativeWeights[i] = weightSum;
+		}
+		Random random = new Random(42);
+		try {
+			BufferedWriter bw = new BufferedWriter(new FileWriter(
+					this.skewedFile));
+			for (int line = 0; line < 1000; line++) {
+				for (int i = 0; i < 8; i++) {
+					double r = random.nextDouble() * weightSum;
+					int word = 0;
+					while (cumulativeWeights[word] < r) {
+						word++;
+					}
+					bw.write((i == 0 ? "" : " ") + words[word]);
+				}
+				bw.write("\n");
+			}
+			bw.close();
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+
+		ArrayList<boolean[]> patterns = PatternBuilder.getGLMPatterns(3);
+		WordIndexer wi = new WordIndexer();
+		long maxSequencesPerFile = wi.buildBalancedIndex(this.skewedFile,
+				this.indexFile, null, patterns, 4, 1, "<fs> <s> ", " </s>");
+		WordIndex wordIndex = new WordIndex(this.indexFile);
+		assertTrue(wordIndex.getLength() > 4);
+
+		// count the distinct sequences of every pattern and partition like
+		// the Sequencer splits them
+		for (boolean[] pattern : patterns) {
+			int firstWordPosition = 0;
+			while (firstWordPosition < pattern.length - 1
+					&& !pattern[firstWordPosition]) {
+				firstWordPosition++;
+			}
+			HashMap<Integer, HashSet<String>> partitions = new HashMap<Integer, HashSet<String>>();
+			for (String line : this.readLines(this.skewedFile)) {
+				String[] lineSplit = ("<fs> <s> " + line + " </s>")
+						.split("\\s");
+				for (int linePointer = 0; lineSplit.length - linePointer >= pattern.length; linePointer++) {
+					String sequence = "";
+					for (int i = 0; i < pattern.length; i++) {
+						if (pattern[i]) {
+							sequence += lineSplit[linePointer + i] + " ";
+						}
+					}
+					int partition = wordIndex.rank(lineSplit[linePointer
+							+ firstWordPosition]);
+					if (!partitions.containsKey(partition)) {
+						partitions.put(partition, new HashSet<String>());
+					}
+					partitions.get(partition).add(sequence);
+				}
+			}
+			for (HashSet<String> sequences : partitions.values()) {
+				assertTrue(sequences.size() <= maxSequencesPerFile);
+			}
+		}
+	}
+
+	private ArrayList<String> readLines(File file) {
+		ArrayList<String> lines = new ArrayList<String>();
+		try {
+			BufferedReader br = new BufferedReader(new FileReader(file));
+			String line;
+			while ((line = br.readLine()) != null) {
+				lines.add(line);
+			}
+			br.close();
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+		return lines;
+	}
+
 }
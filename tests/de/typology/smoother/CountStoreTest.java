@@ -0,0 +1,116 @@
+package de.typology.smoother;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.typology.indexes.Vocabulary;
+
+public class CountStoreTest {
+	File outputDirectory = new File("testDataset/countStore/");
+	Vocabulary vocabulary;
+
+	@Before
+	public void setUp() throws Exception {
+		if (this.outputDirectory.exists()) {
+			FileUtils.deleteDirectory(this.outputDirectory);
+		}
+		this.outputDirectory.mkdir();
+		File vocabularyFile = new File(this.outputDirectory.getAbsolutePath()
+				+ "/vocabulary.txt");
+		BufferedWriter bw = new BufferedWriter(new FileWriter(vocabularyFile));
+		bw.write("a\t0\n");
+		bw.write("b\t1\n");
+		for (int i = 0; i < 10000; i++) {
+			bw.write("w" + i + "\t" + (i + 2) + "\n");
+		}
+		bw.close();
+		this.vocabulary = new Vocabulary(vocabularyFile);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (this.outputDirectory.exists()) {
+			FileUtils.deleteDirectory(this.outputDirectory);
+		}
+	}
+
+	@Test
+	public void putGetTest() {
+		CountStore countStore = new CountStore(1, this.vocabulary);
+		countStore.put("11", "a b", new long[] { 3L });
+		countStore.put("11", "b a", new long[] { 5L });
+		countStore.put("1", "a", new long[] { 7L });
+		countStore.put("", "", new long[] { 11L });
+		assertEquals(3L, countStore.get("11", "a b", 0));
+		assertEquals(5L, countStore.get("11", "b a", 0));
+		assertEquals(7L, countStore.get("1", "a", 0));
+		assertEquals(11L, countStore.get("", "", 0));
+		assertEquals(2, countStore.size("11"));
+		// lookup by word ids
+		int[] wordIds = this.vocabulary.getIds("b a");
+		assertEquals(5L, countStore.get("11", wordIds, 0));
+		assertEquals(11L, countStore.get("", new int[0], 0));
+		assertEquals(0L, countStore.get("11", new int[] { 0, -1 }, 0));
+		// prefixes of word ids
+		assertEquals(5L, countStore.get("11", new int[] { 1, 0, -1 }, 2, 0));
+		assertEquals(11L, countStore.get("", wordIds, 0, 0));
+
+		// overwrite
+		countStore.put("11", "a b", new long[] { 4L });
+		assertEquals(4L, countStore.get("11", "a b", 0));
+		assertEquals(2, countStore.size("11"));
+
+		// unknown sequences, words and patterns
+		assertEquals(0L, countStore.get("11", "a a", 0));
+		assertEquals(0L, countStore.get("11", "a c", 0));
+		assertFalse(countStore.put("11", "c a", new long[] { 1L }));
+		assertEquals(2, countStore.size("11"));
+		assertEquals(0L, countStore.get("1", "a b", 0));
+		assertEquals(0L, countStore.get("111", "a b", 0));
+		assertFalse(countStore.hasPattern("111"));
+		countStore.addPattern("111");
+		assertTrue(countStore.hasPattern("111"));
+		assertEquals(0, countStore.size("111"));
+	}
+
+	@Test
+	public void patternTest() {
+		CountStore countStore = new CountStore(1, this.vocabulary);
+		countStore.put("_11", "a b", new long[] { 1L });
+		countStore.put("11", "a b", new long[] { 2L });
+		countStore.put("1_1", "a b", new long[] { 3L });
+		assertEquals(1L, countStore.get("_11", "a b", 0));
+		assertEquals(2L, countStore.get("11", "a b", 0));
+		assertEquals(3L, countStore.get("1_1", "a b", 0));
+		assertFalse(countStore.hasPattern("1"));
+		assertFalse(countStore.hasPattern("111"));
+	}
+
+	@Test
+	public void columnsTest() {
+		CountStore countStore = new CountStore(4, this.vocabulary);
+		assertEquals(4, countStore.getCountColumns());
+		for (int i = 0; i < 10000; i++) {
+			countStore.put("1_1", "w" + i + " w" + i % 7, new long[] { i,
+					i + 1, i + 2, i + 3 });
+		}
+		assertEquals(10000, countStore.size("1_1"));
+		for (int i = 0; i < 10000; i++) {
+			for (int column = 0; column < 4; column++) {
+				assertEquals(i + column,
+						countStore.get("1_1", "w" + i + " w" + i % 7, column));
+			}
+		}
+		assertEquals(0L, countStore.get("1_1", "w1 w2", 0));
+	}
+}
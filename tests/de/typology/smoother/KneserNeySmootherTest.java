@@ -4,12 +4,15 @@ import static org.junit.Assert.assertEquals;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.List;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.Test;
 
+import de.typology.indexes.Vocabulary;
 import de.typology.indexes.WordIndexer;
 import de.typology.patterns.PatternBuilder;
 import de.typology.splitter.AbsoluteSplitter;
@@ -23,9 +26,21 @@ public class KneserNeySmootherTest {
 	File continuationDirectory;
 	File testSequenceFile;
 	File kneserNeyFile;
+	File vocabularyFile = new File("testDataset/vocabulary.txt");
 
 	@AfterClass
 	public static void tearDownAfterClass() throws Exception {
+		String inputDirectoryPath = "testDataset/";
+		for (String directory : new String[] { "absolute", "absolute-stats",
+				"continuation", "continuation-stats" }) {
+			FileUtils.deleteDirectory(new File(inputDirectoryPath + directory));
+		}
+		new File(inputDirectoryPath + "index.txt").delete();
+		new File(inputDirectoryPath + "vocabulary.txt").delete();
+		new File(inputDirectoryPath + "discount-values-kneser-ney.ser")
+				.delete();
+		new File(inputDirectoryPath + "discount-values-mod-kneser-ney.ser")
+				.delete();
 	}
 
 	@Before
@@ -34,7 +49,8 @@ public class KneserNeySmootherTest {
 		File inputFile = new File(inputDirectoryPath + "training.txt");
 		File indexFile = new File(inputDirectoryPath + "index.txt");
 		WordIndexer wier = new WordIndexer();
-		wier.buildIndex(inputFile, indexFile, 10, "<fs> <s> ", " </s>");
+		wier.buildIndex(inputFile, indexFile, this.vocabularyFile, 10,
+				"<fs> <s> ", " </s>");
 		this.absoluteDirectory = new File(inputDirectoryPath + "absolute");
 		this.continuationDirectory = new File(inputDirectoryPath
 				+ "continuation");
@@ -78,23 +94,18 @@ public class KneserNeySmootherTest {
 
 		KneserNeySmoother kns = new KneserNeySmoother(
 				this.extractedSequenceDirectory, this.absoluteDirectory,
-				this.continuationDirectory, "\t");
-
-		HashMap<String, HashMap<String, Long>> absoluteTypeSequenceValueMap = null;
-		HashMap<String, HashMap<String, Long[]>> continuationTypeSequenceValueMap = null;
-		absoluteTypeSequenceValueMap = kns
-				.readAbsoluteValuesIntoHashMap(kns.extractedAbsoluteDirectory);
+				this.continuationDirectory, "\t", new Vocabulary(
+						this.vocabularyFile));
 
-		continuationTypeSequenceValueMap = kns
-				.readContinuationValuesIntoHashMap(kns.extractedContinuationDirectory);
+		kns.absoluteCountStore = kns
+				.readAbsoluteValues(kns.extractedAbsoluteDirectory);
 
-		kns.absoluteTypeSequenceValueMap = absoluteTypeSequenceValueMap;
-		kns.continuationTypeSequenceValueMap = continuationTypeSequenceValueMap;
+		kns.continuationCountStore = kns
+				.readContinuationValues(kns.extractedContinuationDirectory);
 
-		kns.smooth(this.testSequenceFile, this.kneserNeyFile, 5, false, true,
-				false);
-		System.out.println(kns.continuationTypeSequenceValueMap.get("__").get(
-				""));
+		kns.smooth(this.testSequenceFile, this.kneserNeyFile, 5, false, true);
+		// number of distinct bigrams
+		assertEquals(28L, kns.continuationCountStore.get("__", "", 0));
 		assertEquals(0.625, kns.discountTypeValuesMap.get("_11").get("D1+"),
 				0.00001);
 		assertEquals(0.0357,
@@ -125,22 +136,16 @@ public class KneserNeySmootherTest {
 
 		KneserNeySmoother kns = new KneserNeySmoother(
 				this.extractedSequenceDirectory, this.absoluteDirectory,
-				this.continuationDirectory, "\t");
-
-		HashMap<String, HashMap<String, Long>> absoluteTypeSequenceValueMap = null;
-		HashMap<String, HashMap<String, Long[]>> continuationTypeSequenceValueMap = null;
-
-		absoluteTypeSequenceValueMap = kns
-				.readAbsoluteValuesIntoHashMap(kns.extractedAbsoluteDirectory);
+				this.continuationDirectory, "\t", new Vocabulary(
+						this.vocabularyFile));
 
-		continuationTypeSequenceValueMap = kns
-				.readContinuationValuesIntoHashMap(kns.extractedContinuationDirectory);
+		kns.absoluteCountStore = kns
+				.readAbsoluteValues(kns.extractedAbsoluteDirectory);
 
-		kns.absoluteTypeSequenceValueMap = absoluteTypeSequenceValueMap;
-		kns.continuationTypeSequenceValueMap = continuationTypeSequenceValueMap;
+		kns.continuationCountStore = kns
+				.readContinuationValues(kns.extractedContinuationDirectory);
 
-		kns.smooth(this.testSequenceFile, this.kneserNeyFile, 5, true, true,
-				false);
+		kns.smooth(this.testSequenceFile, this.kneserNeyFile, 5, true, true);
 		try {
 			Thread.sleep(500);
 		} catch (InterruptedException ex) {
@@ -148,45 +153,99 @@ public class KneserNeySmootherTest {
 		}
 		System.out.println("----");
 		assertEquals(0.0084,
-				kns.calculateConditionalProbability("notFound", 1, "1", false),
+				kns.calculateConditionalProbability("notFound", 1, "1", true),
 				0.0001);
 		assertEquals(0.0084,
-				kns.calculateLowerOrderResult("notFound", 1, "1", false),
+				kns.calculateLowerOrderResult("notFound", 1, "1", true),
 				0.0001);
 		kns.calculateProbability("Lorem ipsum dolor sit amet", 5, "11111",
-				false);
+				true);
 		assertEquals(0.625, kns.discountTypeValuesMap.get("_11").get("D1+"),
 				0.00001);
 		assertEquals(0.0357,
-				kns.calculateLowerOrderResult("dolor", 1, "1", false), 0.0001);
+				kns.calculateLowerOrderResult("dolor", 1, "1", true), 0.0001);
 		assertEquals(0.07143,
-				kns.calculateLowerOrderResult("et", 1, "1", false), 0.0001);
+				kns.calculateLowerOrderResult("et", 1, "1", true), 0.0001);
 		assertEquals(0.08474,
-				kns.calculateConditionalProbability("et", 1, "1", false),
+				kns.calculateConditionalProbability("et", 1, "1", true),
 				0.0001);
 		assertEquals(0.39282,
-				kns.calculateLowerOrderResult("</s>", 1, "1", false), 0.0001);
+				kns.calculateLowerOrderResult("</s>", 1, "1", true), 0.0001);
 		assertEquals(0.0084,
-				kns.calculateLowerOrderResult("<s>", 1, "1", false), 0.0001);
-		assertEquals(0.2321,
-				kns.calculateLowerOrderResult("sit amet", 2, "11", false),
+				kns.calculateLowerOrderResult("<s>", 1, "1", true), 0.0001);
+		assertEquals(0.2151,
+				kns.calculateLowerOrderResult("sit amet", 2, "11", true),
 				0.0001);
 
-		assertEquals(0.0275,
-				kns.calculateLowerOrderResult("sit unknown", 2, "11", false),
+		assertEquals(0.0105,
+				kns.calculateLowerOrderResult("sit unknown", 2, "11", true),
 				0.0001);
-		assertEquals(0.3587, kns.calculateLowerOrderResult("dolor sit amet", 3,
-				"111", false), 0.0001);
-		assertEquals(0.4173, kns.calculateLowerOrderResult(
-				"ipsum dolor sit amet", 4, "1111", false), 0.0001);
-		assertEquals(0.09857, kns.calculateConditionalProbability(
-				"<s> At vero eos et", 5, "11111", false), 0.0001);
-		assertEquals(0.79221, kns.calculateConditionalProbability(
-				"Lorem ipsum dolor sit amet", 5, "11111", false), 0.0001);
+		assertEquals(0.2743, kns.calculateLowerOrderResult("dolor sit amet", 3,
+				"111", true), 0.0001);
+		assertEquals(0.2657, kns.calculateLowerOrderResult(
+				"ipsum dolor sit amet", 4, "1111", true), 0.0001);
+		assertEquals(0.10282, kns.calculateConditionalProbability(
+				"<s> At vero eos et", 5, "11111", true), 0.0001);
+		assertEquals(0.75348, kns.calculateConditionalProbability(
+				"Lorem ipsum dolor sit amet", 5, "11111", true), 0.0001);
 
 		System.out.println(kns.calculateProbability(
-				"Lorem ipsum dolor sit amet", 5, "11111", false));
+				"Lorem ipsum dolor sit amet", 5, "11111", true));
 		// assertEquals(0.00875, kns.calculateProbability(
-		// "Lorem ipsum dolor sit amet", 5, "11111", false), 0.0001);
+		// "Lorem ipsum dolor sit amet", 5, "11111", true), 0.0001);
+	}
+
+	@Test
+	public void smoothingPassTest() throws Exception {
+		Vocabulary vocabulary = new Vocabulary(this.vocabularyFile);
+		KneserNeySmoother kns = new KneserNeySmoother(
+				this.extractedSequenceDirectory, this.absoluteDirectory,
+				this.continuationDirectory, "\t", vocabulary);
+		kns.absoluteCountStore = kns
+				.readAbsoluteValues(kns.extractedAbsoluteDirectory);
+		kns.continuationCountStore = kns
+				.readContinuationValues(kns.extractedContinuationDirectory);
+		ModifiedKneserNeySmoother mkns = new ModifiedKneserNeySmoother(
+				this.extractedSequenceDirectory, this.absoluteDirectory,
+				this.continuationDirectory, "\t", vocabulary, 5);
+		mkns.absoluteCountStore = kns.absoluteCountStore;
+		mkns.continuationCountStore = kns.continuationCountStore;
+
+		File samplesFile = new File("testDataset/testing-samples-5.txt");
+		FileUtils.writeLines(samplesFile, Arrays.asList(
+				"Lorem ipsum dolor sit amet", "dolor sit amet unknown et"));
+		File[] resultFiles = new File[] {
+				new File("testDataset/kn-simple-2.txt"),
+				new File("testDataset/kn-complex-5.txt"),
+				new File("testDataset/mkn-simple-5.txt") };
+		// all results in one pass over the longest samples
+		SmoothingPass smoothingPass = new SmoothingPass(samplesFile, 5,
+				false);
+		smoothingPass.addResult(kns, 2, false, resultFiles[0]);
+		smoothingPass.addResult(kns, 5, true, resultFiles[1]);
+		smoothingPass.addResult(mkns, 5, false, resultFiles[2]);
+		smoothingPass.smooth(2);
+
+		List<String> knSimple = FileUtils.readLines(resultFiles[0]);
+		assertEquals(2, knSimple.size());
+		assertEquals(kns.formatResult("Lorem ipsum",
+				kns.calculateProbability("Lorem ipsum", 2, "11", false)),
+				knSimple.get(0) + "\n");
+		assertEquals(kns.formatResult("dolor sit",
+				kns.calculateProbability("dolor sit", 2, "11", false)),
+				knSimple.get(1) + "\n");
+		List<String> knComplex = FileUtils.readLines(resultFiles[1]);
+		assertEquals(kns.formatResult("dolor sit amet unknown et", kns
+				.calculateProbability("dolor sit amet unknown et", 5,
+						"11111", true)), knComplex.get(1) + "\n");
+		List<String> mknSimple = FileUtils.readLines(resultFiles[2]);
+		assertEquals(mkns.formatResult("Lorem ipsum dolor sit amet", mkns
+				.calculateProbability("Lorem ipsum dolor sit amet", 5,
+						"11111", false)), mknSimple.get(0) + "\n");
+
+		samplesFile.delete();
+		for (File resultFile : resultFiles) {
+			resultFile.delete();
+		}
 	}
 }
@@ -1,7 +1,9 @@
 package de.typology.splitter;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
@@ -15,6 +17,8 @@ import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.Test;
 
+import de.typology.utils.CountStatistics;
+
 public class AggregatorTest {
 	File inputFile = new File("testDataset/aggregator-in.txt");
 	File outputFile = new File("testDataset/aggregator-out.txt");
@@ -106,4 +110,91 @@ public class AggregatorTest {
 		}
 		this.outputFile.delete();
 	}
+
+	@Test
+	public void aggregatorExternalCol1Test() {
+		Aggregator aggregator = new Aggregator(this.inputFile, this.outputFile,
+				"\t", 1, false);
+		// every distinct sequence is written into its own run
+		aggregator.setMaxMemory(1);
+		aggregator.aggregateCounts();
+		try {
+			BufferedReader br = new BufferedReader(new FileReader(
+					this.outputFile));
+			assertEquals("c x a\t2", br.readLine());
+			assertEquals("b y a\t1", br.readLine());
+			assertEquals("b y b\t1", br.readLine());
+			assertEquals("c y b\t1", br.readLine());
+			assertEquals("a z a\t1", br.readLine());
+			assertNull(br.readLine());
+			br.close();
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+		assertFalse(new File(this.outputFile.getAbsolutePath() + "-run0")
+				.exists());
+		this.outputFile.delete();
+	}
+
+	@Test
+	public void aggregatorExternalAdditionalCountsTest() {
+		Aggregator aggregator = new Aggregator(this.inputFile, this.outputFile,
+				"\t", 0, true);
+		aggregator.setMaxMemory(1);
+		aggregator.aggregateCounts();
+		try {
+			BufferedReader br = new BufferedReader(new FileReader(
+					this.outputFile));
+			assertEquals("a z a\t1\t1\t0\t0", br.readLine());
+			assertEquals("b y a\t1\t1\t0\t0", br.readLine());
+			assertEquals("b y b\t1\t1\t0\t0", br.readLine());
+			assertEquals("c x a\t2\t2\t0\t0", br.readLine());
+			assertEquals("c y b\t1\t1\t0\t0", br.readLine());
+			assertNull(br.readLine());
+			br.close();
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+		this.outputFile.delete();
+	}
+
+	@Test
+	public void sortKeyTest() {
+		assertEquals("c x a", Aggregator.getSortKey("c x a", 0));
+		assertEquals("x a\0c ", Aggregator.getSortKey("c x a", 1));
+		assertEquals("a\t3\0c x ", Aggregator.getSortKey("c x a\t3", 2));
+		assertEquals("c x a\t3",
+				Aggregator.getSequence(Aggregator.getSortKey("c x a\t3", 2), 2));
+		// sorted by the columns from startSortAtColumn on first
+		assertTrue(Aggregator.getSortKey("b y a", 2).compareTo(
+				Aggregator.getSortKey("a z b", 2)) < 0);
+		assertTrue(Aggregator.getSortKey("a y a", 1).compareTo(
+				Aggregator.getSortKey("ab y a", 1)) < 0);
+	}
+
+	@Test
+	public void statisticsTest() {
+		Aggregator aggregator = new Aggregator(this.inputFile, this.outputFile,
+				"\t", 0, false);
+		aggregator.aggregateCounts();
+		CountStatistics statistics = aggregator.getStatistics();
+		assertEquals(4, statistics.getCountOfCounts(1));
+		assertEquals(1, statistics.getCountOfCounts(2));
+		assertEquals(0, statistics.getCountOfCounts(3));
+		assertEquals(6, statistics.getTotalCount());
+		assertEquals(5, statistics.getDistinctCount());
+		assertEquals(5, statistics.getLineCount());
+		this.outputFile.delete();
+
+		// external sorting results in the same statistics
+		aggregator.setMaxMemory(1);
+		aggregator.aggregateCounts();
+		statistics = aggregator.getStatistics();
+		assertEquals(4, statistics.getCountOfCounts(1));
+		assertEquals(1, statistics.getCountOfCounts(2));
+		assertEquals(6, statistics.getTotalCount());
+		this.outputFile.delete();
+	}
 }
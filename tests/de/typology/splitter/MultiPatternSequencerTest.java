@@ -0,0 +1,98 @@
+package de.typology.splitter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.typology.indexes.WordIndex;
+import de.typology.indexes.WordIndexer;
+
+public class MultiPatternSequencerTest {
+	File inputFile = new File("testDataset/training.txt");
+	File indexFile = new File("testDataset/index.txt");
+	File sequencerOutputDirectory = new File("testDataset/multiSequencer/");
+
+	@Before
+	public void setUp() throws Exception {
+		WordIndexer wordIndexer = new WordIndexer();
+		wordIndexer.buildIndex(this.inputFile, this.indexFile, 10, "<fs> <s> ",
+				" </s>");
+		if (this.sequencerOutputDirectory.exists()) {
+			FileUtils.deleteDirectory(this.sequencerOutputDirectory);
+		}
+		this.sequencerOutputDirectory.mkdir();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (this.sequencerOutputDirectory.exists()) {
+			FileUtils.deleteDirectory(this.sequencerOutputDirectory);
+		}
+		if (this.indexFile.exists()) {
+			this.indexFile.delete();
+		}
+	}
+
+	@Test
+	public void squencing1And1101Test() {
+		WordIndex wordIndex = new WordIndex(this.indexFile);
+		ArrayList<boolean[]> patterns = new ArrayList<boolean[]>();
+		patterns.add(new boolean[] { true });
+		patterns.add(new boolean[] { true, true, false, true });
+		ArrayList<File> outputDirectories = new ArrayList<File>();
+		File outputDirectory1 = new File(
+				this.sequencerOutputDirectory.getAbsolutePath() + "/1-split");
+		File outputDirectory1101 = new File(
+				this.sequencerOutputDirectory.getAbsolutePath() + "/1101-split");
+		outputDirectories.add(outputDirectory1);
+		outputDirectories.add(outputDirectory1101);
+
+		try {
+			InputStream inputStream = new FileInputStream(this.inputFile);
+			MultiPatternSequencer multiPatternSequencer = new MultiPatternSequencer(
+					inputStream, outputDirectories, wordIndex, patterns,
+					"<fs> <s> ", " </s>", "\t");
+			multiPatternSequencer.splitIntoFiles();
+
+			// test file contents
+			BufferedReader br8 = new BufferedReader(new FileReader(
+					outputDirectory1.getAbsolutePath() + "/8"));
+			for (int i = 0; i < 10; i++) {
+				assertEquals("et\t1", br8.readLine());
+			}
+			assertNull(br8.readLine());
+			br8.close();
+
+			BufferedReader br0 = new BufferedReader(new FileReader(
+					outputDirectory1101.getAbsolutePath() + "/8"));
+			for (int i = 0; i < 6; i++) {
+				assertEquals("et justo dolores\t1", br0.readLine());
+			}
+			assertNull(br0.readLine());
+			br0.close();
+
+			BufferedReader br10 = new BufferedReader(new FileReader(
+					outputDirectory1101.getAbsolutePath() + "/3"));
+			for (int i = 0; i < 6; i++) {
+				assertEquals("<s> Lorem dolor\t1", br10.readLine());
+			}
+			assertEquals("<s> Lorem </s>\t1", br10.readLine());
+			br10.close();
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package de.typology.splitter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class RecordChannelTest {
+
+	@Test
+	public void putTakeTest() {
+		// small batches and only two waiting batches make the producer block
+		final RecordChannel recordChannel = new RecordChannel(3, 2);
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < 100; i++) {
+						recordChannel.put("a " + i, i);
+					}
+					recordChannel.close();
+				} catch (IOException e) {
+					// TODO Auto-generated catch block
+					e.printStackTrace();
+				}
+			}
+		});
+		producer.start();
+		try {
+			for (int i = 0; i < 100; i++) {
+				SequenceRecord record = recordChannel.take();
+				assertEquals("a " + i, record.getSequence());
+				assertEquals(i, record.getCount());
+			}
+			assertNull(recordChannel.take());
+			assertNull(recordChannel.take());
+			producer.join();
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+	}
+
+	@Test
+	public void abortTest() {
+		final RecordChannel recordChannel = new RecordChannel(3, 2);
+		final boolean[] producerFailed = new boolean[1];
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < 100; i++) {
+						recordChannel.put("a " + i, i);
+					}
+					recordChannel.close();
+				} catch (IOException e) {
+					producerFailed[0] = true;
+				}
+			}
+		});
+		producer.start();
+		try {
+			assertEquals("a 0", recordChannel.take().getSequence());
+			recordChannel.abort();
+			// the producer must not wait for the consumer that stopped
+			producer.join(10000);
+			assertFalse(producer.isAlive());
+			assertTrue(producerFailed[0]);
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+	}
+
+	@Test
+	public void failTest() {
+		RecordChannel recordChannel = new RecordChannel(3, 2);
+		boolean thrown = false;
+		try {
+			recordChannel.put("a", 1);
+			recordChannel.fail();
+			while (recordChannel.take() != null) {
+				// drop the records that are still passed
+			}
+		} catch (IOException e) {
+			thrown = true;
+		}
+		assertTrue(thrown);
+	}
+}
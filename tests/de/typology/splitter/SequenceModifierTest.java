@@ -12,6 +12,8 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.After;
@@ -80,4 +82,48 @@ public class SequenceModifierTest {
 			e.printStackTrace();
 		}
 	}
+
+	@Test
+	public void sequenceModifierFanOutTest() {
+		ArrayList<boolean[]> patterns = new ArrayList<boolean[]>();
+		patterns.add(new boolean[] { true, false, true });
+		patterns.add(new boolean[] { false, true, true });
+		// large enough for all records, so the modifier does not block
+		ArrayList<RecordChannel> recordChannels = new ArrayList<RecordChannel>();
+		recordChannels.add(new RecordChannel(2, 16));
+		recordChannels.add(new RecordChannel(2, 16));
+
+		SequenceModifier sequenceModifier = new SequenceModifier(
+				this.inputDirectory, recordChannels, "\t", patterns, true,
+				false);
+		sequenceModifier.run();
+
+		try {
+			ArrayList<String> sequences = this.takeAll(recordChannels.get(0));
+			assertEquals(7, sequences.size());
+			assertEquals("a c\t13", sequences.get(0));
+			assertEquals("p r\t19", sequences.get(5));
+			assertEquals("ä ü\t18", sequences.get(6));
+			sequences = this.takeAll(recordChannels.get(1));
+			assertEquals(7, sequences.size());
+			assertEquals("b c\t13", sequences.get(0));
+			assertEquals("q r\t19", sequences.get(5));
+			assertEquals("ö ü\t18", sequences.get(6));
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+	}
+
+	// the order of the input files is not defined
+	private ArrayList<String> takeAll(RecordChannel recordChannel)
+			throws IOException {
+		ArrayList<String> sequences = new ArrayList<String>();
+		SequenceRecord record;
+		while ((record = recordChannel.take()) != null) {
+			sequences.add(record.getSequence() + "\t" + record.getCount());
+		}
+		Collections.sort(sequences);
+		return sequences;
+	}
 }
@@ -122,4 +122,28 @@ public class SequencerTest {
 			e.printStackTrace();
 		}
 	}
+
+	@Test
+	public void squencingCombinerTest() {
+		WordIndex wordIndex = new WordIndex(this.indexFile);
+		boolean[] pattern = { true, true, false, true };
+
+		try {
+			InputStream inputStream = new FileInputStream(this.inputFile);
+			Sequencer sequencer = new Sequencer(inputStream,
+					this.sequencerOutputDirectory, wordIndex, pattern,
+					"<fs> <s> ", " </s>", "\t", false, 0, 100);
+			sequencer.splitIntoFiles();
+
+			// equal sequences are written once with their summed count
+			BufferedReader br0 = new BufferedReader(new FileReader(
+					this.sequencerOutputDirectory.getAbsolutePath() + "/8"));
+			assertEquals("et justo dolores\t6", br0.readLine());
+			assertNull(br0.readLine());
+			br0.close();
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+	}
 }
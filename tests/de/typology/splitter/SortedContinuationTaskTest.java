@@ -0,0 +1,173 @@
+package de.typology.splitter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.typology.utils.CountStatistics;
+
+public class SortedContinuationTaskTest {
+	File inputDirectory = new File("testDataset/sortedContinuation-in/");
+	File outputDirectory = new File("testDataset/sortedContinuation-out");
+
+	@Before
+	public void setUp() throws Exception {
+		this.tearDown();
+		this.inputDirectory.mkdirs();
+		this.outputDirectory.mkdirs();
+		BufferedWriter bw = new BufferedWriter(new FileWriter(
+				this.inputDirectory.getAbsolutePath() + "/0"));
+		bw.write("<fs> a b\t5\n");
+		bw.write("a b c\t1\n");
+		bw.write("a b d\t2\n");
+		bw.write("a c a\t3\n");
+		bw.write("b a a\t1\n");
+		bw.close();
+		// "a\u0001" is sorted before "a ", so the groups are not in order
+		bw = new BufferedWriter(new FileWriter(
+				this.inputDirectory.getAbsolutePath() + "/1"));
+		bw.write("a\u0001 a a\t1\n");
+		bw.write("a a b\t1\n");
+		bw.write("a\u0001 a b\t2\n");
+		bw.close();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (this.inputDirectory.exists()) {
+			FileUtils.deleteDirectory(this.inputDirectory);
+		}
+		if (this.outputDirectory.exists()) {
+			FileUtils.deleteDirectory(this.outputDirectory);
+		}
+		FileUtils.deleteDirectory(new File(this.outputDirectory
+				.getAbsolutePath() + "-stats"));
+	}
+
+	@Test
+	public void isPrefixPatternTest() {
+		assertTrue(SortedContinuationTask.isPrefixPattern(new boolean[] {
+				true, true, false }));
+		assertTrue(SortedContinuationTask.isPrefixPattern(new boolean[] {
+				true, false, false }));
+		assertFalse(SortedContinuationTask.isPrefixPattern(new boolean[] {
+				false, true, true }));
+		assertFalse(SortedContinuationTask.isPrefixPattern(new boolean[] {
+				true, false, true }));
+	}
+
+	@Test
+	public void countTest() {
+		SortedContinuationTask task = new SortedContinuationTask(
+				this.inputDirectory, this.outputDirectory, "11_", "\t",
+				new boolean[] { true, true, false }, false);
+		task.run();
+		try {
+			BufferedReader br = new BufferedReader(new FileReader(
+					this.outputDirectory.getAbsolutePath() + "/11_/0"));
+			assertEquals("a b\t3\t1\t2\t0", br.readLine());
+			assertEquals("a c\t3\t0\t0\t3", br.readLine());
+			assertEquals("b a\t1\t1\t0\t0", br.readLine());
+			assertNull(br.readLine());
+			br.close();
+
+			br = new BufferedReader(new FileReader(
+					this.outputDirectory.getAbsolutePath() + "/11_/1"));
+			assertEquals("a\u0001 a\t3\t1\t2\t0", br.readLine());
+			assertEquals("a a\t1\t1\t0\t0", br.readLine());
+			assertNull(br.readLine());
+			br.close();
+			assertFalse(new File(this.outputDirectory.getAbsolutePath()
+					+ "/11_/1-unsorted").exists());
+
+			CountStatistics countStatistics = CountStatistics
+					.read(CountStatistics.getStatisticsFile(
+							this.outputDirectory, "11_"));
+			assertEquals(5, countStatistics.getDistinctCount());
+			assertEquals(11, countStatistics.getTotalCount());
+			assertEquals(2, countStatistics.getCountOfCounts(1));
+			assertEquals(3, countStatistics.getCountOfCounts(3));
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+	}
+
+	@Test
+	public void completionCallbackTest() {
+		final boolean[] results = new boolean[2];
+		final int[] calls = new int[1];
+		CompletionCallback completionCallback = new CompletionCallback() {
+			@Override
+			public void completed(boolean succeeded) {
+				results[calls[0]] = succeeded;
+				calls[0]++;
+			}
+		};
+		SortedContinuationTask task = new SortedContinuationTask(
+				this.inputDirectory, this.outputDirectory, "11_", "\t",
+				new boolean[] { true, true, false }, false);
+		task.setCompletionCallback(completionCallback);
+		task.run();
+
+		// the input directory can't be listed
+		task = new SortedContinuationTask(new File(
+				this.inputDirectory.getAbsolutePath() + "/missing"),
+				this.outputDirectory, "11_", "\t", new boolean[] { true,
+						true, false }, false);
+		task.setCompletionCallback(completionCallback);
+		task.run();
+
+		assertEquals(2, calls[0]);
+		assertTrue(results[0]);
+		assertFalse(results[1]);
+	}
+
+	@Test
+	public void failedAggregationTest() {
+		final boolean[] results = new boolean[] { true };
+		SortedContinuationTask task = new SortedContinuationTask(
+				this.inputDirectory, this.outputDirectory, "11_", "\t",
+				new boolean[] { true, true, false }, false) {
+			@Override
+			protected Aggregator getAggregator(File unsortedFile,
+					File outputFile) {
+				return new Aggregator(unsortedFile, outputFile, "\t", 0, true) {
+					@Override
+					public boolean aggregateCounts() {
+						return false;
+					}
+				};
+			}
+		};
+		task.setCompletionCallback(new CompletionCallback() {
+			@Override
+			public void completed(boolean succeeded) {
+				results[0] = succeeded;
+			}
+		});
+		task.run();
+
+		// file 1 is not sorted and has to be aggregated
+		assertFalse(results[0]);
+		assertFalse(new File(this.outputDirectory.getAbsolutePath()
+				+ "/11_/1").exists());
+		assertTrue(new File(this.outputDirectory.getAbsolutePath()
+				+ "/11_/1-unsorted").exists());
+		assertFalse(CountStatistics.getStatisticsFile(this.outputDirectory,
+				"11_").exists());
+	}
+}
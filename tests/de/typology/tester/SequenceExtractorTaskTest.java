@@ -0,0 +1,163 @@
+package de.typology.tester;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.typology.indexes.WordIndex;
+
+public class SequenceExtractorTaskTest {
+	File inputDirectory = new File("testDataset/sequenceExtractor-in/");
+	File outputDirectory = new File("testDataset/sequenceExtractor-out/");
+	File indexFile = new File("testDataset/sequenceExtractor-index.txt");
+	File testSequenceFile = new File(
+			"testDataset/sequenceExtractor-sequences.txt");
+
+	@Before
+	public void setUp() throws Exception {
+		this.tearDown();
+		this.inputDirectory.mkdirs();
+		BufferedWriter bw = new BufferedWriter(new FileWriter(this.indexFile));
+		bw.write("a\t0\n");
+		bw.write("m\t1\n");
+		bw.write("y\t2\n");
+		bw.close();
+		this.write("0", "a a\t1\n", "a b\t2\n", "b a\t1\n", "b c\t3\n",
+				"c c\t1\n");
+		this.write("1", "m m\t1\n", "x y\t4\n");
+		this.write("2", "y y\t1\n", "z z\t1\n");
+		this.write("all", "10\n");
+	}
+
+	private void write(String fileName, String... lines) throws IOException {
+		BufferedWriter bw = new BufferedWriter(new FileWriter(
+				this.inputDirectory.getAbsolutePath() + "/" + fileName));
+		for (String line : lines) {
+			bw.write(line);
+		}
+		bw.close();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (this.inputDirectory.exists()) {
+			FileUtils.deleteDirectory(this.inputDirectory);
+		}
+		if (this.outputDirectory.exists()) {
+			FileUtils.deleteDirectory(this.outputDirectory);
+		}
+		if (this.indexFile.exists()) {
+			this.indexFile.delete();
+		}
+		if (this.testSequenceFile.exists()) {
+			this.testSequenceFile.delete();
+		}
+	}
+
+	private TestSequences getTestSequences(String... sequences)
+			throws IOException {
+		BufferedWriter bw = new BufferedWriter(new FileWriter(
+				this.testSequenceFile));
+		for (String sequence : sequences) {
+			bw.write(sequence + "\n");
+		}
+		bw.close();
+		return new TestSequences(this.testSequenceFile, new WordIndex(
+				this.indexFile));
+	}
+
+	@Test
+	public void nGramSetTest() {
+		try {
+			TestSequences testSequences = this.getTestSequences("a b c", "x y",
+					"b c");
+			assertEquals(3, testSequences.size());
+			TestNGramSet nGramSet = testSequences.getNGramSet(new boolean[] {
+					false, true, true });
+			// the first window of every sequence starts before it
+			assertEquals(2, nGramSet.size("0"));
+			assertEquals("a b", nGramSet.getSequence("0", 0));
+			assertEquals("b c", nGramSet.getSequence("0", 1));
+			assertEquals(1, nGramSet.size("1"));
+			assertEquals("x y", nGramSet.getSequence("1", 0));
+			assertEquals(0, nGramSet.size("2"));
+
+			nGramSet = testSequences.getNGramSet(new boolean[] { true, false });
+			assertEquals(3, nGramSet.size("0"));
+			assertEquals("a", nGramSet.getSequence("0", 0));
+			assertEquals("b", nGramSet.getSequence("0", 1));
+			assertEquals("c", nGramSet.getSequence("0", 2));
+			assertEquals(1, nGramSet.size("1"));
+			assertEquals("y", nGramSet.getSequence("2", 0));
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+	}
+
+	@Test
+	public void partitionTest() {
+		try {
+			SequenceExtractorTask task = new SequenceExtractorTask(
+					this.getTestSequences("a b c", "x y"), new boolean[] {
+							true, true }, this.inputDirectory,
+					this.outputDirectory, "\t");
+			task.run();
+			BufferedReader br = new BufferedReader(new FileReader(
+					this.outputDirectory.getAbsolutePath() + "/0"));
+			assertEquals("a b\t2", br.readLine());
+			assertEquals("b c\t3", br.readLine());
+			assertNull(br.readLine());
+			br.close();
+
+			br = new BufferedReader(new FileReader(
+					this.outputDirectory.getAbsolutePath() + "/1"));
+			assertEquals("x y\t4", br.readLine());
+			assertNull(br.readLine());
+			br.close();
+
+			// no needed sequence in this partition
+			assertFalse(new File(this.outputDirectory.getAbsolutePath() + "/2")
+					.exists());
+			assertTrue(new File(this.outputDirectory.getAbsolutePath()
+					+ "/all").exists());
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+	}
+
+	@Test
+	public void unsortedTest() {
+		try {
+			this.write("0", "b c\t3\n", "a b\t2\n", "a a\t1\n");
+			SequenceExtractorTask task = new SequenceExtractorTask(
+					this.getTestSequences("a b c"), new boolean[] { true,
+							true }, this.inputDirectory, this.outputDirectory,
+					"\t");
+			task.run();
+			BufferedReader br = new BufferedReader(new FileReader(
+					this.outputDirectory.getAbsolutePath() + "/0"));
+			assertEquals("b c\t3", br.readLine());
+			assertEquals("a b\t2", br.readLine());
+			assertNull(br.readLine());
+			br.close();
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+	}
+}
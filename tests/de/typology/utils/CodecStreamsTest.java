@@ -0,0 +1,112 @@
+package de.typology.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CodecStreamsTest {
+	File outputDirectory = new File("testDataset/codecStreams/");
+
+	@Before
+	public void setUp() throws Exception {
+		if (this.outputDirectory.exists()) {
+			FileUtils.deleteDirectory(this.outputDirectory);
+		}
+		this.outputDirectory.mkdir();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		CodecStreams.setCompressIntermediateFiles(false);
+		if (this.outputDirectory.exists()) {
+			FileUtils.deleteDirectory(this.outputDirectory);
+		}
+	}
+
+	@Test
+	public void intermediateTest() {
+		File file = new File(this.outputDirectory.getAbsolutePath() + "/0");
+		try {
+			for (boolean compress : new boolean[] { false, true }) {
+				CodecStreams.setCompressIntermediateFiles(compress);
+				// the second writer appends, a compressed file gets two members
+				Writer writer = CodecStreams.openIntermediateWriter(file, false);
+				writer.write("a b\t1\n");
+				writer.close();
+				writer = CodecStreams.openIntermediateWriter(file, true);
+				writer.write("c d\t2\n");
+				writer.close();
+				assertEquals(compress, CodecStreams.isCompressed(file));
+
+				BufferedReader br = CodecStreams.openReader(file);
+				assertEquals("a b\t1", br.readLine());
+				assertEquals("c d\t2", br.readLine());
+				assertNull(br.readLine());
+				br.close();
+			}
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+	}
+
+	@Test
+	public void bzip2Test() {
+		File file = new File(this.outputDirectory.getAbsolutePath()
+				+ "/training.txt");
+		try {
+			Writer writer = new OutputStreamWriter(
+					new BZip2CompressorOutputStream(new FileOutputStream(file)));
+			writer.write("<s> a b </s>\n");
+			writer.close();
+			assertTrue(CodecStreams.isCompressed(file));
+
+			BufferedReader br = CodecStreams.openReader(file);
+			assertEquals("<s> a b </s>", br.readLine());
+			assertNull(br.readLine());
+			br.close();
+
+			// compressed files are a single chunk
+			long[] chunkBoundaries = FileChunker.getChunkBoundaries(file, 4);
+			assertEquals(2, chunkBoundaries.length);
+			br = new BufferedReader(new InputStreamReader(
+					FileChunker.openChunk(file, chunkBoundaries[0],
+							chunkBoundaries[1])));
+			assertEquals("<s> a b </s>", br.readLine());
+			br.close();
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+	}
+
+	@Test
+	public void emptyFileTest() {
+		File file = new File(this.outputDirectory.getAbsolutePath() + "/empty");
+		try {
+			file.createNewFile();
+			assertFalse(CodecStreams.isCompressed(file));
+			BufferedReader br = CodecStreams.openReader(file);
+			assertNull(br.readLine());
+			br.close();
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+	}
+}
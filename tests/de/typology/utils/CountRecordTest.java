@@ -0,0 +1,152 @@
+package de.typology.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.typology.indexes.Vocabulary;
+import de.typology.splitter.Aggregator;
+
+public class CountRecordTest {
+	File outputDirectory = new File("testDataset/countRecords/");
+	Vocabulary vocabulary;
+
+	@Before
+	public void setUp() throws Exception {
+		if (this.outputDirectory.exists()) {
+			FileUtils.deleteDirectory(this.outputDirectory);
+		}
+		this.outputDirectory.mkdir();
+		File vocabularyFile = new File(this.outputDirectory.getAbsolutePath()
+				+ "/vocabulary.txt");
+		BufferedWriter bw = new BufferedWriter(new FileWriter(vocabularyFile));
+		bw.write("<s>\t0\n");
+		bw.write("a\t1\n");
+		bw.write("b\t2\n");
+		bw.close();
+		this.vocabulary = new Vocabulary(vocabularyFile);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		CodecStreams.setCompressIntermediateFiles(false);
+		if (this.outputDirectory.exists()) {
+			FileUtils.deleteDirectory(this.outputDirectory);
+		}
+	}
+
+	@Test
+	public void roundTripTest() {
+		File file = new File(this.outputDirectory.getAbsolutePath() + "/0");
+		try {
+			for (boolean binary : new boolean[] { false, true }) {
+				Vocabulary recordVocabulary = binary ? this.vocabulary : null;
+				CountRecordWriter writer = CountRecordWriter.open(file, "\t",
+						recordVocabulary);
+				writer.write("<s> a b", 300L);
+				// unknown words are written as they are
+				writer.write("a \u00fcber  b", new long[] { 7L, 0L, 0L, 7L });
+				writer.close();
+				BufferedReader br = new BufferedReader(new FileReader(file));
+				assertEquals(!binary, br.readLine().equals("<s> a b\t300"));
+				br.close();
+
+				CountRecordReader reader = CountRecordReader.open(file, "\t",
+						recordVocabulary);
+				assertTrue(reader.next());
+				assertEquals("<s> a b", reader.getSequence());
+				assertEquals(1, reader.getCountColumns());
+				assertEquals(300L, reader.getCount(0));
+				assertTrue(reader.next());
+				assertEquals("a \u00fcber  b", reader.getSequence());
+				assertEquals(4, reader.getCountColumns());
+				assertEquals(7L, reader.getCount(0));
+				assertEquals(7L, reader.getCount(3));
+				assertFalse(reader.next());
+				reader.close();
+			}
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+	}
+
+	@Test
+	public void missingVocabularyTest() {
+		File file = new File(this.outputDirectory.getAbsolutePath() + "/0");
+		boolean thrown = false;
+		try {
+			CountRecordWriter writer = CountRecordWriter.open(file, "\t",
+					this.vocabulary);
+			writer.write("a", 1L);
+			writer.close();
+			CountRecordReader.open(file, "\t", null);
+		} catch (IllegalStateException e) {
+			thrown = true;
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+		assertTrue(thrown);
+	}
+
+	@Test
+	public void aggregatorTest() {
+		File inputFile = new File(this.outputDirectory.getAbsolutePath()
+				+ "/0-split");
+		File outputFile = new File(this.outputDirectory.getAbsolutePath()
+				+ "/0");
+		try {
+			BufferedWriter bw = new BufferedWriter(new FileWriter(inputFile));
+			for (int i = 0; i < 100; i++) {
+				bw.write("a b\t1\n");
+				bw.write("<s> a\t" + i + "\n");
+				bw.write("b x" + i % 10 + "\t2\n");
+			}
+			bw.close();
+			CodecStreams.setCompressIntermediateFiles(true);
+			Aggregator aggregator = new Aggregator(inputFile, outputFile, "\t",
+					0, true);
+			aggregator.setVocabulary(this.vocabulary);
+			// binary and compressed runs
+			aggregator.setMaxMemory(1000);
+			aggregator.aggregateCounts();
+
+			CountRecordReader reader = CountRecordReader.open(outputFile, "\t",
+					this.vocabulary);
+			assertTrue(reader.next());
+			assertEquals("<s> a", reader.getSequence());
+			assertEquals(4950L, reader.getCount(0));
+			assertEquals(1L, reader.getCount(1));
+			assertEquals(2L, reader.getCount(2));
+			assertEquals(4947L, reader.getCount(3));
+			assertTrue(reader.next());
+			assertEquals("a b", reader.getSequence());
+			assertEquals(100L, reader.getCount(0));
+			assertEquals(100L, reader.getCount(1));
+			for (int i = 0; i < 10; i++) {
+				assertTrue(reader.next());
+				assertEquals("b x" + i, reader.getSequence());
+				assertEquals(20L, reader.getCount(2));
+			}
+			assertFalse(reader.next());
+			reader.close();
+			assertEquals(12, aggregator.getStatistics().getDistinctCount());
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+	}
+}
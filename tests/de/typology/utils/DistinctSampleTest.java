@@ -0,0 +1,57 @@
+package de.typology.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DistinctSampleTest {
+
+	private long mix(long value) {
+		value *= 0x9E3779B97F4A7C15L;
+		value ^= value >>> 31;
+		value *= 0xBF58476D1CE4E5B9L;
+		value ^= value >>> 29;
+		return value;
+	}
+
+	@Test
+	public void exactTest() {
+		DistinctSample sample = new DistinctSample(100);
+		for (int i = 0; i < 50; i++) {
+			sample.add(this.mix(i + 1), i % 5);
+			// duplicates are not counted
+			sample.add(this.mix(i + 1), i % 5);
+		}
+		sample.add(0L, 7);
+		assertEquals(0, sample.getLevel());
+		assertEquals(51, sample.size());
+		assertEquals(51, sample.getEstimate());
+		int[] labels = sample.getSortedLabels();
+		assertEquals(51, labels.length);
+		assertEquals(0, labels[0]);
+		assertEquals(4, labels[49]);
+		assertEquals(7, labels[50]);
+	}
+
+	@Test
+	public void estimateTest() {
+		DistinctSample sample = new DistinctSample(1024);
+		for (int i = 0; i < 1000000; i++) {
+			sample.add(this.mix(i), i < 250000 ? 0 : 1);
+		}
+		assertTrue(sample.size() <= 1024);
+		assertTrue(sample.getLevel() > 0);
+		long estimate = sample.getEstimate();
+		assertTrue(estimate > 800000 && estimate < 1200000);
+
+		// about a quarter of the sampled fingerprints have label 0
+		int[] labels = sample.getSortedLabels();
+		int firstLabelCount = 0;
+		while (labels[firstLabelCount] == 0) {
+			firstLabelCount++;
+		}
+		long firstLabelEstimate = (long) firstLabelCount << sample.getLevel();
+		assertTrue(firstLabelEstimate > 150000 && firstLabelEstimate < 350000);
+	}
+}
@@ -0,0 +1,79 @@
+package de.typology.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SpillWriterPoolTest {
+	File outputDirectory = new File("testDataset/spillWriterPool/");
+
+	@Before
+	public void setUp() throws Exception {
+		if (this.outputDirectory.exists()) {
+			FileUtils.deleteDirectory(this.outputDirectory);
+		}
+		this.outputDirectory.mkdir();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (this.outputDirectory.exists()) {
+			FileUtils.deleteDirectory(this.outputDirectory);
+		}
+	}
+
+	@Test
+	public void spillTest() {
+		// small budget and only two open files force many spills and reopens
+		SpillWriterPool pool = new SpillWriterPool(100, 2);
+		ArrayList<BufferedWriter> writers = new ArrayList<BufferedWriter>();
+		for (int fileCount = 0; fileCount < 5; fileCount++) {
+			writers.add(pool.openWriter(new File(this.outputDirectory
+					.getAbsolutePath() + "/" + fileCount)));
+		}
+		try {
+			for (int i = 0; i < 100; i++) {
+				for (int fileCount = 0; fileCount < 4; fileCount++) {
+					writers.get(fileCount).write(fileCount + "\t" + i + "\n");
+					assertTrue(pool.getBufferedChars() <= 100);
+					assertTrue(pool.getOpenFiles() <= 2);
+				}
+			}
+			for (BufferedWriter writer : writers) {
+				writer.close();
+			}
+			assertEquals(0, pool.getBufferedChars());
+			assertEquals(0, pool.getOpenFiles());
+
+			for (int fileCount = 0; fileCount < 4; fileCount++) {
+				BufferedReader br = new BufferedReader(new FileReader(
+						this.outputDirectory.getAbsolutePath() + "/"
+								+ fileCount));
+				for (int i = 0; i < 100; i++) {
+					assertEquals(fileCount + "\t" + i, br.readLine());
+				}
+				assertNull(br.readLine());
+				br.close();
+			}
+			// files without content are created as well
+			assertEquals(0,
+					new File(this.outputDirectory.getAbsolutePath() + "/4")
+							.length());
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+	}
+}